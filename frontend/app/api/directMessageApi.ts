@@ -106,10 +106,11 @@ export const directMessageApi = {
     })
   },
 
-  async searchMessages(directMessageId: number, query: string, page = 0, size = 20): Promise<{
+  async searchMessages(directMessageId: number, query: string, page = 0, size = 20, cursor?: string): Promise<{
     results: Array<{
       messageId: number
       content: string
+      highlightedContent: string | null
       userId: number
       username: string
       userAvatar?: string
@@ -121,9 +122,10 @@ export const directMessageApi = {
     size: number
     totalElements: number
     totalPages: number
+    nextCursor: string | null
   }> {
     return await $fetch(`/api/search/direct-messages`, {
-      params: { directMessageId, query, page, size }
+      params: { directMessageId, query, page, size, cursor }
     })
   }
 }
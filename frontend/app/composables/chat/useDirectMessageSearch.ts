@@ -4,12 +4,12 @@ export function useDirectMessageSearch() {
   const loading = ref(false)
   const error = ref<string | null>(null)
 
-  async function searchMessages(directMessageId: number, query: string, page = 0, size = 20) {
+  async function searchMessages(directMessageId: number, query: string, page = 0, size = 20, cursor?: string) {
     loading.value = true
     error.value = null
 
     try {
-      const response = await directMessageApi.searchMessages(directMessageId, query, page, size)
+      const response = await directMessageApi.searchMessages(directMessageId, query, page, size, cursor)
       return response
     } catch (err) {
       console.error('Failed to search direct messages:', err)
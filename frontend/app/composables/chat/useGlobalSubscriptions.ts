@@ -4,23 +4,15 @@ import { useMessagesStore } from '../../../stores/messages'
 
 export const useGlobalSubscriptions = () => {
   const messagesStore = useMessagesStore()
-  const { subscribeToAllMessages, subscribeToUserPresence, subscribeToGlobalMessageDeletions } = useWebSocket()
+  const { subscribeToUserPresence, subscribeToGlobalMessageDeletions } = useWebSocket()
 
-  let allMessagesSubscription: StompSubscription | null = null
   let userPresenceSubscription: StompSubscription | null = null
   let globalMessageDeletionSubscription: StompSubscription | null = null
 
   const subscribeToGlobal = (
-    onNewMessage: (channelId: number) => void,
     onUserPresenceUpdate: (update: UserPresenceUpdate) => void,
     selectedChannelId: Ref<number | null>
   ) => {
-    allMessagesSubscription = subscribeToAllMessages((newMessage) => {
-      if (newMessage.channelId && selectedChannelId.value && newMessage.channelId !== selectedChannelId.value) {
-        onNewMessage(newMessage.channelId)
-      }
-    })
-
     globalMessageDeletionSubscription = subscribeToGlobalMessageDeletions((payload) => {
       if (!payload) return
       if (selectedChannelId.value && payload.channelId === selectedChannelId.value) {
@@ -34,10 +26,6 @@ export const useGlobalSubscriptions = () => {
   }
 
   const unsubscribeAll = () => {
-    if (allMessagesSubscription) {
-      allMessagesSubscription.unsubscribe()
-      allMessagesSubscription = null
-    }
     if (userPresenceSubscription) {
       userPresenceSubscription.unsubscribe()
       userPresenceSubscription = null
@@ -15,6 +15,16 @@ export interface UserPresenceUpdate {
   userId: number
   username: string
   status: 'online' | 'offline'
+  version?: number
+}
+
+export interface PresenceVersion {
+  version: number
+}
+
+export interface UnreadCounterUpdate {
+  channelId: number
+  count: number
 }
 
 interface MessageDeletionPayload {
@@ -77,13 +87,13 @@ export const useWebSocket = () => {
   }
 
   /**
-   * Subscribe to presence sync updates (bulk presence state)
-   * This is broadcast periodically to ensure all clients have accurate presence info
+   * Subscribe to presence version announcements
+   * Broadcast periodically so clients that missed presence updates can fetch the changes
    */
-  const subscribeToPresenceSync = (callback: (updates: UserPresenceUpdate[]) => void) => {
-    return store.subscribe<UserPresenceUpdate[]>(
+  const subscribeToPresenceSync = (callback: (presence: PresenceVersion) => void) => {
+    return store.subscribe<PresenceVersion>(
       'presence-sync',
-      '/topic/user-presence/sync',
+      '/topic/user-presence/version',
       callback
     )
   }
@@ -259,6 +269,20 @@ export const useWebSocket = () => {
     )
   }
 
+  /**
+   * Subscribe to a user's unread counter changes, pushed as absolute counts per channel
+   */
+  const subscribeToUnreadCounts = (
+    userId: number,
+    callback: (update: UnreadCounterUpdate) => void
+  ) => {
+    return store.subscribe<UnreadCounterUpdate>(
+      `user-${userId}-unread`,
+      `/topic/user/${userId}/unread`,
+      callback
+    )
+  }
+
   /**
    * Unsubscribe from a specific subscription by ID
    */
@@ -306,6 +330,7 @@ export const useWebSocket = () => {
     subscribeToDirectMessageEdits,
     subscribeToDirectMessageDeletions,
     subscribeToMentions,
+    subscribeToUnreadCounts,
 
     // Messaging
     sendMessage: store.sendMessage,
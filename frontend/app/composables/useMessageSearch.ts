@@ -8,7 +8,8 @@ export const useMessageSearch = () => {
     query: string,
     channelId?: number,
     page: number = 0,
-    size: number = 20
+    size: number = 20,
+    cursor?: string
   ): Promise<MessageSearchResponse | null> => {
     if (!query.trim()) {
       return null
@@ -28,6 +29,10 @@ export const useMessageSearch = () => {
         params.append('channelId', channelId.toString())
       }
 
+      if (cursor) {
+        params.append('cursor', cursor)
+      }
+
       const data = await $fetch<MessageSearchResponse>(
         `/api/search/messages?${params.toString()}`,
         {
@@ -0,0 +1,74 @@
+import type { UserPresenceUpdate } from '~/composables/chat/useWebSocket'
+
+/**
+ * Presence Sync Composable
+ *
+ * Keeps presence current from deltas instead of periodic full lists.
+ * The presence version is read once before the full user list is loaded; after that
+ * the backend only announces its latest version and we fetch the users that joined
+ * or left since ours. If our version is too old, the caller reloads the full list.
+ */
+
+interface PresenceDelta {
+  version: number
+  snapshotRequired: boolean
+  joined: UserPresenceUpdate[]
+  left: number[]
+}
+
+export const usePresenceSync = () => {
+  let version: number | null = null
+  let syncing = false
+
+  /**
+   * Must be awaited before loading the full presence list, so that any change
+   * made while it loads is still returned by the next delta.
+   */
+  const init = async () => {
+    try {
+      const response = await $fetch<{ version: number }>('/api/users/presence/version')
+      version = response.version
+    } catch (error) {
+      console.warn('[Presence] Failed to fetch presence version:', error)
+      version = null
+    }
+  }
+
+  const catchUp = async (
+    latestVersion: number,
+    onChange: (update: UserPresenceUpdate) => void,
+    onResync: () => Promise<void>
+  ) => {
+    if (syncing || (version !== null && latestVersion <= version)) return
+
+    syncing = true
+    try {
+      if (version === null) {
+        await onResync()
+        version = latestVersion
+        return
+      }
+
+      const delta = await $fetch<PresenceDelta>('/api/users/presence/changes', {
+        query: { since: version }
+      })
+
+      if (delta.snapshotRequired) {
+        await onResync()
+      } else {
+        delta.joined.forEach(update => onChange({ ...update, status: 'online' }))
+        delta.left.forEach(userId => onChange({ userId, username: '', status: 'offline' }))
+      }
+      version = delta.version
+    } catch (error) {
+      console.warn('[Presence] Failed to sync presence changes:', error)
+    } finally {
+      syncing = false
+    }
+  }
+
+  return {
+    init,
+    catchUp
+  }
+}
@@ -23,6 +23,7 @@ export default defineEventHandler(async (event): Promise<unknown> => {
   if (query.query) params.append('query', String(query.query))
   if (query.page) params.append('page', String(query.page))
   if (query.size) params.append('size', String(query.size))
+  if (query.cursor) params.append('cursor', String(query.cursor))
 
   try {
     const response: unknown = await $fetch(`${config.apiUrl}/api/direct-messages/${directMessageId}/search?${params.toString()}`, {
@@ -16,6 +16,7 @@ export default defineEventHandler(async (event): Promise<unknown> => {
   if (query.channelId) params.append('channelId', String(query.channelId))
   if (query.page) params.append('page', String(query.page))
   if (query.size) params.append('size', String(query.size))
+  if (query.cursor) params.append('cursor', String(query.cursor))
 
   try {
     const response: unknown = await $fetch(`${config.apiUrl}/api/search/messages?${params.toString()}`, {
@@ -0,0 +1,31 @@
+import type { H3Event } from 'h3'
+
+/**
+ * Presence changes since a version.
+ * Proxies to backend; returns users that joined or left after `since`.
+ */
+export default defineEventHandler(async (event: H3Event): Promise<unknown> => {
+  const query = getQuery(event)
+  const since = Number(query.since)
+
+  if (!Number.isInteger(since) || since < 0) {
+    throw createError({
+      statusCode: 400,
+      message: 'Invalid presence version'
+    })
+  }
+
+  const authFetch = await createValidatedFetch(event)
+
+  try {
+    return await authFetch('/api/users/presence/changes', {
+      query: { since }
+    })
+  } catch (error: unknown) {
+    console.error('Failed to fetch presence changes:', error)
+    throw createError({
+      statusCode: 500,
+      message: 'Failed to fetch presence changes'
+    })
+  }
+})
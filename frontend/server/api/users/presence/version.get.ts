@@ -0,0 +1,19 @@
+import type { H3Event } from 'h3'
+
+/**
+ * Current presence version.
+ * Proxies to backend; clients read it before loading the full presence list.
+ */
+export default defineEventHandler(async (event: H3Event): Promise<{ version: number }> => {
+  const authFetch = await createValidatedFetch(event)
+
+  try {
+    return await authFetch<{ version: number }>('/api/users/presence/version')
+  } catch (error: unknown) {
+    console.error('Failed to fetch presence version:', error)
+    throw createError({
+      statusCode: 500,
+      message: 'Failed to fetch presence version'
+    })
+  }
+})
@@ -1,6 +1,8 @@
 export interface MessageSearchResult {
   messageId: number
   content: string
+  // Content with matches wrapped in <mark> tags by the server
+  highlightedContent: string | null
   channelId: number
   channelName: string
   userId: number
@@ -17,4 +19,6 @@ export interface MessageSearchResponse {
   size: number
   totalElements: number
   totalPages: number
+  // search_after cursor of the next page, null on the last page
+  nextCursor: string | null
 }
@@ -105,10 +105,18 @@ export const useChannelsStore = defineStore('channels', {
       }
     },
 
-    incrementUnreadCount(channelId: number) {
+    /**
+     * Apply an unread count pushed by the server.
+     * Messages arriving in the open channel are already seen, so it is marked read instead.
+     */
+    setUnreadCount(channelId: number, count: number) {
+      if (count > 0 && this.selectedChannel?.id === channelId) {
+        this.markChannelAsRead(channelId)
+        return
+      }
       const channel = this.channels.find(c => c.id === channelId)
-      if (channel && this.selectedChannel?.id !== channelId) {
-        channel.unread = (channel.unread || 0) + 1
+      if (channel) {
+        channel.unread = count
       }
     },
 
@@ -1,5 +1,6 @@
 package com.lootchat.LootChat.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -28,4 +29,23 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Worker pool for inbox processing.
+     * Each worker drains one message-key partition at a time (see InboxEventProcessor).
+     */
+    @Bean(name = "inboxWorkerExecutor")
+    public ThreadPoolTaskExecutor inboxWorkerExecutor(
+            @Value("${inbox.processor.worker-threads:4}") int workerThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workerThreads);
+        executor.setMaxPoolSize(workerThreads);
+        // Work is only submitted when a worker is free, so no queueing is needed
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("inbox-worker-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
 }
@@ -0,0 +1,66 @@
+package com.lootchat.LootChat.config;
+
+import com.lootchat.LootChat.service.channel.ChannelSequenceService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills per-channel message sequence numbers for data written before they existed.
+ *
+ * Runs once the application is ready (after the data initializers), and only touches
+ * rows whose sequence is still NULL, so it is a no-op on every later startup.
+ *
+ * - messages.channel_seq: numbered per channel in id order, continuing after the channel's head
+ * - channels.last_message_seq: raised to the highest message sequence in the channel
+ * - user_channel_read_states.last_read_seq: the newest message created at or before last_read_at
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChannelSequenceInitializer {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillSequences() {
+        try {
+            int messages = jdbcTemplate.update(
+                    "UPDATE messages m SET channel_seq = numbered.seq " +
+                    "FROM (SELECT msg.id, c.last_message_seq + ROW_NUMBER() OVER (PARTITION BY msg.channel_id ORDER BY msg.id) AS seq " +
+                    "      FROM messages msg JOIN channels c ON c.id = msg.channel_id " +
+                    "      WHERE msg.channel_seq IS NULL) numbered " +
+                    "WHERE m.id = numbered.id");
+
+            int channels = 0;
+            if (messages > 0) {
+                channels = jdbcTemplate.update(
+                        "UPDATE channels c SET last_message_seq = heads.seq " +
+                        "FROM (SELECT channel_id, MAX(channel_seq) AS seq FROM messages GROUP BY channel_id) heads " +
+                        "WHERE c.id = heads.channel_id AND heads.seq > c.last_message_seq");
+                // Heads cached before the backfill are stale
+                redisTemplate.delete(ChannelSequenceService.HEADS_KEY);
+            }
+
+            int readStates = jdbcTemplate.update(
+                    "UPDATE user_channel_read_states r SET last_read_seq = COALESCE(" +
+                    "  (SELECT MAX(m.channel_seq) FROM messages m " +
+                    "   WHERE m.channel_id = r.channel_id AND m.created_at <= r.last_read_at), 0) " +
+                    "WHERE r.last_read_seq IS NULL");
+
+            if (messages == 0 && readStates == 0) {
+                return;
+            }
+            log.info("Backfilled channel sequences: {} messages, {} channels, {} read states",
+                    messages, channels, readStates);
+        } catch (Exception e) {
+            // Unread counts stay low until the backfill succeeds, never block startup
+            log.error("Failed to backfill channel message sequences", e);
+        }
+    }
+}
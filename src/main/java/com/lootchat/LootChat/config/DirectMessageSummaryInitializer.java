@@ -0,0 +1,138 @@
+package com.lootchat.LootChat.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Backfills the denormalized direct message columns for conversations written before they existed.
+ *
+ * Only rows whose columns are still NULL are touched, and conversations created since are
+ * always initialized by the write paths, so this is a no-op on every later startup.
+ *
+ * - user1/user2_last_read_message_id: the newest message from the other participant that
+ *   was flagged read by the per-message is_read column they replaced
+ * - last_message_id/last_message_content and user1/user2_unread_count: the sidebar summary
+ *
+ * The is_read column is no longer mapped, but schemas created while it was are left with it as
+ * boolean NOT NULL without a default, which would reject every new message insert. Once the
+ * watermarks are backfilled it is made nullable with a false default.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DirectMessageSummaryInitializer {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            backfillWatermarks();
+        } catch (Exception e) {
+            // Old conversations show as unread until the backfill succeeds, never block startup
+            log.error("Failed to backfill direct message read watermarks", e);
+        }
+
+        try {
+            relaxLegacyReadFlag();
+        } catch (Exception e) {
+            // Direct message inserts keep failing on upgraded schemas until this succeeds
+            log.error("Failed to relax the legacy direct message is_read column", e);
+        }
+
+        try {
+            backfillSummaries();
+        } catch (Exception e) {
+            // Old conversations show no preview until the backfill succeeds, never block startup
+            log.error("Failed to backfill direct message summaries", e);
+        }
+    }
+
+    private void backfillWatermarks() {
+        Integer pending = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM direct_messages " +
+                "WHERE user1_last_read_message_id IS NULL OR user2_last_read_message_id IS NULL",
+                Integer.class);
+        if (pending == null || pending == 0) {
+            return;
+        }
+
+        // On fresh schemas is_read never existed, so check before referencing it
+        if (isReadNullable() == null) {
+            int updated = jdbcTemplate.update(
+                    "UPDATE direct_messages SET " +
+                    "user1_last_read_message_id = COALESCE(user1_last_read_message_id, 0), " +
+                    "user2_last_read_message_id = COALESCE(user2_last_read_message_id, 0) " +
+                    "WHERE user1_last_read_message_id IS NULL OR user2_last_read_message_id IS NULL");
+            log.info("Initialized read watermarks for {} direct message conversations", updated);
+            return;
+        }
+
+        int updated = jdbcTemplate.update(
+                "UPDATE direct_messages dm SET " +
+                "user1_last_read_message_id = COALESCE(dm.user1_last_read_message_id, " +
+                "  (SELECT MAX(m.id) FROM direct_message_messages m " +
+                "   WHERE m.direct_message_id = dm.id AND m.sender_id = dm.user2_id AND m.is_read = true), 0), " +
+                "user2_last_read_message_id = COALESCE(dm.user2_last_read_message_id, " +
+                "  (SELECT MAX(m.id) FROM direct_message_messages m " +
+                "   WHERE m.direct_message_id = dm.id AND m.sender_id = dm.user1_id AND m.is_read = true), 0) " +
+                "WHERE dm.user1_last_read_message_id IS NULL OR dm.user2_last_read_message_id IS NULL");
+
+        log.info("Backfilled read watermarks for {} direct message conversations", updated);
+    }
+
+    private void relaxLegacyReadFlag() {
+        String nullable = isReadNullable();
+        if (nullable == null || "YES".equals(nullable)) {
+            return;
+        }
+
+        jdbcTemplate.execute("ALTER TABLE direct_message_messages ALTER COLUMN is_read SET DEFAULT false");
+        jdbcTemplate.execute("ALTER TABLE direct_message_messages ALTER COLUMN is_read DROP NOT NULL");
+        log.info("Made the legacy direct_message_messages.is_read column nullable");
+    }
+
+    /**
+     * information_schema is_nullable of the legacy is_read column, or null when it does not exist.
+     */
+    private String isReadNullable() {
+        List<String> nullable = jdbcTemplate.queryForList(
+                "SELECT is_nullable FROM information_schema.columns " +
+                "WHERE table_schema = current_schema() AND table_name = 'direct_message_messages' " +
+                "AND column_name = 'is_read'",
+                String.class);
+        return nullable.isEmpty() ? null : nullable.get(0);
+    }
+
+    private void backfillSummaries() {
+        // Conversations with messages always have last_message_at
+        Integer pending = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM direct_messages WHERE last_message_id IS NULL AND last_message_at IS NOT NULL",
+                Integer.class);
+        if (pending == null || pending == 0) {
+            return;
+        }
+
+        int updated = jdbcTemplate.update(
+                "UPDATE direct_messages dm SET " +
+                "last_message_id = last_msg.id, " +
+                "last_message_content = last_msg.content, " +
+                "user1_unread_count = (SELECT COUNT(*) FROM direct_message_messages m " +
+                "  WHERE m.direct_message_id = dm.id AND m.sender_id = dm.user2_id AND m.deleted = false " +
+                "  AND m.id > COALESCE(dm.user1_last_read_message_id, 0)), " +
+                "user2_unread_count = (SELECT COUNT(*) FROM direct_message_messages m " +
+                "  WHERE m.direct_message_id = dm.id AND m.sender_id = dm.user1_id AND m.deleted = false " +
+                "  AND m.id > COALESCE(dm.user2_last_read_message_id, 0)) " +
+                "FROM (SELECT DISTINCT ON (direct_message_id) direct_message_id, id, content " +
+                "      FROM direct_message_messages ORDER BY direct_message_id, id DESC) last_msg " +
+                "WHERE last_msg.direct_message_id = dm.id AND dm.last_message_id IS NULL");
+
+        log.info("Backfilled summaries for {} direct message conversations", updated);
+    }
+}
@@ -0,0 +1,66 @@
+package com.lootchat.LootChat.config;
+
+import com.lootchat.LootChat.service.inbox.EventPartitionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies outbox/inbox schema objects that Hibernate's ddl-auto cannot express.
+ *
+ * Runs after the entity tables have been created/updated. Every statement is
+ * idempotent so it is safe to run on each startup and from several pods at once.
+ * A failed partitioning aborts startup; the index extensions are best effort.
+ *
+ * - daily range partitioning of outbox_events and inbox_events (see EventPartitionService)
+ * - idx_outbox_due: partial index used by the outbox processor to find due rows
+ *   without scanning processed history
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EventTableSchemaInitializer implements CommandLineRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EventPartitionService eventPartitionService;
+
+    @Override
+    public void run(String... args) {
+        try {
+            eventPartitionService.ensurePartitioned(EventPartitionService.OUTBOX_TABLE);
+            eventPartitionService.ensurePartitioned(EventPartitionService.INBOX_TABLE);
+        } catch (Exception e) {
+            // Inbox inserts rely on ON CONFLICT (idempotency_key, received_at), whose unique index
+            // only exists once the conversion has run, so failing here beats failing every insert
+            throw new IllegalStateException("Failed to partition outbox/inbox tables", e);
+        }
+
+        try {
+            initializeOutboxSchema();
+        } catch (Exception e) {
+            // Missing indexes only cost performance, never block startup
+            log.error("Failed to apply outbox/inbox schema extensions", e);
+        }
+    }
+
+    private void initializeOutboxSchema() {
+        // Rows written before next_attempt_at existed are due immediately
+        int backfilled = jdbcTemplate.update(
+                "UPDATE outbox_events SET next_attempt_at = created_at " +
+                "WHERE next_attempt_at IS NULL AND processed = false");
+        if (backfilled > 0) {
+            log.info("Backfilled next_attempt_at for {} outbox events", backfilled);
+        }
+
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_outbox_due " +
+                "ON outbox_events (next_attempt_at) WHERE processed = false");
+
+        // Superseded by idx_outbox_due
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_outbox_retry");
+
+        log.info("Outbox schema extensions applied");
+    }
+}
@@ -1,8 +1,11 @@
 package com.lootchat.LootChat.config;
 
+import com.lootchat.LootChat.service.common.KafkaConsumerService;
 import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -15,11 +18,14 @@ import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
 
 @Configuration
@@ -116,6 +122,41 @@ public class KafkaConfig {
         return factory;
     }
 
+    /**
+     * Batch listener factory for the inbox consumers.
+     * A whole poll is handed to the listener, which stores it in one insert and then
+     * acknowledges manually; auto-commit is disabled so offsets are only committed after
+     * the inbox insert succeeded. Failures re-seek and retry the batch with backoff; once
+     * the retries are exhausted (bad payload, lasting outage) its records go to the same
+     * <topic>.DLT topics KafkaConsumerService uses, so a batch never stalls its partition.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> inboxBatchListenerContainerFactory(
+            ConsumerFactory<String, String> consumerFactory,
+            KafkaTemplate<String, String> kafkaTemplate) {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+
+        Properties consumerOverrides = new Properties();
+        consumerOverrides.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        factory.getContainerProperties().setKafkaConsumerProperties(consumerOverrides);
+
+        // Exponential backoff: initial 1s, multiplier 2x, max 30s, 5 retries (about a minute in total)
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(5);
+        backOff.setInitialInterval(1000L);
+        backOff.setMultiplier(2.0);
+        backOff.setMaxInterval(30000L);
+
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (consumerRecord, exception) -> new TopicPartition(
+                        consumerRecord.topic() + KafkaConsumerService.DEAD_LETTER_SUFFIX, -1));
+        factory.setCommonErrorHandler(new DefaultErrorHandler(recoverer, backOff));
+        return factory;
+    }
+
     @Bean
     public NewTopic chatTopic() {
         return TopicBuilder.name(appKafkaProperties.getTopics().getChat())
@@ -0,0 +1,54 @@
+package com.lootchat.LootChat.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns Elasticsearch off entirely when search.backend=postgres.
+ *
+ * The Elasticsearch starter stays on the classpath for the default backend, so without this
+ * a deployment without a cluster would still build an Elasticsearch client and report its
+ * health as DOWN. Auto-configuration exclusions can only be decided before the context is
+ * refreshed, hence an EnvironmentPostProcessor (registered in META-INF/spring.factories).
+ *
+ * - the client, Spring Data and repository auto-configurations are excluded
+ *   (added to any spring.autoconfigure.exclude already set)
+ * - management.health.elasticsearch.enabled is set to false
+ */
+public class SearchBackendEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String PROPERTY_SOURCE_NAME = "searchBackend";
+
+    static final List<String> ELASTICSEARCH_AUTO_CONFIGURATIONS = List.of(
+            "org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchClientAutoConfiguration",
+            "org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration",
+            "org.springframework.boot.autoconfigure.elasticsearch.ReactiveElasticsearchClientAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDataAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchRepositoriesAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.elasticsearch.ReactiveElasticsearchRepositoriesAutoConfiguration"
+    );
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!"postgres".equals(environment.getProperty("search.backend"))) {
+            return;
+        }
+
+        Set<String> excluded = new LinkedHashSet<>(StringUtils.commaDelimitedListToSet(
+                environment.getProperty("spring.autoconfigure.exclude", "")));
+        excluded.addAll(ELASTICSEARCH_AUTO_CONFIGURATIONS);
+
+        environment.getPropertySources().addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME, Map.of(
+                "spring.autoconfigure.exclude", String.join(",", excluded),
+                "management.health.elasticsearch.enabled", "false"
+        )));
+    }
+}
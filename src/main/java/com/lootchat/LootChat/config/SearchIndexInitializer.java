@@ -11,24 +11,29 @@ import org.springframework.stereotype.Component;
 @Component
 @RequiredArgsConstructor
 @Slf4j
-public class ElasticsearchIndexInitializer {
+public class SearchIndexInitializer {
 
     private final MessageSearchService messageSearchService;
     private final DirectMessageSearchService directMessageSearchService;
 
+    /**
+     * Brings the configured search backend up to date. On Elasticsearch this catches the
+     * aliases up on changes made while no pod was indexing, and only builds a full index
+     * when an alias has none yet; on Postgres it creates the full-text indexes.
+     */
     @EventListener(ApplicationReadyEvent.class)
     public void onApplicationReady() {
         try {
-            log.info("Starting Elasticsearch message reindex...");
-            messageSearchService.reindexAllMessages();
-            log.info("Elasticsearch message reindex completed successfully");
-            
-            log.info("Starting Elasticsearch direct message reindex...");
-            directMessageSearchService.reindexAllMessages();
-            log.info("Elasticsearch direct message reindex completed successfully");
+            messageSearchService.syncIndex();
         } catch (Exception e) {
-            log.error("Failed to reindex messages on startup", e);
-            // Don't fail application startup if indexing fails
+            // Don't fail application startup if indexing fails, the next startup resumes
+            log.error("Failed to sync message search index on startup", e);
+        }
+
+        try {
+            directMessageSearchService.syncIndex();
+        } catch (Exception e) {
+            log.error("Failed to sync direct message search index on startup", e);
         }
     }
 }
@@ -95,7 +95,8 @@ public class DirectMessageController {
             @PathVariable Long directMessageId,
             @RequestParam String query,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
-        return ResponseEntity.ok(directMessageService.searchMessages(directMessageId, query, page, size));
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
+        return ResponseEntity.ok(directMessageService.searchMessages(directMessageId, query, page, size, cursor));
     }
 }
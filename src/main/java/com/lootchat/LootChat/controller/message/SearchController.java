@@ -22,16 +22,17 @@ public class SearchController {
             @RequestParam(required = false) Long channelId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
             Authentication authentication) {
         
-        log.debug("Search request: query='{}', channelId={}, page={}, size={}", 
-                query, channelId, page, size);
+        log.debug("Search request: query='{}', channelId={}, page={}, size={}, cursor={}", 
+                query, channelId, page, size, cursor);
         
         MessageSearchResponse response;
         if (channelId != null) {
-            response = searchService.searchChannelMessages(channelId, query, page, size);
+            response = searchService.searchChannelMessages(channelId, query, page, size, cursor);
         } else {
-            response = searchService.searchAllMessages(query, page, size);
+            response = searchService.searchAllMessages(query, page, size, cursor);
         }
         
         return ResponseEntity.ok(response);
@@ -1,6 +1,7 @@
 package com.lootchat.LootChat.controller.user;
 
 import com.lootchat.LootChat.dto.user.ChangePasswordRequest;
+import com.lootchat.LootChat.dto.user.PresenceDelta;
 import com.lootchat.LootChat.dto.user.UserResponse;
 import com.lootchat.LootChat.service.user.UserPresenceService;
 import com.lootchat.LootChat.service.user.UserService;
@@ -34,6 +35,20 @@ public class UserController {
         return ResponseEntity.ok(userPresenceService.getAllUserPresence());
     }
     
+    /**
+     * Current presence version. Clients read it before loading /presence and then
+     * only fetch /presence/changes when a newer version is announced.
+     */
+    @GetMapping("/presence/version")
+    public ResponseEntity<Map<String, Long>> getPresenceVersion() {
+        return ResponseEntity.ok(Map.of("version", userPresenceService.getPresenceVersion()));
+    }
+    
+    @GetMapping("/presence/changes")
+    public ResponseEntity<PresenceDelta> getPresenceChanges(@RequestParam long since) {
+        return ResponseEntity.ok(userPresenceService.getPresenceChanges(since));
+    }
+    
     /**
      * Heartbeat endpoint to keep user presence alive.
      * Should be called periodically by the frontend (every 2-3 minutes).
@@ -8,6 +8,9 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 import java.time.LocalDateTime;
 
@@ -15,7 +18,9 @@ import java.time.LocalDateTime;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Document(indexName = "messages")
+// indexName is an alias; versioned indexes behind it are managed by SearchReindexer
+@Document(indexName = "messages", createIndex = false)
+@Setting(settingPath = "/elasticsearch/search-settings.json")
 public class MessageDocument {
     
     @Id
@@ -24,7 +29,10 @@ public class MessageDocument {
     @Field(type = FieldType.Long)
     private Long messageId;
     
-    @Field(type = FieldType.Text, analyzer = "standard")
+    @MultiField(
+            mainField = @Field(type = FieldType.Text, analyzer = "standard"),
+            otherFields = @InnerField(suffix = "prefix", type = FieldType.Text,
+                    analyzer = "prefix_index", searchAnalyzer = "prefix_search"))
     private String content;
     
     @Field(type = FieldType.Long)
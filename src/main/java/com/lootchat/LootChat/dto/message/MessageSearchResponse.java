@@ -17,4 +17,8 @@ public class MessageSearchResponse {
     private int size;
     private long totalElements;
     private int totalPages;
+    /**
+     * Cursor of the next page (search_after), null on the last page
+     */
+    private String nextCursor;
 }
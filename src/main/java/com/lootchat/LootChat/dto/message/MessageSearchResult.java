@@ -15,6 +15,10 @@ import java.util.List;
 public class MessageSearchResult {
     private Long messageId;
     private String content;
+    /**
+     * Content with matches wrapped in &lt;mark&gt; tags, null if nothing was highlighted
+     */
+    private String highlightedContent;
     private Long channelId;
     private String channelName;
     private Long userId;
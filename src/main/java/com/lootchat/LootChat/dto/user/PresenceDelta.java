@@ -0,0 +1,24 @@
+package com.lootchat.LootChat.dto.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Presence changes since a client's known version.
+ * When snapshotRequired is true the requested version is no longer covered
+ * by the change log and the client must reload the full presence list.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceDelta {
+    private long version;
+    private boolean snapshotRequired;
+    private List<UserPresenceUpdate> joined;
+    private List<Long> left;
+}
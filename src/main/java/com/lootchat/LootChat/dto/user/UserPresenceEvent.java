@@ -11,4 +11,5 @@ public class UserPresenceEvent {
     private Long userId;
     private String username;
     private String status; 
+    private Long version; // presence version assigned to this change
 }
@@ -13,4 +13,5 @@ public class UserPresenceUpdate {
     private Long userId;
     private String username;
     private String status; // "online" or "offline"
+    private Long version; // presence version assigned to this change
 }
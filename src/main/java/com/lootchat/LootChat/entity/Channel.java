@@ -31,6 +31,17 @@ public class Channel {
     @Builder.Default
     private ChannelType channelType = ChannelType.TEXT;
 
+    /**
+     * Sequence number of the newest message in this channel (0 if none).
+     * Unread count for a user is lastMessageSeq - their lastReadSeq.
+     * Read-only here: only ChannelRepository.incrementMessageSeq advances it, so saving a
+     * loaded channel can never write back a stale head.
+     */
+    @Column(name = "last_message_seq", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint default 0")
+    @Builder.Default
+    private Long lastMessageSeq = 0L;
+
     @OneToMany(mappedBy = "channel", cascade = CascadeType.ALL, orphanRemoval = true)
     @Builder.Default
     private List<Message> messages = new ArrayList<>();
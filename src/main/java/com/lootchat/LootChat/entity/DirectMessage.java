@@ -8,7 +8,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "direct_messages")
+@Table(name = "direct_messages", indexes = {
+        @Index(name = "idx_direct_messages_user1", columnList = "user1_id, last_message_at"),
+        @Index(name = "idx_direct_messages_user2", columnList = "user2_id, last_message_at")
+})
 @Getter
 @Setter
 @Builder
@@ -35,6 +38,38 @@ public class DirectMessage {
     @Column(name = "last_message_at")
     private LocalDateTime lastMessageAt;
 
+    /**
+     * Sidebar summary, maintained by the message write paths so the conversation
+     * list needs no per-conversation message queries.
+     */
+    @Column(name = "last_message_id")
+    private Long lastMessageId;
+
+    @Column(name = "last_message_content", columnDefinition = "TEXT")
+    private String lastMessageContent;
+
+    @Column(name = "user1_unread_count", nullable = false, columnDefinition = "integer default 0")
+    @Builder.Default
+    private int user1UnreadCount = 0;
+
+    @Column(name = "user2_unread_count", nullable = false, columnDefinition = "integer default 0")
+    @Builder.Default
+    private int user2UnreadCount = 0;
+
+    /**
+     * Id of the newest message user1 has read. Messages from user2 with a higher id are unread for user1.
+     */
+    @Column(name = "user1_last_read_message_id")
+    @Builder.Default
+    private Long user1LastReadMessageId = 0L;
+
+    /**
+     * Id of the newest message user2 has read. Messages from user1 with a higher id are unread for user2.
+     */
+    @Column(name = "user2_last_read_message_id")
+    @Builder.Default
+    private Long user2LastReadMessageId = 0L;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -65,4 +100,27 @@ public class DirectMessage {
     public User getOtherUser(Long currentUserId) {
         return user1.getId().equals(currentUserId) ? user2 : user1;
     }
+
+    /**
+     * Read watermark of a user in this conversation
+     */
+    public long getLastReadMessageId(Long userId) {
+        Long lastRead = user1.getId().equals(userId) ? user1LastReadMessageId : user2LastReadMessageId;
+        return lastRead != null ? lastRead : 0L;
+    }
+
+    /**
+     * Messages from the other participant the user has not read yet
+     */
+    public int getUnreadCount(Long userId) {
+        return user1.getId().equals(userId) ? user1UnreadCount : user2UnreadCount;
+    }
+
+    /**
+     * Whether a message has been read by the participant who did not send it
+     */
+    public boolean isReadByRecipient(DirectMessageMessage message) {
+        Long recipientId = getOtherUser(message.getSender().getId()).getId();
+        return message.getId() != null && message.getId() <= getLastReadMessageId(recipientId);
+    }
 }
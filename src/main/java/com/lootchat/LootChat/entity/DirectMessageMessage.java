@@ -6,7 +6,9 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "direct_message_messages")
+@Table(name = "direct_message_messages", indexes = {
+        @Index(name = "idx_direct_message_messages_updated_at", columnList = "updated_at, id")
+})
 @Getter
 @Setter
 @Builder
@@ -45,10 +47,6 @@ public class DirectMessageMessage {
     @JoinColumn(name = "direct_message_id", nullable = false)
     private DirectMessage directMessage;
 
-    @Column(name = "is_read")
-    @Builder.Default
-    private boolean isRead = false;
-
     @Column(name = "edited")
     @Builder.Default
     private boolean edited = false;
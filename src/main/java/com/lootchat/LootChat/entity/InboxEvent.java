@@ -24,19 +24,22 @@ import java.time.LocalDateTime;
  * - Resilience: survives consumer restarts
  * - Retry: failed events can be retried
  * - Audit trail: all received messages are logged
+ *
+ * The table is range-partitioned by day on receivedAt and old days are dropped
+ * as whole partitions by EventPartitionService.
  */
 @Entity
 @Table(name = "inbox_events", indexes = {
-    // Deduplication: fast lookup by idempotency key
-    @Index(name = "idx_inbox_idempotency", columnList = "idempotencyKey", unique = true),
+    // Deduplication: unique per idempotency key; includes the partition key as Postgres requires
+    @Index(name = "idx_inbox_idempotency", columnList = "idempotencyKey, receivedAt", unique = true),
     // Processing query: find unprocessed events ordered by creation time
     @Index(name = "idx_inbox_unprocessed", columnList = "processed, createdAt"),
     // Retry query: find failed events that should be retried
     @Index(name = "idx_inbox_retry", columnList = "processed, retryCount, createdAt"),
-    // Cleanup query: find old processed events
-    @Index(name = "idx_inbox_cleanup", columnList = "processed, processedAt"),
     // Topic filtering
-    @Index(name = "idx_inbox_topic", columnList = "topic, processed")
+    @Index(name = "idx_inbox_topic", columnList = "topic, processed"),
+    // Claim query: earlier pending events of the same message key
+    @Index(name = "idx_inbox_message_key", columnList = "messageKey, processed")
 })
 @Getter
 @Setter
@@ -51,10 +54,10 @@ public class InboxEvent {
     
     /**
      * Unique identifier for deduplication.
-     * Format: {topic}:{partition}:{offset} or custom business key.
+     * Format: outbox:{outboxEventId}, {topic}:{partition}:{offset} or custom business key.
      * This ensures exactly-once processing even if Kafka delivers the same message multiple times.
      */
-    @Column(nullable = false, length = 255, unique = true)
+    @Column(nullable = false, length = 255)
     private String idempotencyKey;
     
     @Column(nullable = false, length = 100)
@@ -76,7 +79,7 @@ public class InboxEvent {
     private String messageKey; // Kafka message key
     
     @Column(nullable = false)
-    private LocalDateTime receivedAt; // When message was received from Kafka
+    private LocalDateTime receivedAt; // Outbox creation time (else Kafka record timestamp), partition key (see EventPartitionService)
     
     @Column(nullable = false)
     private LocalDateTime createdAt; // When record was created in DB
@@ -98,6 +101,13 @@ public class InboxEvent {
     @Column(length = 100)
     private String processorInstance; // Which instance processed this (for debugging)
     
+    /**
+     * Set when a worker claims the event; other workers skip it until then. Lets a
+     * claim commit on its own while the event is handled, and expires if the worker dies.
+     */
+    @Column
+    private LocalDateTime claimedUntil;
+    
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -6,7 +6,10 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_channel_seq", columnList = "channel_id, channel_seq"),
+        @Index(name = "idx_messages_updated_at", columnList = "updated_at, id")
+})
 @Getter
 @Setter
 @Builder
@@ -45,6 +48,12 @@ public class Message {
     @JoinColumn(name = "channel_id", nullable = false)
     private Channel channel;
 
+    /**
+     * Position of this message within its channel, 1-based and gap-free per channel.
+     */
+    @Column(name = "channel_seq", updatable = false)
+    private Long channelSeq;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
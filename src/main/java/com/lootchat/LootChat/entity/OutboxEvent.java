@@ -19,16 +19,18 @@ import java.time.LocalDateTime;
  * 
  * Retry logic:
  * - Failed events are retried up to 5 times with exponential backoff
+ * - Backoff is measured from the last attempt and stored in nextAttemptAt
  * - After 5 failures, events are moved to dead letter (prefixed with DLQ_)
+ *
+ * The partial index on next_attempt_at (unprocessed rows only) cannot be
+ * expressed with JPA annotations and is created by EventTableSchemaInitializer.
+ * The table is range-partitioned by day on createdAt and old days are dropped
+ * as whole partitions by EventPartitionService.
  */
 @Entity
 @Table(name = "outbox_events", indexes = {
     // Primary query: find unprocessed events ordered by creation time
-    @Index(name = "idx_outbox_unprocessed", columnList = "processed, createdAt"),
-    // Retry query: find failed events that should be retried
-    @Index(name = "idx_outbox_retry", columnList = "processed, retryCount, createdAt"),
-    // Cleanup query: find old processed events
-    @Index(name = "idx_outbox_cleanup", columnList = "processed, processedAt")
+    @Index(name = "idx_outbox_unprocessed", columnList = "processed, createdAt")
 })
 @Getter
 @Setter
@@ -70,9 +72,19 @@ public class OutboxEvent {
     @Column(length = 500)
     private String lastError;
     
+    /**
+     * Earliest time this event may be (re)published.
+     * Set to createdAt on insert and pushed out by the retry backoff after each failed attempt.
+     */
+    @Column
+    private LocalDateTime nextAttemptAt;
+    
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
         if (retryCount == null) {
             retryCount = 0;
         }
@@ -0,0 +1,59 @@
+package com.lootchat.LootChat.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reindex checkpoint of one search alias (e.g. "messages").
+ *
+ * The alias always points at activeIndex. While a rebuild is running, buildIndex
+ * holds the versioned index being filled and buildCursor the last row id written
+ * to it, so an interrupted build resumes where it stopped. highWaterMark is the
+ * updated_at up to which changes are known to be in the active index.
+ */
+@Entity
+@Table(name = "search_index_states")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchIndexState {
+
+    @Id
+    @Column(name = "alias_name", length = 100)
+    private String aliasName;
+
+    @Column(name = "active_index", length = 150)
+    private String activeIndex;
+
+    /**
+     * Fingerprint of the settings and mapping of the newest index (the build, or the
+     * active index when no build is running). A mismatch triggers a rebuild.
+     */
+    @Column(name = "mapping_hash", length = 32)
+    private String mappingHash;
+
+    @Column(name = "build_index", length = 150)
+    private String buildIndex;
+
+    @Column(name = "build_cursor")
+    private Long buildCursor;
+
+    @Column(name = "build_started_at")
+    private LocalDateTime buildStartedAt;
+
+    @Column(name = "high_water_mark")
+    private LocalDateTime highWaterMark;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -50,6 +50,13 @@ public class UserChannelReadState {
     @Column(name = "last_read_message_id")
     private Long lastReadMessageId;
 
+    /**
+     * Channel sequence number of the last message the user has read.
+     * Unread count is the channel's lastMessageSeq minus this value.
+     */
+    @Column(name = "last_read_seq")
+    private Long lastReadSeq;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -2,6 +2,8 @@ package com.lootchat.LootChat.repository;
 
 import com.lootchat.LootChat.entity.Channel;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -13,4 +15,18 @@ public interface ChannelRepository extends JpaRepository<Channel, Long> {
     Optional<Channel> findByName(String name);
     
     List<Channel> findAllByOrderByNameAsc();
+    
+    /**
+     * Allocate the next message sequence number in a channel.
+     * The row lock orders concurrent inserts into the same channel.
+     */
+    @Query(value = "UPDATE channels SET last_message_seq = last_message_seq + 1 WHERE id = :channelId " +
+            "RETURNING last_message_seq", nativeQuery = true)
+    Long incrementMessageSeq(@Param("channelId") Long channelId);
+    
+    /**
+     * Head sequence of every channel as [channelId, lastMessageSeq].
+     */
+    @Query("SELECT c.id, c.lastMessageSeq FROM Channel c")
+    List<Object[]> findAllMessageSeqs();
 }
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,15 +27,39 @@ public interface DirectMessageMessageRepository extends JpaRepository<DirectMess
            "WHERE dmm.id = :id")
     Optional<DirectMessageMessage> findByIdWithSenderAndDirectMessage(@Param("id") Long id);
     
+    /**
+     * Messages from the other participant after the user's read watermark.
+     */
     @Query("SELECT COUNT(dmm) FROM DirectMessageMessage dmm " +
            "WHERE dmm.directMessage.id = :directMessageId " +
            "AND dmm.sender.id != :userId " +
-           "AND dmm.isRead = false")
-    int countUnreadMessages(@Param("directMessageId") Long directMessageId, @Param("userId") Long userId);
+           "AND dmm.id > :lastReadMessageId")
+    int countUnreadMessages(@Param("directMessageId") Long directMessageId,
+                            @Param("userId") Long userId,
+                            @Param("lastReadMessageId") long lastReadMessageId);
     
     @Query("SELECT dmm FROM DirectMessageMessage dmm " +
            "WHERE dmm.directMessage.id = :directMessageId " +
            "ORDER BY dmm.createdAt DESC " +
            "LIMIT 1")
     Optional<DirectMessageMessage> findLastMessageByDirectMessageId(@Param("directMessageId") Long directMessageId);
+    
+    /**
+     * Next chunk of messages in id order, for streaming a full search reindex.
+     */
+    @Query("SELECT dmm FROM DirectMessageMessage dmm " +
+           "JOIN FETCH dmm.sender JOIN FETCH dmm.directMessage dm JOIN FETCH dm.user1 JOIN FETCH dm.user2 " +
+           "WHERE dmm.id > :afterId ORDER BY dmm.id")
+    List<DirectMessageMessage> findForIndexingAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * Next chunk of messages changed since a point in time, in (updatedAt, id) order.
+     */
+    @Query("SELECT dmm FROM DirectMessageMessage dmm " +
+           "JOIN FETCH dmm.sender JOIN FETCH dmm.directMessage dm JOIN FETCH dm.user1 JOIN FETCH dm.user2 " +
+           "WHERE dmm.updatedAt > :since OR (dmm.updatedAt = :since AND dmm.id > :afterId) " +
+           "ORDER BY dmm.updatedAt, dmm.id")
+    List<DirectMessageMessage> findForIndexingChangedSince(@Param("since") LocalDateTime since,
+                                                           @Param("afterId") Long afterId,
+                                                           Pageable pageable);
 }
@@ -2,10 +2,12 @@ package com.lootchat.LootChat.repository;
 
 import com.lootchat.LootChat.entity.DirectMessage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,8 +19,13 @@ public interface DirectMessageRepository extends JpaRepository<DirectMessage, Lo
            "(dm.user1.id = :userId2 AND dm.user2.id = :userId1)")
     Optional<DirectMessage> findByBothUsers(@Param("userId1") Long userId1, @Param("userId2") Long userId2);
     
-    @Query("SELECT dm FROM DirectMessage dm WHERE " +
-           "dm.user1.id = :userId OR dm.user2.id = :userId " +
+    /**
+     * All conversations of a user with both participants, for the sidebar in one query.
+     */
+    @Query("SELECT dm FROM DirectMessage dm " +
+           "JOIN FETCH dm.user1 " +
+           "JOIN FETCH dm.user2 " +
+           "WHERE dm.user1.id = :userId OR dm.user2.id = :userId " +
            "ORDER BY dm.lastMessageAt DESC NULLS LAST")
     List<DirectMessage> findAllByUser(@Param("userId") Long userId);
     
@@ -27,4 +34,84 @@ public interface DirectMessageRepository extends JpaRepository<DirectMessage, Lo
            "LEFT JOIN FETCH dm.user2 " +
            "WHERE dm.id = :id")
     Optional<DirectMessage> findByIdWithUsers(@Param("id") Long id);
+    
+    /**
+     * Update the summary for a new message and count it as unread for the recipient.
+     * Atomic, so concurrent sends never lose an increment.
+     */
+    @Modifying
+    @Query(value = "UPDATE direct_messages SET " +
+                   "last_message_id = :messageId, " +
+                   "last_message_content = :content, " +
+                   "last_message_at = :sentAt, " +
+                   "user1_unread_count = user1_unread_count + CASE WHEN user1_id = :recipientId THEN 1 ELSE 0 END, " +
+                   "user2_unread_count = user2_unread_count + CASE WHEN user2_id = :recipientId THEN 1 ELSE 0 END, " +
+                   "updated_at = :sentAt " +
+                   "WHERE id = :id",
+           nativeQuery = true)
+    int recordMessage(@Param("id") Long id,
+                      @Param("recipientId") Long recipientId,
+                      @Param("messageId") Long messageId,
+                      @Param("content") String content,
+                      @Param("sentAt") LocalDateTime sentAt);
+    
+    /**
+     * Move a participant's read watermark to the newest message (never backwards) and
+     * uncount the messages it passed over, in one statement.
+     *
+     * The count is reduced rather than set to 0: a message sent concurrently is counted by
+     * recordMessage on the row this statement waits for, but is not visible to its
+     * subqueries, so it stays above the watermark and stays counted.
+     */
+    @Modifying
+    @Query(value = "UPDATE direct_messages dm SET " +
+                   "user1_last_read_message_id = CASE WHEN dm.user1_id = :userId " +
+                   "  THEN GREATEST(COALESCE(dm.user1_last_read_message_id, 0), latest.id) ELSE dm.user1_last_read_message_id END, " +
+                   "user2_last_read_message_id = CASE WHEN dm.user2_id = :userId " +
+                   "  THEN GREATEST(COALESCE(dm.user2_last_read_message_id, 0), latest.id) ELSE dm.user2_last_read_message_id END, " +
+                   "user1_unread_count = CASE WHEN dm.user1_id = :userId " +
+                   "  THEN GREATEST(dm.user1_unread_count - (SELECT COUNT(*) FROM direct_message_messages m " +
+                   "    WHERE m.direct_message_id = dm.id AND m.sender_id = dm.user2_id AND m.deleted = false " +
+                   "    AND m.id > COALESCE(dm.user1_last_read_message_id, 0) AND m.id <= latest.id), 0) " +
+                   "  ELSE dm.user1_unread_count END, " +
+                   "user2_unread_count = CASE WHEN dm.user2_id = :userId " +
+                   "  THEN GREATEST(dm.user2_unread_count - (SELECT COUNT(*) FROM direct_message_messages m " +
+                   "    WHERE m.direct_message_id = dm.id AND m.sender_id = dm.user1_id AND m.deleted = false " +
+                   "    AND m.id > COALESCE(dm.user2_last_read_message_id, 0) AND m.id <= latest.id), 0) " +
+                   "  ELSE dm.user2_unread_count END " +
+                   "FROM (SELECT COALESCE(MAX(id), 0) AS id FROM direct_message_messages " +
+                   "      WHERE direct_message_id = :id) latest " +
+                   "WHERE dm.id = :id",
+           nativeQuery = true)
+    int markRead(@Param("id") Long id, @Param("userId") Long userId);
+    
+    /**
+     * Reflect a deleted message in the summary: uncount it if the recipient had not
+     * read it yet, and clear the preview if it was the last message.
+     */
+    @Modifying
+    @Query(value = "UPDATE direct_messages SET " +
+                   "user1_unread_count = CASE WHEN user1_id = :recipientId " +
+                   "  AND :messageId > COALESCE(user1_last_read_message_id, 0) " +
+                   "  THEN GREATEST(user1_unread_count - 1, 0) ELSE user1_unread_count END, " +
+                   "user2_unread_count = CASE WHEN user2_id = :recipientId " +
+                   "  AND :messageId > COALESCE(user2_last_read_message_id, 0) " +
+                   "  THEN GREATEST(user2_unread_count - 1, 0) ELSE user2_unread_count END, " +
+                   "last_message_content = CASE WHEN last_message_id = :messageId THEN '' ELSE last_message_content END " +
+                   "WHERE id = :id",
+           nativeQuery = true)
+    int recordMessageDeleted(@Param("id") Long id,
+                             @Param("recipientId") Long recipientId,
+                             @Param("messageId") Long messageId);
+    
+    /**
+     * Update the preview if the edited message is the last one.
+     */
+    @Modifying
+    @Query(value = "UPDATE direct_messages SET last_message_content = :content " +
+                   "WHERE id = :id AND last_message_id = :messageId",
+           nativeQuery = true)
+    int recordMessageEdited(@Param("id") Long id,
+                            @Param("messageId") Long messageId,
+                            @Param("content") String content);
 }
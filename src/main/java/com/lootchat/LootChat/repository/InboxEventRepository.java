@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,7 +17,7 @@ import java.util.Optional;
  * Supports the Inbox Pattern for exactly-once Kafka message processing.
  */
 @Repository
-public interface InboxEventRepository extends JpaRepository<InboxEvent, Long> {
+public interface InboxEventRepository extends JpaRepository<InboxEvent, Long>, InboxEventRepositoryCustom {
     
     /**
      * Check if an event with the given idempotency key already exists.
@@ -38,6 +39,48 @@ public interface InboxEventRepository extends JpaRepository<InboxEvent, Long> {
     List<InboxEvent> findUnprocessedEvents(@Param("maxRetries") int maxRetries, 
                                             org.springframework.data.domain.Pageable pageable);
     
+    /**
+     * Find a batch of unclaimed, unprocessed events for one message-key partition.
+     * Rows are locked FOR UPDATE SKIP LOCKED until the calling transaction ends, which
+     * leases them (leaseEvents) so concurrent workers never pick up the same event.
+     * All events of a message key hash to the same partition, which keeps per-key ordering;
+     * an event is also held back while an earlier event of its key is still claimed or
+     * waiting out its retry backoff, so a failed event is never overtaken.
+     */
+    @Query(value = "SELECT e.* FROM inbox_events e WHERE e.processed = false AND e.retry_count < :maxRetries " +
+                   "AND (e.claimed_until IS NULL OR e.claimed_until < now()) " +
+                   "AND abs(CAST(hashtext(COALESCE(e.message_key, '')) AS bigint)) % :partitions = :partition " +
+                   "AND NOT EXISTS (SELECT 1 FROM inbox_events earlier " +
+                   "  WHERE earlier.message_key = e.message_key AND earlier.processed = false " +
+                   "  AND earlier.retry_count < :maxRetries AND earlier.claimed_until >= now() " +
+                   "  AND (earlier.created_at, earlier.id) < (e.created_at, e.id)) " +
+                   "ORDER BY e.created_at, e.id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<InboxEvent> claimUnprocessedEvents(@Param("maxRetries") int maxRetries,
+                                            @Param("partitions") int partitions,
+                                            @Param("partition") int partition,
+                                            @Param("limit") int limit);
+    
+    /**
+     * Mark claimed events as in flight until the given time.
+     */
+    @Modifying
+    @Query("UPDATE InboxEvent e SET e.claimedUntil = :claimedUntil WHERE e.id IN :ids")
+    int leaseEvents(@Param("ids") Collection<Long> ids, @Param("claimedUntil") LocalDateTime claimedUntil);
+    
+    /**
+     * Release the claim on events handed back without being attempted.
+     */
+    @Modifying
+    @Query("UPDATE InboxEvent e SET e.claimedUntil = null WHERE e.id IN :ids")
+    int releaseEvents(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Creation time of the oldest event still waiting to be processed (for lag reporting).
+     */
+    @Query("SELECT MIN(e.createdAt) FROM InboxEvent e WHERE e.processed = false AND e.retryCount < :maxRetries")
+    LocalDateTime findOldestUnprocessedCreatedAt(@Param("maxRetries") int maxRetries);
+    
     /**
      * Find unprocessed events for a specific topic.
      */
@@ -79,14 +122,6 @@ public interface InboxEventRepository extends JpaRepository<InboxEvent, Long> {
     @Query("SELECT COUNT(e) FROM InboxEvent e WHERE e.processed = false AND e.retryCount >= :maxRetries")
     long countExhaustedEvents(@Param("maxRetries") int maxRetries);
     
-    /**
-     * Delete old processed events for cleanup.
-     * Returns number of deleted records.
-     */
-    @Modifying
-    @Query("DELETE FROM InboxEvent e WHERE e.processed = true AND e.processedAt < :cutoffTime")
-    int deleteProcessedEventsBefore(@Param("cutoffTime") LocalDateTime cutoffTime);
-    
     /**
      * Mark an event as processed.
      */
@@ -97,12 +132,30 @@ public interface InboxEventRepository extends JpaRepository<InboxEvent, Long> {
                         @Param("processedAt") LocalDateTime processedAt,
                         @Param("processorInstance") String processorInstance);
     
+    /**
+     * Mark a batch of events as processed with a single statement.
+     */
+    @Modifying
+    @Query("UPDATE InboxEvent e SET e.processed = true, e.processedAt = :processedAt, " +
+           "e.processorInstance = :processorInstance, e.lastError = null WHERE e.id IN :ids")
+    int markAllAsProcessed(@Param("ids") Collection<Long> ids,
+                           @Param("processedAt") LocalDateTime processedAt,
+                           @Param("processorInstance") String processorInstance);
+    
     /**
      * Increment retry count and set error for a failed event.
+     * Its claim is extended by a backoff of 2^retryCount seconds after this attempt (the same
+     * schedule as the outbox), so it is not retried immediately and later events of its key
+     * stay held back until it is.
      */
     @Modifying
-    @Query("UPDATE InboxEvent e SET e.retryCount = e.retryCount + 1, e.lastError = :error WHERE e.id = :id")
-    int incrementRetryCount(@Param("id") Long id, @Param("error") String error);
+    @Query(value = "UPDATE inbox_events SET retry_count = retry_count + 1, last_error = :error, " +
+                   "claimed_until = CAST(:attemptedAt AS timestamp) + make_interval(secs => power(2, retry_count + 1)) " +
+                   "WHERE id = :id",
+           nativeQuery = true)
+    int incrementRetryCount(@Param("id") Long id,
+                            @Param("error") String error,
+                            @Param("attemptedAt") LocalDateTime attemptedAt);
     
     /**
      * Find events by topic for monitoring.
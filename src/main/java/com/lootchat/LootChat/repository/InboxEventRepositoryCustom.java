@@ -0,0 +1,19 @@
+package com.lootchat.LootChat.repository;
+
+import com.lootchat.LootChat.entity.InboxEvent;
+
+import java.util.List;
+
+/**
+ * Bulk operations on the inbox table that Spring Data cannot derive.
+ */
+public interface InboxEventRepositoryCustom {
+
+    /**
+     * Insert all events with multi-row INSERT ... ON CONFLICT DO NOTHING.
+     * Duplicates (same idempotency key and Kafka timestamp) are skipped by the database.
+     *
+     * @return number of rows actually inserted
+     */
+    int insertIgnoringDuplicates(List<InboxEvent> events);
+}
@@ -0,0 +1,62 @@
+package com.lootchat.LootChat.repository;
+
+import com.lootchat.LootChat.entity.InboxEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class InboxEventRepositoryCustomImpl implements InboxEventRepositoryCustom {
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO inbox_events (idempotency_key, event_type, payload, topic, kafka_partition, " +
+            "kafka_offset, message_key, received_at, created_at, processed, retry_count) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, false, 0)";
+    private static final String CONFLICT_CLAUSE = " ON CONFLICT (idempotency_key, received_at) DO NOTHING";
+
+    // Keeps each statement well under the 32767 bind parameter limit of the Postgres protocol
+    private static final int ROWS_PER_STATEMENT = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int insertIgnoringDuplicates(List<InboxEvent> events) {
+        int inserted = 0;
+        for (int from = 0; from < events.size(); from += ROWS_PER_STATEMENT) {
+            List<InboxEvent> chunk = events.subList(from, Math.min(from + ROWS_PER_STATEMENT, events.size()));
+            inserted += insertChunk(chunk);
+        }
+        return inserted;
+    }
+
+    private int insertChunk(List<InboxEvent> events) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+        List<Object> args = new ArrayList<>(events.size() * 9);
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+
+            InboxEvent event = events.get(i);
+            args.add(event.getIdempotencyKey());
+            args.add(event.getEventType());
+            args.add(event.getPayload());
+            args.add(event.getTopic());
+            args.add(event.getKafkaPartition());
+            args.add(event.getKafkaOffset());
+            args.add(event.getMessageKey());
+            args.add(Timestamp.valueOf(event.getReceivedAt() != null ? event.getReceivedAt() : now));
+            args.add(Timestamp.valueOf(now));
+        }
+        sql.append(CONFLICT_CLAUSE);
+
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+}
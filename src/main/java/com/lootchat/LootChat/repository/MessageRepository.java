@@ -56,4 +56,20 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     
     @Query("SELECT m FROM Message m LEFT JOIN FETCH m.user LEFT JOIN FETCH m.channel WHERE m.id = :id")
     Optional<Message> findByIdWithUserAndChannel(@Param("id") Long id);
+    
+    /**
+     * Next chunk of messages in id order, for streaming a full search reindex.
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.user JOIN FETCH m.channel WHERE m.id > :afterId ORDER BY m.id")
+    List<Message> findForIndexingAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * Next chunk of messages changed since a point in time, in (updatedAt, id) order.
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.user JOIN FETCH m.channel " +
+           "WHERE m.updatedAt > :since OR (m.updatedAt = :since AND m.id > :afterId) " +
+           "ORDER BY m.updatedAt, m.id")
+    List<Message> findForIndexingChangedSince(@Param("since") LocalDateTime since,
+                                              @Param("afterId") Long afterId,
+                                              Pageable pageable);
 }
@@ -4,31 +4,34 @@ import com.lootchat.LootChat.entity.OutboxEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
     
     /**
-     * Find unprocessed events ordered by creation time.
-     * Uses LIMIT to prevent loading too many events at once.
+     * Find due events (fresh ones and failed ones whose backoff has elapsed) in creation order.
+     * An event is held back while an earlier event with the same message key is still waiting
+     * out its backoff, so a retry is never overtaken by newer events of its aggregate.
+     * Both the due filter and the held-back lookup are served by the partial index idx_outbox_due
+     * (next_attempt_at WHERE processed = false), so the cost is bounded by the pending rows only.
      */
-    @Query("SELECT e FROM OutboxEvent e WHERE e.processed = false ORDER BY e.createdAt ASC LIMIT 100")
-    List<OutboxEvent> findUnprocessedEvents();
-    
-    /**
-     * Find unprocessed events ordered by creation time (legacy method for compatibility)
-     */
-    List<OutboxEvent> findByProcessedFalseOrderByCreatedAtAsc();
-    
-    /**
-     * Find failed events that should be retried (max 5 retries, with backoff)
-     */
-    @Query("SELECT e FROM OutboxEvent e WHERE e.processed = false AND e.retryCount < 5 AND e.createdAt < :before ORDER BY e.createdAt ASC LIMIT 50")
-    List<OutboxEvent> findRetryableEvents(LocalDateTime before);
+    @Query(value = "SELECT e.* FROM outbox_events e WHERE e.processed = false " +
+                   "AND e.retry_count < :maxRetries AND e.next_attempt_at <= :now " +
+                   "AND NOT EXISTS (SELECT 1 FROM outbox_events earlier " +
+                   "  WHERE earlier.processed = false AND earlier.next_attempt_at > :now " +
+                   "  AND earlier.retry_count < :maxRetries AND earlier.message_key = e.message_key " +
+                   "  AND (earlier.created_at, earlier.id) < (e.created_at, e.id)) " +
+                   "ORDER BY e.created_at, e.id LIMIT :limit",
+           nativeQuery = true)
+    List<OutboxEvent> findDueEvents(@Param("maxRetries") int maxRetries,
+                                    @Param("now") LocalDateTime now,
+                                    @Param("limit") int limit);
     
     /**
      * Find events that have permanently failed (exceeded retry limit)
@@ -47,9 +50,10 @@ public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long>
     long countByProcessedFalseAndRetryCountGreaterThanEqual(int retryCount);
     
     /**
-     * Clean up old processed events (for maintenance)
+     * Creation time of the oldest event still waiting to be published - for lag monitoring
      */
-    void deleteByProcessedTrueAndProcessedAtBefore(LocalDateTime before);
+    @Query("SELECT MIN(e.createdAt) FROM OutboxEvent e WHERE e.processed = false AND e.retryCount < :maxRetries")
+    LocalDateTime findOldestPendingCreatedAt(@Param("maxRetries") int maxRetries);
     
     /**
      * Move permanently failed events to dead letter (mark for manual review)
@@ -57,4 +61,32 @@ public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long>
     @Modifying
     @Query("UPDATE OutboxEvent e SET e.eventType = CONCAT('DLQ_', e.eventType) WHERE e.processed = false AND e.retryCount >= :maxRetries")
     void markDeadLetterEvents(int maxRetries);
+    
+    /**
+     * Mark a batch of events as published with a single statement.
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.processed = true, e.processedAt = :processedAt, e.lastError = null " +
+           "WHERE e.id IN :ids")
+    int markAsProcessed(@Param("ids") Collection<Long> ids, @Param("processedAt") LocalDateTime processedAt);
+    
+    /**
+     * Record a failed publish attempt for a batch with a single statement.
+     * Backoff is computed per row from its own retry count (2^retryCount seconds after this attempt),
+     * and rows that reach the retry limit are moved to dead letter in the same statement.
+     * All SET expressions see the pre-update row, so retry_count + 1 is the new count everywhere.
+     */
+    @Modifying
+    @Query(value = "UPDATE outbox_events SET " +
+                   "retry_count = retry_count + 1, " +
+                   "last_error = :error, " +
+                   "next_attempt_at = CAST(:attemptedAt AS timestamp) + make_interval(secs => power(2, retry_count + 1)), " +
+                   "event_type = CASE WHEN retry_count + 1 >= :maxRetries AND LEFT(event_type, 4) <> 'DLQ_' " +
+                   "THEN 'DLQ_' || event_type ELSE event_type END " +
+                   "WHERE id IN (:ids)",
+           nativeQuery = true)
+    int recordFailedAttempt(@Param("ids") Collection<Long> ids,
+                            @Param("error") String error,
+                            @Param("attemptedAt") LocalDateTime attemptedAt,
+                            @Param("maxRetries") int maxRetries);
 }
@@ -0,0 +1,9 @@
+package com.lootchat.LootChat.repository;
+
+import com.lootchat.LootChat.entity.SearchIndexState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SearchIndexStateRepository extends JpaRepository<SearchIndexState, String> {
+}
@@ -29,9 +29,43 @@ public interface UserChannelReadStateRepository extends JpaRepository<UserChanne
                        @Param("lastReadMessageId") Long lastReadMessageId,
                        @Param("updatedAt") LocalDateTime updatedAt);
 
+    /**
+     * Last read sequence per channel for a user as [channelId, lastReadSeq].
+     */
+    @Query("SELECT ucrs.channel.id, ucrs.lastReadSeq FROM UserChannelReadState ucrs WHERE ucrs.user.id = :userId")
+    List<Object[]> findLastReadSeqsByUserId(@Param("userId") Long userId);
+
     @Query("SELECT ucrs.channel.id FROM UserChannelReadState ucrs WHERE ucrs.user.id = :userId")
     List<Long> findChannelIdsByUserId(@Param("userId") Long userId);
 
+    /**
+     * Create the read state of every user for a channel in one statement, positioned
+     * at the channel head so existing messages are not unread. Existing rows are kept.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_channel_read_states " +
+                   "(user_id, channel_id, last_read_at, last_read_seq, created_at, updated_at) " +
+                   "SELECT u.id, c.id, :now, c.last_message_seq, :now, :now " +
+                   "FROM users u CROSS JOIN channels c WHERE c.id = :channelId " +
+                   "ON CONFLICT (user_id, channel_id) DO NOTHING",
+           nativeQuery = true)
+    int insertMissingForChannel(@Param("channelId") Long channelId, @Param("now") LocalDateTime now);
+
+    /**
+     * Create the read state of a user for every channel in one statement, positioned
+     * at each channel head so existing messages are not unread. Existing rows are kept.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_channel_read_states " +
+                   "(user_id, channel_id, last_read_at, last_read_seq, created_at, updated_at) " +
+                   "SELECT :userId, c.id, :now, c.last_message_seq, :now, :now FROM channels c " +
+                   "ON CONFLICT (user_id, channel_id) DO NOTHING",
+           nativeQuery = true)
+    int insertMissingForUser(@Param("userId") Long userId, @Param("now") LocalDateTime now);
+
+    @Query("SELECT ucrs.user.id FROM UserChannelReadState ucrs WHERE ucrs.channel.id = :channelId")
+    List<Long> findUserIdsByChannelId(@Param("channelId") Long channelId);
+
     void deleteByChannelId(Long channelId);
 
     void deleteByUserId(Long userId);
@@ -1,11 +1,7 @@
 package com.lootchat.LootChat.service.channel;
 
 import com.lootchat.LootChat.dto.channel.UnreadCountResponse;
-import com.lootchat.LootChat.entity.Channel;
-import com.lootchat.LootChat.entity.User;
-import com.lootchat.LootChat.entity.UserChannelReadState;
 import com.lootchat.LootChat.repository.ChannelRepository;
-import com.lootchat.LootChat.repository.MessageRepository;
 import com.lootchat.LootChat.repository.UserChannelReadStateRepository;
 import com.lootchat.LootChat.repository.UserRepository;
 import com.lootchat.LootChat.security.CurrentUserService;
@@ -23,6 +19,11 @@ import java.util.stream.Collectors;
 /**
  * Service for managing user channel read states and calculating unread counts.
  * This enables persistent notification tracking for offline users.
+ *
+ * Unread counts are sequence differences: channel head (ChannelSequenceService)
+ * minus the user's lastReadSeq, so no messages are counted per request.
+ * They seed the per-user Redis counters (UnreadCounterService), which serve reads
+ * and are kept current by message creation and markChannelAsRead.
  */
 @Service
 @RequiredArgsConstructor
@@ -31,45 +32,26 @@ public class ChannelReadStateService {
 
     private final UserChannelReadStateRepository readStateRepository;
     private final ChannelRepository channelRepository;
-    private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final CurrentUserService currentUserService;
+    private final ChannelSequenceService channelSequenceService;
+    private final UnreadCounterService unreadCounterService;
+    private final ReadStateBuffer readStateBuffer;
 
     /**
      * Mark a channel as read for the current user.
-     * Updates the lastReadAt timestamp to now and sets the lastReadMessageId.
+     * Moves the read position to the channel head. The watermark is buffered and
+     * written in the next batched flush (ReadStateBuffer); the unread counter is
+     * reset right away.
      */
-    @Transactional
     public void markChannelAsRead(Long channelId) {
         Long userId = currentUserService.getCurrentUserIdOrThrow();
         
-        Channel channel = channelRepository.findById(channelId)
+        long head = channelSequenceService.findHead(channelId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Channel not found"));
         
-        Optional<Long> latestMessageId = messageRepository.findLatestMessageIdInChannel(channelId);
-        LocalDateTime now = LocalDateTime.now();
-        
-        Optional<UserChannelReadState> existingState = readStateRepository.findByUserIdAndChannelId(userId, channelId);
-        
-        if (existingState.isPresent()) {
-            // Update existing record
-            UserChannelReadState state = existingState.get();
-            state.setLastReadAt(now);
-            state.setLastReadMessageId(latestMessageId.orElse(null));
-            readStateRepository.save(state);
-        } else {
-            // Create new record
-            User user = userRepository.findById(userId)
-                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
-            
-            UserChannelReadState newState = UserChannelReadState.builder()
-                    .user(user)
-                    .channel(channel)
-                    .lastReadAt(now)
-                    .lastReadMessageId(latestMessageId.orElse(null))
-                    .build();
-            readStateRepository.save(newState);
-        }
+        readStateBuffer.mark(userId, channelId, head, LocalDateTime.now());
+        unreadCounterService.reset(userId, channelId, head);
         
         log.debug("Marked channel {} as read for user {}", channelId, userId);
     }
@@ -86,41 +68,41 @@ public class ChannelReadStateService {
 
     /**
      * Get unread counts for all channels for a specific user.
+     * Served by a single HGETALL of the user's Redis counters; the first read
+     * seeds them from the sequence-based read positions.
      */
     @Transactional(readOnly = true)
     public Map<Long, Integer> getUnreadCountsForUser(Long userId) {
-        // Get all channels
-        List<Channel> allChannels = channelRepository.findAll();
+        Optional<Map<Long, Integer>> counters = unreadCounterService.getCounts(userId);
+        if (counters.isPresent()) {
+            return counters.get();
+        }
         
-        // Get user's read states
-        List<UserChannelReadState> readStates = readStateRepository.findByUserId(userId);
-        Map<Long, LocalDateTime> lastReadMap = readStates.stream()
-                .collect(Collectors.toMap(
-                        state -> state.getChannel().getId(),
-                        UserChannelReadState::getLastReadAt
-                ));
+        Map<Long, Long> heads = channelSequenceService.getHeads();
+        Map<Long, Long> readSeqs = readPositions(userId, heads);
+        unreadCounterService.seed(userId, heads, readSeqs);
         
         Map<Long, Integer> unreadCounts = new HashMap<>();
-        
-        for (Channel channel : allChannels) {
-            Long channelId = channel.getId();
-            LocalDateTime lastReadAt = lastReadMap.get(channelId);
-            
-            int unreadCount;
-            if (lastReadAt == null) {
-                // User has never read this channel - count all messages
-                // But to avoid overwhelming new users, we cap it at 99
-                int totalMessages = messageRepository.countAllMessagesInChannel(channelId);
-                unreadCount = Math.min(totalMessages, 99);
-            } else {
-                // Count messages after last read
-                unreadCount = messageRepository.countUnreadMessagesInChannel(channelId, lastReadAt);
-            }
-            
-            unreadCounts.put(channelId, unreadCount);
+        heads.forEach((channelId, head) ->
+                unreadCounts.put(channelId, (int) Math.max(0, head - readSeqs.get(channelId))));
+        return unreadCounts;
+    }
+
+    /**
+     * Read position per channel from the database: one indexed read-state query,
+     * regardless of channel count.
+     */
+    private Map<Long, Long> readPositions(Long userId, Map<Long, Long> heads) {
+        Map<Long, Long> lastReadSeqs = new HashMap<>();
+        for (Object[] row : readStateRepository.findLastReadSeqsByUserId(userId)) {
+            lastReadSeqs.put((Long) row[0], row[1] != null ? (Long) row[1] : 0L);
         }
+        // Reads on this pod that are not flushed yet
+        readStateBuffer.pendingSeqs(userId).forEach((channelId, seq) -> lastReadSeqs.merge(channelId, seq, Math::max));
         
-        return unreadCounts;
+        Map<Long, Long> readSeqs = new HashMap<>();
+        heads.forEach((channelId, head) -> readSeqs.put(channelId, readPosition(head, lastReadSeqs.get(channelId))));
+        return readSeqs;
     }
 
     /**
@@ -130,15 +112,29 @@ public class ChannelReadStateService {
     public int getUnreadCountForChannel(Long channelId) {
         Long userId = currentUserService.getCurrentUserIdOrThrow();
         
-        Optional<UserChannelReadState> readState = readStateRepository.findByUserIdAndChannelId(userId, channelId);
-        
-        if (readState.isEmpty()) {
-            // Never read - count all messages (capped)
-            int totalMessages = messageRepository.countAllMessagesInChannel(channelId);
-            return Math.min(totalMessages, 99);
+        Long lastReadSeq = readStateBuffer.pendingSeq(userId, channelId);
+        if (lastReadSeq == null) {
+            lastReadSeq = readStateRepository.findByUserIdAndChannelId(userId, channelId)
+                    .map(state -> state.getLastReadSeq() != null ? state.getLastReadSeq() : 0L)
+                    .orElse(null);
         }
         
-        return messageRepository.countUnreadMessagesInChannel(channelId, readState.get().getLastReadAt());
+        return unreadCount(channelSequenceService.getHead(channelId), lastReadSeq);
+    }
+
+    /**
+     * Messages after the read position.
+     */
+    private int unreadCount(long head, Long lastReadSeq) {
+        return (int) Math.max(0, head - readPosition(head, lastReadSeq));
+    }
+
+    /**
+     * A channel the user has never read counts all its messages, capped at 99 to
+     * avoid overwhelming new users, so its read position is 99 behind the head.
+     */
+    private long readPosition(long head, Long lastReadSeq) {
+        return lastReadSeq != null ? lastReadSeq : Math.max(0, head - 99);
     }
 
     /**
@@ -158,57 +154,36 @@ public class ChannelReadStateService {
     /**
      * Initialize read states for a user for all existing channels.
      * Called when a user logs in for the first time or to sync states.
+     * A single INSERT ... SELECT, independent of the number of channels.
      */
     @Transactional
     public void initializeReadStatesForUser(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
-        
-        List<Channel> allChannels = channelRepository.findAll();
-        Set<Long> existingChannelIds = new HashSet<>(readStateRepository.findChannelIdsByUserId(userId));
-        
-        LocalDateTime now = LocalDateTime.now();
-        
-        for (Channel channel : allChannels) {
-            if (!existingChannelIds.contains(channel.getId())) {
-                // Create read state with current time (so user doesn't see old messages as unread)
-                UserChannelReadState newState = UserChannelReadState.builder()
-                        .user(user)
-                        .channel(channel)
-                        .lastReadAt(now)
-                        .build();
-                readStateRepository.save(newState);
-            }
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         }
         
-        log.debug("Initialized read states for user {}", userId);
+        // Read position is the current head, so the user doesn't see old messages as unread
+        int created = readStateRepository.insertMissingForUser(userId, LocalDateTime.now());
+        
+        log.debug("Initialized {} read states for user {}", created, userId);
     }
 
     /**
      * Create read state for a new channel for all existing users.
      * Called when a new channel is created.
+     * A single INSERT ... SELECT, independent of the number of users.
      */
     @Transactional
     public void initializeReadStatesForChannel(Long channelId) {
-        Channel channel = channelRepository.findById(channelId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Channel not found"));
+        if (!channelRepository.existsById(channelId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Channel not found");
+        }
         
-        List<User> allUsers = userRepository.findAll();
-        LocalDateTime now = LocalDateTime.now();
+        channelSequenceService.registerChannel(channelId);
         
-        for (User user : allUsers) {
-            Optional<UserChannelReadState> existing = readStateRepository.findByUserIdAndChannelId(user.getId(), channelId);
-            if (existing.isEmpty()) {
-                UserChannelReadState newState = UserChannelReadState.builder()
-                        .user(user)
-                        .channel(channel)
-                        .lastReadAt(now)
-                        .build();
-                readStateRepository.save(newState);
-            }
-        }
+        int created = readStateRepository.insertMissingForChannel(channelId, LocalDateTime.now());
         
-        log.debug("Initialized read states for channel {}", channelId);
+        log.debug("Initialized {} read states for channel {}", created, channelId);
     }
 
     /**
@@ -216,7 +191,9 @@ public class ChannelReadStateService {
      */
     @Transactional
     public void deleteReadStatesForChannel(Long channelId) {
+        unreadCounterService.removeChannel(channelId);
         readStateRepository.deleteByChannelId(channelId);
+        channelSequenceService.removeChannel(channelId);
         log.debug("Deleted read states for channel {}", channelId);
     }
 }
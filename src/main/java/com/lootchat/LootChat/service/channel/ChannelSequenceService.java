@@ -0,0 +1,156 @@
+package com.lootchat.LootChat.service.channel;
+
+import com.lootchat.LootChat.repository.ChannelRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Per-channel message sequence numbers and the cached channel heads.
+ *
+ * Every channel message gets the next value of channels.last_message_seq, so the
+ * number of messages after a user's read position is simply head - lastReadSeq and
+ * unread counts need no COUNT(*) over messages.
+ *
+ * Heads of all channels are cached in the Redis hash channel:heads (channelId -> head),
+ * loaded from the channels table on a miss and advanced after each message commit.
+ * The hash expires periodically so any drift is corrected from the database.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChannelSequenceService {
+
+    public static final String HEADS_KEY = "channel:heads";
+    private static final Duration HEADS_TTL = Duration.ofHours(1);
+
+    /**
+     * Raise a channel's cached head, never lower it. Only touches a loaded cache,
+     * so a cold cache is always rebuilt completely from the database.
+     */
+    private static final RedisScript<Long> ADVANCE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "local current = redis.call('HGET', KEYS[1], ARGV[1]) " +
+            "if not current or tonumber(ARGV[2]) > tonumber(current) then " +
+            "  redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) " +
+            "  return 1 " +
+            "end " +
+            "return 0",
+            Long.class);
+
+    private final ChannelRepository channelRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * Allocate the sequence number for a new message in the channel.
+     * Must run in the transaction that inserts the message; the cached head is
+     * only advanced once that transaction commits.
+     */
+    public long nextSequence(Long channelId) {
+        long seq = channelRepository.incrementMessageSeq(channelId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    advanceHead(channelId, seq);
+                }
+            });
+        } else {
+            advanceHead(channelId, seq);
+        }
+        return seq;
+    }
+
+    /**
+     * Heads of all channels, channelId -> sequence of the newest message.
+     */
+    public Map<Long, Long> getHeads() {
+        try {
+            Map<Object, Object> cached = redisTemplate.opsForHash().entries(HEADS_KEY);
+            if (!cached.isEmpty()) {
+                Map<Long, Long> heads = new HashMap<>();
+                cached.forEach((channelId, head) ->
+                        heads.put(Long.valueOf((String) channelId), Long.valueOf((String) head)));
+                return heads;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read channel heads from Redis: {}", e.getMessage());
+        }
+        return loadHeads();
+    }
+
+    public long getHead(Long channelId) {
+        return findHead(channelId).orElse(0L);
+    }
+
+    /**
+     * Head of one channel with a single HGET, or empty if the channel does not exist.
+     * Only a field missing from the cache (cold cache or unknown channel) reads all heads.
+     */
+    public Optional<Long> findHead(Long channelId) {
+        try {
+            Object head = redisTemplate.opsForHash().get(HEADS_KEY, channelId.toString());
+            if (head != null) {
+                return Optional.of(Long.valueOf((String) head));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read head of channel {} from Redis: {}", channelId, e.getMessage());
+        }
+        return Optional.ofNullable(getHeads().get(channelId));
+    }
+
+    /**
+     * Add a newly created channel to a loaded cache.
+     */
+    public void registerChannel(Long channelId) {
+        advanceHead(channelId, 0L);
+    }
+
+    public void removeChannel(Long channelId) {
+        try {
+            redisTemplate.opsForHash().delete(HEADS_KEY, channelId.toString());
+        } catch (Exception e) {
+            log.warn("Failed to remove channel {} from head cache: {}", channelId, e.getMessage());
+        }
+    }
+
+    private Map<Long, Long> loadHeads() {
+        Map<Long, Long> heads = new HashMap<>();
+        for (Object[] row : channelRepository.findAllMessageSeqs()) {
+            heads.put((Long) row[0], row[1] != null ? (Long) row[1] : 0L);
+        }
+
+        if (!heads.isEmpty()) {
+            try {
+                Map<String, String> entries = new HashMap<>();
+                heads.forEach((channelId, head) -> entries.put(channelId.toString(), head.toString()));
+                redisTemplate.opsForHash().putAll(HEADS_KEY, entries);
+                redisTemplate.expire(HEADS_KEY, HEADS_TTL);
+            } catch (Exception e) {
+                log.warn("Failed to cache channel heads in Redis: {}", e.getMessage());
+            }
+        }
+        return heads;
+    }
+
+    private void advanceHead(Long channelId, long seq) {
+        try {
+            redisTemplate.execute(ADVANCE_SCRIPT, List.of(HEADS_KEY), channelId.toString(), String.valueOf(seq));
+        } catch (Exception e) {
+            // The next reload from the database picks the head up
+            log.warn("Failed to advance cached head for channel {}: {}", channelId, e.getMessage());
+        }
+    }
+}
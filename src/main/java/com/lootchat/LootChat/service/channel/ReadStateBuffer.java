@@ -0,0 +1,150 @@
+package com.lootchat.LootChat.service.channel;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pod-local write buffer for channel read watermarks.
+ *
+ * markChannelAsRead only records the read position here, keeping the highest
+ * sequence and latest timestamp per (user, channel), so repeated reads of a focused
+ * channel collapse into one row. The buffer is written to user_channel_read_states
+ * in one batched upsert per flush interval, and on shutdown.
+ *
+ * Watermarks are held per user (userId -> channelId -> mark), so a user's pending
+ * reads are one lookup. A flush writes a snapshot and only then removes the entries
+ * it wrote, and only if no newer read replaced them, so nothing is lost when the
+ * batch fails or a read arrives mid-flush.
+ *
+ * Reads on this pod overlay pending watermarks on the stored ones. Other pods see
+ * a read once it is flushed; badges are unaffected since the Redis unread counters
+ * are reset immediately.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReadStateBuffer {
+
+    /**
+     * The upsert never moves a watermark backwards, so flushes from several pods
+     * can land in any order. Rows for deleted users or channels are skipped.
+     */
+    private static final String UPSERT_SQL =
+            "INSERT INTO user_channel_read_states " +
+            "(user_id, channel_id, last_read_at, last_read_seq, last_read_message_id, created_at, updated_at) " +
+            "SELECT u.id, c.id, ?, ?, " +
+            "  (SELECT MAX(m.id) FROM messages m WHERE m.channel_id = c.id AND m.channel_seq <= ?), ?, ? " +
+            "FROM users u JOIN channels c ON c.id = ? WHERE u.id = ? " +
+            "ON CONFLICT (user_id, channel_id) DO UPDATE SET " +
+            "last_read_at = GREATEST(user_channel_read_states.last_read_at, EXCLUDED.last_read_at), " +
+            "last_read_seq = GREATEST(user_channel_read_states.last_read_seq, EXCLUDED.last_read_seq), " +
+            "last_read_message_id = GREATEST(user_channel_read_states.last_read_message_id, EXCLUDED.last_read_message_id), " +
+            "updated_at = EXCLUDED.updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Long, Map<Long, ReadMark>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Record that a user has read a channel up to the given sequence.
+     */
+    public void mark(Long userId, Long channelId, long seq, LocalDateTime readAt) {
+        // compute keeps this atomic with flush dropping the user's emptied map
+        pending.compute(userId, (user, marks) -> {
+            Map<Long, ReadMark> userMarks = marks != null ? marks : new ConcurrentHashMap<>();
+            userMarks.merge(channelId, new ReadMark(seq, readAt), ReadMark::max);
+            return userMarks;
+        });
+    }
+
+    /**
+     * Pending read sequence of a user in a channel, or null if none is buffered.
+     */
+    public Long pendingSeq(Long userId, Long channelId) {
+        Map<Long, ReadMark> marks = pending.get(userId);
+        ReadMark mark = marks != null ? marks.get(channelId) : null;
+        return mark != null ? mark.seq() : null;
+    }
+
+    /**
+     * Pending read sequences of a user, channelId -> seq.
+     */
+    public Map<Long, Long> pendingSeqs(Long userId) {
+        Map<Long, Long> seqs = new HashMap<>();
+        Map<Long, ReadMark> marks = pending.get(userId);
+        if (marks != null) {
+            marks.forEach((channelId, mark) -> seqs.put(channelId, mark.seq()));
+        }
+        return seqs;
+    }
+
+    /**
+     * Write all buffered watermarks in one JDBC batch. Statements are idempotent,
+     * so a batch that fails part-way is simply retried in full.
+     */
+    @Scheduled(fixedDelayString = "${read-state.flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<ReadKey, ReadMark>> batch = new ArrayList<>();
+        pending.forEach((userId, marks) -> marks.forEach((channelId, mark) ->
+                batch.add(Map.entry(new ReadKey(userId, channelId), mark))));
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batch.size(), (ps, entry) -> {
+                ReadKey key = entry.getKey();
+                ReadMark mark = entry.getValue();
+                ps.setTimestamp(1, Timestamp.valueOf(mark.readAt()));
+                ps.setLong(2, mark.seq());
+                ps.setLong(3, mark.seq());
+                ps.setTimestamp(4, now);
+                ps.setTimestamp(5, now);
+                ps.setLong(6, key.channelId());
+                ps.setLong(7, key.userId());
+            });
+            log.debug("Flushed {} read watermarks", batch.size());
+        } catch (Exception e) {
+            // Everything stays buffered and is retried with the next flush
+            log.warn("Failed to flush {} read watermarks: {}", batch.size(), e.getMessage());
+            return;
+        }
+
+        batch.forEach(entry -> pending.computeIfPresent(entry.getKey().userId(), (userId, marks) -> {
+            // A newer read that arrived during the flush stays for the next one
+            marks.remove(entry.getKey().channelId(), entry.getValue());
+            return marks.isEmpty() ? null : marks;
+        }));
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private record ReadKey(Long userId, Long channelId) {}
+
+    private record ReadMark(long seq, LocalDateTime readAt) {
+        static ReadMark max(ReadMark a, ReadMark b) {
+            return new ReadMark(Math.max(a.seq(), b.seq()),
+                    a.readAt().isAfter(b.readAt()) ? a.readAt() : b.readAt());
+        }
+    }
+}
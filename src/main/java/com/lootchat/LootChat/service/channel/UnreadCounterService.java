@@ -0,0 +1,265 @@
+package com.lootchat.LootChat.service.channel;
+
+import com.lootchat.LootChat.repository.UserChannelReadStateRepository;
+import com.lootchat.LootChat.service.common.WebSocketBroadcastService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Per-user unread counters kept in Redis and pushed to clients as they change.
+ *
+ * Each user has a hash unread:{userId} holding, per channel, the newest message
+ * sequence counted ({channelId}:head) and the read position ({channelId}:read); the
+ * unread count is head - read. Both only ever move forward, so a redelivered or
+ * reordered message event changes nothing and a read never goes backwards. Every
+ * change is pushed to /topic/user/{userId}/unread as {channelId, count}.
+ *
+ * Counts are only served once the hash is seeded (its seeded field is set) from the
+ * sequence-based counts (ChannelReadStateService). Messages and reads are recorded
+ * before that as well and seeding merges into them, so nothing that happens while a
+ * hash is being seeded is lost. Hashes expire after a week without seeding.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UnreadCounterService {
+
+    private static final String KEY_PREFIX = "unread:";
+    private static final String HEAD_SUFFIX = ":head";
+    private static final String READ_SUFFIX = ":read";
+    private static final String SEEDED_FIELD = "seeded";
+    private static final Duration COUNTERS_TTL = Duration.ofDays(7);
+    private static final String DESTINATION = "/unread";
+
+    /**
+     * Count message ARGV[2] in channel ARGV[1]. Returns the new unread count, -2 if the
+     * message was already counted, or -1 if the hash has not been seeded yet.
+     */
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "local head = tonumber(redis.call('HGET', KEYS[1], ARGV[1] .. '" + HEAD_SUFFIX + "')) or 0 " +
+            "local seq = tonumber(ARGV[2]) " +
+            "if seq <= head then return -2 end " +
+            "redis.call('HSET', KEYS[1], ARGV[1] .. '" + HEAD_SUFFIX + "', seq) " +
+            "if redis.call('TTL', KEYS[1]) == -1 then redis.call('EXPIRE', KEYS[1], ARGV[3]) end " +
+            "if redis.call('HEXISTS', KEYS[1], '" + SEEDED_FIELD + "') == 0 then return -1 end " +
+            "local read = tonumber(redis.call('HGET', KEYS[1], ARGV[1] .. '" + READ_SUFFIX + "')) or 0 " +
+            "return math.max(0, seq - read)",
+            Long.class);
+
+    /**
+     * Move the read position of channel ARGV[1] up to ARGV[2]. Returns the remaining
+     * unread count (0 unless newer messages were already counted).
+     */
+    private static final RedisScript<Long> RESET_SCRIPT = new DefaultRedisScript<>(
+            "local read = tonumber(redis.call('HGET', KEYS[1], ARGV[1] .. '" + READ_SUFFIX + "')) or 0 " +
+            "local seq = tonumber(ARGV[2]) " +
+            "if seq > read then " +
+            "  read = seq " +
+            "  redis.call('HSET', KEYS[1], ARGV[1] .. '" + READ_SUFFIX + "', seq) " +
+            "end " +
+            "if redis.call('TTL', KEYS[1]) == -1 then redis.call('EXPIRE', KEYS[1], ARGV[3]) end " +
+            "local head = tonumber(redis.call('HGET', KEYS[1], ARGV[1] .. '" + HEAD_SUFFIX + "')) or 0 " +
+            "return math.max(0, head - read)",
+            Long.class);
+
+    /**
+     * Merge (channelId, head, read) triples from ARGV[2..] into the hash, keeping the
+     * higher of each value, then mark it seeded and refresh its TTL (ARGV[1]).
+     */
+    private static final RedisScript<Long> SEED_SCRIPT = new DefaultRedisScript<>(
+            "for i = 2, #ARGV, 3 do " +
+            "  local headField = ARGV[i] .. '" + HEAD_SUFFIX + "' " +
+            "  local readField = ARGV[i] .. '" + READ_SUFFIX + "' " +
+            "  if tonumber(ARGV[i + 1]) > (tonumber(redis.call('HGET', KEYS[1], headField)) or -1) then " +
+            "    redis.call('HSET', KEYS[1], headField, ARGV[i + 1]) " +
+            "  end " +
+            "  if tonumber(ARGV[i + 2]) > (tonumber(redis.call('HGET', KEYS[1], readField)) or -1) then " +
+            "    redis.call('HSET', KEYS[1], readField, ARGV[i + 2]) " +
+            "  end " +
+            "end " +
+            "redis.call('HSET', KEYS[1], '" + SEEDED_FIELD + "', 1) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    private final UserChannelReadStateRepository readStateRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final WebSocketBroadcastService broadcastService;
+
+    @Value("${unread.counters.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Counters of a user, channelId -> unread count, in a single HGETALL.
+     * Empty if the user's hash has not been seeded yet.
+     */
+    public Optional<Map<Long, Integer>> getCounts(Long userId) {
+        try {
+            Map<Object, Object> cached = redisTemplate.opsForHash().entries(key(userId));
+            if (!cached.containsKey(SEEDED_FIELD)) {
+                return Optional.empty();
+            }
+            Map<Long, Long> heads = new HashMap<>();
+            Map<Long, Long> reads = new HashMap<>();
+            cached.forEach((field, value) -> {
+                String name = (String) field;
+                if (name.endsWith(HEAD_SUFFIX)) {
+                    heads.put(channelId(name, HEAD_SUFFIX), Long.valueOf((String) value));
+                } else if (name.endsWith(READ_SUFFIX)) {
+                    reads.put(channelId(name, READ_SUFFIX), Long.valueOf((String) value));
+                }
+            });
+            Map<Long, Integer> counts = new HashMap<>();
+            heads.forEach((channelId, head) ->
+                    counts.put(channelId, (int) Math.max(0, head - reads.getOrDefault(channelId, 0L))));
+            return Optional.of(counts);
+        } catch (Exception e) {
+            log.warn("Failed to read unread counters for user {}: {}", userId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Seed a user's hash with channel heads and read positions from the database.
+     * Values recorded in the meantime are kept where they are newer.
+     */
+    public void seed(Long userId, Map<Long, Long> heads, Map<Long, Long> readSeqs) {
+        if (heads.isEmpty()) {
+            return;
+        }
+        try {
+            List<String> args = new ArrayList<>(heads.size() * 3 + 1);
+            args.add(String.valueOf(COUNTERS_TTL.toSeconds()));
+            heads.forEach((channelId, head) -> {
+                args.add(channelId.toString());
+                args.add(head.toString());
+                args.add(readSeqs.getOrDefault(channelId, 0L).toString());
+            });
+            redisTemplate.execute(SEED_SCRIPT, List.of(key(userId)), args.toArray());
+        } catch (Exception e) {
+            log.warn("Failed to seed unread counters for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Count message seq of a channel for every reader except its author.
+     * Readers are processed in pipelined batches so large channels cost one
+     * round trip per batch instead of one per user.
+     */
+    public void incrementForChannel(Long channelId, Long authorId, long seq) {
+        List<Long> readerIds = readStateRepository.findUserIdsByChannelId(channelId).stream()
+                .filter(userId -> !userId.equals(authorId))
+                .toList();
+
+        for (int from = 0; from < readerIds.size(); from += batchSize) {
+            List<Long> batch = readerIds.subList(from, Math.min(from + batchSize, readerIds.size()));
+            try {
+                List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    String sha = INCREMENT_SCRIPT.getSha1();
+                    // Loads the script if the server's script cache was flushed; a no-op otherwise
+                    connection.scriptingCommands().scriptLoad(
+                            INCREMENT_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                    byte[] field = channelId.toString().getBytes(StandardCharsets.UTF_8);
+                    byte[] seqArg = String.valueOf(seq).getBytes(StandardCharsets.UTF_8);
+                    byte[] ttl = String.valueOf(COUNTERS_TTL.toSeconds()).getBytes(StandardCharsets.UTF_8);
+                    for (Long userId : batch) {
+                        connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1,
+                                key(userId).getBytes(StandardCharsets.UTF_8), field, seqArg, ttl);
+                    }
+                    return null;
+                });
+
+                // results.get(0) is the SCRIPT LOAD reply
+                for (int i = 0; i < batch.size(); i++) {
+                    Object count = results.get(i + 1);
+                    if (count instanceof Number number && number.longValue() >= 0) {
+                        push(batch.get(i), channelId, number.longValue());
+                    }
+                }
+            } catch (Exception e) {
+                // Counters of this batch are rebuilt from the database once their hashes expire
+                log.warn("Failed to increment unread counters for channel {}: {}", channelId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Move a user's read position in a channel to seq once the surrounding transaction commits.
+     */
+    public void reset(Long userId, Long channelId, long seq) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    resetNow(userId, channelId, seq);
+                }
+            });
+        } else {
+            resetNow(userId, channelId, seq);
+        }
+    }
+
+    /**
+     * Drop a deleted channel from the hashes of all its readers.
+     * Must run before the channel's read states are deleted, they list the readers.
+     */
+    public void removeChannel(Long channelId) {
+        List<Long> readerIds = readStateRepository.findUserIdsByChannelId(channelId);
+        byte[] headField = (channelId + HEAD_SUFFIX).getBytes(StandardCharsets.UTF_8);
+        byte[] readField = (channelId + READ_SUFFIX).getBytes(StandardCharsets.UTF_8);
+
+        for (int from = 0; from < readerIds.size(); from += batchSize) {
+            List<Long> batch = readerIds.subList(from, Math.min(from + batchSize, readerIds.size()));
+            try {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Long userId : batch) {
+                        connection.hashCommands().hDel(key(userId).getBytes(StandardCharsets.UTF_8), headField, readField);
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                log.warn("Failed to remove channel {} from unread counters: {}", channelId, e.getMessage());
+            }
+        }
+    }
+
+    private void resetNow(Long userId, Long channelId, long seq) {
+        try {
+            Long count = redisTemplate.execute(RESET_SCRIPT, List.of(key(userId)),
+                    channelId.toString(), String.valueOf(seq), String.valueOf(COUNTERS_TTL.toSeconds()));
+            // Clears the badge in the user's other tabs and devices
+            push(userId, channelId, count != null ? count : 0L);
+        } catch (Exception e) {
+            log.warn("Failed to reset unread counter for user {} channel {}: {}", userId, channelId, e.getMessage());
+        }
+    }
+
+    private void push(Long userId, Long channelId, long count) {
+        broadcastService.broadcastToUser(userId, DESTINATION, Map.of("channelId", channelId, "count", count));
+    }
+
+    private static String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    private static Long channelId(String field, String suffix) {
+        return Long.valueOf(field.substring(0, field.length() - suffix.length()));
+    }
+}
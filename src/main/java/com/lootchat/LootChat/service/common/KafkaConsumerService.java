@@ -3,14 +3,25 @@ package com.lootchat.LootChat.service.common;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lootchat.LootChat.entity.InboxEvent;
+import com.lootchat.LootChat.service.inbox.EphemeralEventDispatcher;
+import com.lootchat.LootChat.service.inbox.EventEnvelope;
+import com.lootchat.LootChat.service.inbox.EventPipelineMetrics;
 import com.lootchat.LootChat.service.inbox.InboxService;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Kafka Consumer Service using the Inbox Pattern.
@@ -18,181 +29,153 @@ import java.util.Optional;
  * This service receives messages from Kafka and stores them in the inbox table
  * for reliable, exactly-once processing. Benefits:
  * 
- * 1. Fast ACK: Messages are acknowledged to Kafka immediately after storing in inbox
+ * 1. Fast ACK: Each poll is stored with one bulk insert, then offsets are acknowledged
  * 2. Deduplication: Duplicate messages are ignored based on topic:partition:offset
+ *    (ON CONFLICT DO NOTHING, no lookup per record)
  * 3. Resilience: Messages survive consumer restarts
  * 4. Retry: Failed processing is automatically retried
  * 5. Decoupling: WebSocket broadcasting is async, won't slow down Kafka consumption
  * 
  * The actual business logic (WebSocket broadcasting) is handled by InboxEventProcessor.
+ * Ephemeral broadcast-only events (presence, reactions) bypass the inbox via EphemeralEventDispatcher.
+ * Records the inbox table rejects are sent to <topic>.DLT instead of blocking the partition.
  */
 @Service
 public class KafkaConsumerService {
 
     private static final Logger log = LoggerFactory.getLogger(KafkaConsumerService.class);
     
+    public static final String DEAD_LETTER_SUFFIX = ".DLT";
+    static final String ERROR_HEADER = "lootchat-inbox-error";
+    
+    private static final Map<String, String> TOPIC_EVENT_TYPES = Map.of(
+            "lootchat.direct.messages", "DIRECT_MESSAGE",
+            "lootchat.direct.message.reactions", "DIRECT_MESSAGE_REACTION",
+            "lootchat.direct.message.edits", "DIRECT_MESSAGE_EDIT",
+            "lootchat.direct.message.deletions", "DIRECT_MESSAGE_DELETE",
+            "lootchat.presence", "PRESENCE_UPDATED"
+    );
+    
     private final InboxService inboxService;
+    private final EphemeralEventDispatcher ephemeralEventDispatcher;
     private final ObjectMapper objectMapper;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final EventPipelineMetrics metrics;
 
-    public KafkaConsumerService(InboxService inboxService, ObjectMapper objectMapper) {
+    public KafkaConsumerService(InboxService inboxService,
+                                EphemeralEventDispatcher ephemeralEventDispatcher,
+                                ObjectMapper objectMapper,
+                                KafkaTemplate<String, String> kafkaTemplate,
+                                EventPipelineMetrics metrics) {
         this.inboxService = inboxService;
+        this.ephemeralEventDispatcher = ephemeralEventDispatcher;
         this.objectMapper = objectMapper;
+        this.kafkaTemplate = kafkaTemplate;
+        this.metrics = metrics;
     }
 
     /**
-     * Consume channel message events and store in inbox.
+     * Consume a whole poll from all inbox topics and store it in one bulk insert.
+     * Offsets are acknowledged only after the insert committed; any failure propagates
+     * to the container error handler, which re-seeks and retries the batch and dead-letters
+     * it once the retries are exhausted (see KafkaConfig#inboxBatchListenerContainerFactory).
      */
     @KafkaListener(
-        topics = "${app.kafka.topics.chat:lootchat.chat.messages}", 
+        topics = {
+            "${app.kafka.topics.chat:lootchat.chat.messages}",
+            "lootchat.direct.messages",
+            "lootchat.direct.message.reactions",
+            "lootchat.direct.message.edits",
+            "lootchat.direct.message.deletions",
+            "lootchat.presence"
+        },
         groupId = "${spring.kafka.consumer.group-id}",
-        concurrency = "${spring.kafka.listener.concurrency:3}"
+        concurrency = "${spring.kafka.listener.concurrency:3}",
+        containerFactory = "inboxBatchListenerContainerFactory"
     )
-    public void consumeChannelMessageEvent(ConsumerRecord<String, String> record) {
-        log.debug("Kafka received channel message: partition={}, offset={}", 
-                record.partition(), record.offset());
+    public void consumeInboxEvents(List<ConsumerRecord<String, String>> records, Acknowledgment acknowledgment) {
+        log.debug("Kafka received batch of {} records", records.size());
         
-        try {
-            String eventType = detectEventType(record.value());
-            Optional<InboxEvent> stored = inboxService.storeEvent(record, eventType);
-            
-            if (stored.isPresent()) {
-                log.debug("Stored channel message in inbox: id={}, type={}", 
-                        stored.get().getId(), eventType);
-            } else {
-                log.debug("Duplicate channel message ignored: partition={}, offset={}", 
-                        record.partition(), record.offset());
+        List<ConsumerRecord<String, String>> durable = new ArrayList<>(records.size());
+        List<InboxEvent> events = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, String> record : records) {
+            String eventType = resolveEventType(record);
+            if (ephemeralEventDispatcher.isEphemeral(record, eventType)) {
+                // Broadcast-only events skip the inbox table entirely
+                ephemeralEventDispatcher.dispatch(record, eventType);
+                continue;
             }
-        } catch (Exception e) {
-            log.error("Failed to store channel message in inbox: partition={}, offset={}, error={}", 
-                    record.partition(), record.offset(), e.getMessage(), e);
-            // Don't rethrow - we want to ACK the message even if inbox storage fails
-            // The message will be lost, but we prevent consumer blocking
-            // In production, you might want different behavior based on error type
+            durable.add(record);
+            events.add(inboxService.toInboxEvent(record, eventType));
         }
-    }
-
-    /**
-     * Consume direct message events and store in inbox.
-     */
-    @KafkaListener(
-        topics = "lootchat.direct.messages",
-        groupId = "${spring.kafka.consumer.group-id}",
-        concurrency = "${spring.kafka.listener.concurrency:3}"
-    )
-    public void consumeDirectMessageEvent(ConsumerRecord<String, String> record) {
-        log.debug("Kafka received DM: partition={}, offset={}", 
-                record.partition(), record.offset());
         
         try {
-            Optional<InboxEvent> stored = inboxService.storeEvent(record, "DIRECT_MESSAGE");
-            
-            if (stored.isPresent()) {
-                log.debug("Stored DM in inbox: id={}", stored.get().getId());
+            int stored = inboxService.storeEvents(events);
+            log.debug("Stored {} of {} records in inbox", stored, events.size());
+        } catch (DataIntegrityViolationException e) {
+            // A malformed record (e.g. oversized payload) fails the whole statement;
+            // store row by row so only the offending record is set aside
+            log.warn("Bulk inbox insert rejected, falling back to per-record insert: {}", e.getMessage());
+            for (int i = 0; i < durable.size(); i++) {
+                storeOrDeadLetter(durable.get(i), events.get(i));
             }
-        } catch (Exception e) {
-            log.error("Failed to store DM in inbox: partition={}, offset={}", 
-                    record.partition(), record.offset(), e);
         }
-    }
-    
-    /**
-     * Consume direct message reaction events and store in inbox.
-     */
-    @KafkaListener(
-        topics = "lootchat.direct.message.reactions",
-        groupId = "${spring.kafka.consumer.group-id}",
-        concurrency = "${spring.kafka.listener.concurrency:3}"
-    )
-    public void consumeDirectMessageReactionEvent(ConsumerRecord<String, String> record) {
-        log.debug("Kafka received DM reaction: partition={}, offset={}", 
-                record.partition(), record.offset());
         
-        try {
-            Optional<InboxEvent> stored = inboxService.storeEvent(record, "DIRECT_MESSAGE_REACTION");
-            
-            if (stored.isPresent()) {
-                log.debug("Stored DM reaction in inbox: id={}", stored.get().getId());
-            }
-        } catch (Exception e) {
-            log.error("Failed to store DM reaction in inbox: partition={}, offset={}", 
-                    record.partition(), record.offset(), e);
-        }
+        acknowledgment.acknowledge();
     }
     
     /**
-     * Consume direct message edit events and store in inbox.
+     * Store one record, sending it to the dead-letter topic if the database rejects it.
+     * Other failures (database or broker unavailable) propagate so the batch is redelivered.
      */
-    @KafkaListener(
-        topics = "lootchat.direct.message.edits",
-        groupId = "${spring.kafka.consumer.group-id}",
-        concurrency = "${spring.kafka.listener.concurrency:3}"
-    )
-    public void consumeDirectMessageEditEvent(ConsumerRecord<String, String> record) {
-        log.debug("Kafka received DM edit: partition={}, offset={}", 
-                record.partition(), record.offset());
-        
+    private void storeOrDeadLetter(ConsumerRecord<String, String> record, InboxEvent event) {
         try {
-            Optional<InboxEvent> stored = inboxService.storeEvent(record, "DIRECT_MESSAGE_EDIT");
-            
-            if (stored.isPresent()) {
-                log.debug("Stored DM edit in inbox: id={}", stored.get().getId());
+            if (!inboxService.storeEventIgnoringDuplicate(event)) {
+                log.debug("Duplicate inbox record skipped: key={}", event.getIdempotencyKey());
             }
-        } catch (Exception e) {
-            log.error("Failed to store DM edit in inbox: partition={}, offset={}", 
-                    record.partition(), record.offset(), e);
+        } catch (DataIntegrityViolationException e) {
+            log.error("Inbox rejected record, sending to {}{}: partition={}, offset={}, error={}",
+                    record.topic(), DEAD_LETTER_SUFFIX, record.partition(), record.offset(), e.getMessage());
+            metrics.recordInboxRejected(record.topic());
+            deadLetter(record, e);
         }
     }
     
-    /**
-     * Consume direct message deletion events and store in inbox.
-     */
-    @KafkaListener(
-        topics = "lootchat.direct.message.deletions",
-        groupId = "${spring.kafka.consumer.group-id}",
-        concurrency = "${spring.kafka.listener.concurrency:3}"
-    )
-    public void consumeDirectMessageDeleteEvent(ConsumerRecord<String, String> record) {
-        log.debug("Kafka received DM delete: partition={}, offset={}", 
-                record.partition(), record.offset());
+    private void deadLetter(ConsumerRecord<String, String> record, Exception cause) {
+        RecordHeaders headers = new RecordHeaders(record.headers().toArray());
+        headers.add(ERROR_HEADER, String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8));
+        ProducerRecord<String, String> deadLetter = new ProducerRecord<>(
+                record.topic() + DEAD_LETTER_SUFFIX, null, record.key(), record.value(), headers);
         
-        try {
-            Optional<InboxEvent> stored = inboxService.storeEvent(record, "DIRECT_MESSAGE_DELETE");
-            
-            if (stored.isPresent()) {
-                log.debug("Stored DM delete in inbox: id={}", stored.get().getId());
-            }
-        } catch (Exception e) {
-            log.error("Failed to store DM delete in inbox: partition={}, offset={}", 
-                    record.partition(), record.offset(), e);
+        // Wait for the broker, the offset is acknowledged right after
+        if (kafkaTemplate.isTransactional()) {
+            kafkaTemplate.executeInTransaction(ops -> ops.send(deadLetter));
+        } else {
+            kafkaTemplate.send(deadLetter).join();
         }
     }
     
     /**
-     * Consume presence events and store in inbox.
+     * Resolve the inbox event type for a record from its envelope header.
+     * Records produced before the envelope existed fall back to the topic, and
+     * channel topic events to payload detection.
      */
-    @KafkaListener(
-        topics = "lootchat.presence",
-        groupId = "${spring.kafka.consumer.group-id}",
-        concurrency = "${spring.kafka.listener.concurrency:3}"
-    )
-    public void consumePresenceEvent(ConsumerRecord<String, String> record) {
-        log.debug("Kafka received presence: partition={}, offset={}", 
-                record.partition(), record.offset());
-        
-        try {
-            Optional<InboxEvent> stored = inboxService.storeEvent(record, "PRESENCE_UPDATED");
-            
-            if (stored.isPresent()) {
-                log.debug("Stored presence in inbox: id={}", stored.get().getId());
+    private String resolveEventType(ConsumerRecord<String, String> record) {
+        String eventType = EventEnvelope.eventType(record);
+        if (eventType != null) {
+            if (EventEnvelope.version(record) > EventEnvelope.CURRENT_VERSION) {
+                log.warn("Received {} with newer payload version {}: topic={}, offset={}",
+                        eventType, EventEnvelope.version(record), record.topic(), record.offset());
             }
-        } catch (Exception e) {
-            log.error("Failed to store presence in inbox: partition={}, offset={}", 
-                    record.partition(), record.offset(), e);
+            return eventType;
         }
+        
+        eventType = TOPIC_EVENT_TYPES.get(record.topic());
+        return eventType != null ? eventType : detectEventType(record.value());
     }
     
     /**
-     * Detect event type from payload for channel messages.
+     * Detect event type from payload for channel messages produced without an envelope.
      * This helps with routing in the inbox processor.
      */
     private String detectEventType(String payload) {
@@ -0,0 +1,37 @@
+package com.lootchat.LootChat.service.directmessage;
+
+import com.lootchat.LootChat.dto.message.MessageSearchResponse;
+import com.lootchat.LootChat.entity.DirectMessageMessage;
+
+/**
+ * Where direct messages are indexed and searched, selected with search.backend:
+ * - elasticsearch (default): ElasticsearchDirectMessageSearchBackend
+ * - postgres: PostgresDirectMessageSearchBackend, no infrastructure beyond the database
+ *
+ * Results carry no avatars, DirectMessageSearchService resolves them for the whole page.
+ */
+public interface DirectMessageSearchBackend {
+
+    /**
+     * Newest matches first within one conversation. A cursor from the previous page
+     * takes precedence over the page number.
+     */
+    MessageSearchResponse search(String query, Long directMessageId, int page, int size, String cursor);
+
+    /**
+     * Index (or re-index) a direct message once the surrounding transaction commits
+     */
+    void index(DirectMessageMessage message);
+
+    void delete(Long messageId);
+
+    /**
+     * Rebuild the index from the database (for maintenance)
+     */
+    void rebuild();
+
+    /**
+     * Bring the index up to date on startup
+     */
+    void sync();
+}
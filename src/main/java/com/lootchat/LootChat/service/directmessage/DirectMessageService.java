@@ -161,8 +161,7 @@ public class DirectMessageService {
         DirectMessageMessage.DirectMessageMessageBuilder messageBuilder = DirectMessageMessage.builder()
                 .content(request.getContent())
                 .sender(sender)
-                .directMessage(dm)
-                .isRead(false);
+                .directMessage(dm);
         
         if (request.getImageUrl() != null) {
             messageBuilder.imageUrl(request.getImageUrl())
@@ -182,8 +181,8 @@ public class DirectMessageService {
         
         searchService.indexMessage(savedMessage);
         
-        dm.setLastMessageAt(LocalDateTime.now());
-        directMessageRepository.save(dm);
+        directMessageRepository.recordMessage(dm.getId(), dm.getOtherUser(currentUserId).getId(),
+                savedMessage.getId(), savedMessage.getContent(), LocalDateTime.now());
         
         evictFirstPageCache(dm.getId());
 
@@ -225,8 +224,7 @@ public class DirectMessageService {
                 .sender(sender)
                 .directMessage(dm)
                 .imageUrl(imageUrl)
-                .imageFilename(imageFilename)
-                .isRead(false);
+                .imageFilename(imageFilename);
         
         if (replyToMessageId != null) {
             DirectMessageMessage replyToMessage = directMessageMessageRepository.findById(replyToMessageId)
@@ -241,8 +239,8 @@ public class DirectMessageService {
         
         searchService.indexMessage(savedMessage);
         
-        dm.setLastMessageAt(LocalDateTime.now());
-        directMessageRepository.save(dm);
+        directMessageRepository.recordMessage(dm.getId(), dm.getOtherUser(currentUserId).getId(),
+                savedMessage.getId(), messageContent, LocalDateTime.now());
         
         evictFirstPageCache(dm.getId());
         evictDirectMessagesListCache(dm.getUser1().getId(), dm.getUser2().getId());
@@ -253,43 +251,39 @@ public class DirectMessageService {
         return mapToDirectMessageMessageResponse(savedMessage);
     }
     
+    /**
+     * Move the current user's read watermark to the newest message in the conversation
+     * and uncount what it passed over. A single statement, so a message sent meanwhile
+     * is never marked read without being seen.
+     */
     @Transactional
     public void markAsRead(Long directMessageId) {
         Long currentUserId = currentUserService.getCurrentUserIdOrThrow();
         
-        DirectMessage dm = directMessageRepository.findById(directMessageId)
+        DirectMessage dm = directMessageRepository.findByIdWithUsers(directMessageId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Direct message not found"));
         
         if (!dm.includesUser(currentUserId)) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
         }
         
-        List<DirectMessageMessage> messages = directMessageMessageRepository
-                .findByDirectMessageId(directMessageId, PageRequest.of(0, Integer.MAX_VALUE));
-        
-        messages.stream()
-                .filter(msg -> !msg.getSender().getId().equals(currentUserId) && !msg.isRead())
-                .forEach(msg -> msg.setRead(true));
+        directMessageRepository.markRead(directMessageId, currentUserId);
         
-        directMessageMessageRepository.saveAll(messages);
+        // Unread counts are part of the cached conversation list
+        evictDirectMessagesListCache(dm.getUser1().getId(), dm.getUser2().getId());
     }
     
     private DirectMessageResponse mapToDirectMessageResponse(DirectMessage dm, Long currentUserId) {
         User otherUser = dm.getOtherUser(currentUserId);
         
-        var lastMessage = directMessageMessageRepository.findLastMessageByDirectMessageId(dm.getId());
-        String lastMessageContent = lastMessage.map(DirectMessageMessage::getContent).orElse(null);
-        
-        int unreadCount = directMessageMessageRepository.countUnreadMessages(dm.getId(), currentUserId);
-        
         return DirectMessageResponse.builder()
                 .id(dm.getId())
                 .otherUserId(otherUser.getId())
                 .otherUsername(otherUser.getUsername())
                 .otherUserAvatar(otherUser.getAvatar())
-                .lastMessageContent(lastMessageContent)
+                .lastMessageContent(dm.getLastMessageContent())
                 .lastMessageAt(dm.getLastMessageAt())
-                .unreadCount(unreadCount)
+                .unreadCount(dm.getUnreadCount(currentUserId))
                 .createdAt(dm.getCreatedAt())
                 .build();
     }
@@ -385,6 +379,13 @@ public class DirectMessageService {
         message.setEdited(true);
         DirectMessageMessage updatedMessage = directMessageMessageRepository.save(message);
         
+        searchService.updateMessage(updatedMessage);
+        
+        DirectMessage dm = message.getDirectMessage();
+        if (directMessageRepository.recordMessageEdited(dm.getId(), messageId, content) > 0) {
+            evictDirectMessagesListCache(dm.getUser1().getId(), dm.getUser2().getId());
+        }
+        
         publishEditToKafka(messageId, message.getDirectMessage().getId(), content, true);
         
         return mapToDirectMessageMessageResponse(updatedMessage);
@@ -432,6 +433,9 @@ public class DirectMessageService {
         message.setImageFilename(null);
         directMessageMessageRepository.save(message);
         
+        directMessageRepository.recordMessageDeleted(directMessageId,
+                dm.getOtherUser(message.getSender().getId()).getId(), messageId);
+        
         searchService.deleteMessage(messageId);
 
         evictDirectMessagesListCache(dm.getUser1().getId(), dm.getUser2().getId());
@@ -454,7 +458,7 @@ public class DirectMessageService {
                     .replyToMessageId(message.getReplyToMessage() != null ? message.getReplyToMessage().getId() : null)
                     .replyToUsername(message.getReplyToUsername())
                     .replyToContent(message.getReplyToContent())
-                    .isRead(message.isRead())
+                    .isRead(message.getDirectMessage().isReadByRecipient(message))
                     .edited(message.isEdited())
                     .deleted(true)
                     .createdAt(message.getCreatedAt())
@@ -486,7 +490,7 @@ public class DirectMessageService {
                 .replyToMessageId(message.getReplyToMessage() != null ? message.getReplyToMessage().getId() : null)
                 .replyToUsername(message.getReplyToUsername())
                 .replyToContent(replyToContent)
-                .isRead(message.isRead())
+                .isRead(message.getDirectMessage().isReadByRecipient(message))
                 .edited(message.isEdited())
                 .deleted(false)
                 .createdAt(message.getCreatedAt())
@@ -707,7 +711,7 @@ public class DirectMessageService {
     }
     
     @Transactional(readOnly = true)
-    public MessageSearchResponse searchMessages(Long directMessageId, String query, int page, int size) {
+    public MessageSearchResponse searchMessages(Long directMessageId, String query, int page, int size, String cursor) {
         Long currentUserId = currentUserService.getCurrentUserIdOrThrow();
         
         DirectMessage dm = directMessageRepository.findByIdWithUsers(directMessageId)
@@ -717,6 +721,6 @@ public class DirectMessageService {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
         }
         
-        return searchService.searchMessages(query, directMessageId, page, size);
+        return searchService.searchMessages(query, directMessageId, page, size, cursor);
     }
 }
@@ -0,0 +1,214 @@
+package com.lootchat.LootChat.service.directmessage;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import com.lootchat.LootChat.document.DirectMessageDocument;
+import com.lootchat.LootChat.dto.message.MessageSearchResponse;
+import com.lootchat.LootChat.dto.message.MessageSearchResult;
+import com.lootchat.LootChat.entity.DirectMessage;
+import com.lootchat.LootChat.entity.DirectMessageMessage;
+import com.lootchat.LootChat.repository.DirectMessageMessageRepository;
+import com.lootchat.LootChat.service.search.ReindexSource;
+import com.lootchat.LootChat.service.search.SearchCursor;
+import com.lootchat.LootChat.service.search.SearchIndexQueue;
+import com.lootchat.LootChat.service.search.SearchReindexer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.HighlightQuery;
+import org.springframework.data.elasticsearch.core.query.highlight.Highlight;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightField;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightParameters;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Direct message search on Elasticsearch, the default backend.
+ *
+ * Writes are queued through SearchIndexQueue, the index behind the "direct_messages"
+ * alias is (re)built by SearchReindexer, with this class as its row source.
+ */
+@Service
+@ConditionalOnProperty(name = "search.backend", havingValue = "elasticsearch", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ElasticsearchDirectMessageSearchBackend implements DirectMessageSearchBackend, ReindexSource<DirectMessageMessage> {
+
+    /**
+     * Whole words on content, plus word prefixes of the content and sender name
+     */
+    private static final List<String> SEARCH_FIELDS = List.of("content^3", "content.prefix", "senderUsername.prefix");
+
+    private static final Sort SORT = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("messageId"));
+
+    /**
+     * Whole content with matches wrapped in mark tags
+     */
+    private static final HighlightQuery HIGHLIGHT = new HighlightQuery(
+            new Highlight(
+                    HighlightParameters.builder()
+                            .withPreTags("<mark>")
+                            .withPostTags("</mark>")
+                            .withNumberOfFragments(0)
+                            .build(),
+                    List.of(new HighlightField("content"), new HighlightField("content.prefix"))),
+            DirectMessageDocument.class);
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final DirectMessageMessageRepository messageRepository;
+    private final SearchIndexQueue searchIndexQueue;
+    private final SearchReindexer searchReindexer;
+
+    /**
+     * Queue a direct message for indexing once the surrounding transaction commits
+     */
+    @Override
+    public void index(DirectMessageMessage message) {
+        searchIndexQueue.index(message.getId().toString(), toDocument(message));
+    }
+
+    @Override
+    public MessageSearchResponse search(String query, Long directMessageId, int page, int size, String cursor) {
+        NativeQueryBuilder searchQuery = NativeQuery.builder()
+                .withQuery(q -> q.bool(b -> b
+                        .must(m -> m.multiMatch(mm -> mm
+                                .query(query)
+                                .fields(SEARCH_FIELDS)
+                                .type(TextQueryType.MostFields)
+                                .operator(Operator.And)))
+                        .filter(f -> f.term(t -> t.field("directMessageId").value(directMessageId)))))
+                .withSort(SORT)
+                .withHighlightQuery(HIGHLIGHT);
+
+        if (cursor != null) {
+            searchQuery.withSearchAfter(SearchCursor.decode(cursor)).withPageable(PageRequest.of(0, size));
+        } else {
+            searchQuery.withPageable(PageRequest.of(page, size));
+        }
+
+        SearchHits<DirectMessageDocument> hits =
+                elasticsearchOperations.search(searchQuery.build(), DirectMessageDocument.class);
+        return buildResponse(hits, page, size);
+    }
+
+    /**
+     * Queue a message for removal from the search index once the surrounding transaction commits
+     */
+    @Override
+    public void delete(Long messageId) {
+        searchIndexQueue.delete(DirectMessageDocument.class, messageId.toString());
+    }
+
+    /**
+     * Rebuild the direct message index into a new versioned index
+     */
+    @Override
+    public void rebuild() {
+        searchReindexer.rebuild(this);
+    }
+
+    /**
+     * Bring the direct message index up to date with changes since the last sync
+     */
+    @Override
+    public void sync() {
+        searchReindexer.sync(this);
+    }
+
+    @Override
+    public Class<?> documentClass() {
+        return DirectMessageDocument.class;
+    }
+
+    @Override
+    public List<DirectMessageMessage> findAfter(long afterId, int limit) {
+        return messageRepository.findForIndexingAfter(afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<DirectMessageMessage> findChangedSince(LocalDateTime since, long afterId, int limit) {
+        return messageRepository.findForIndexingChangedSince(since, afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public long idOf(DirectMessageMessage message) {
+        return message.getId();
+    }
+
+    @Override
+    public LocalDateTime updatedAtOf(DirectMessageMessage message) {
+        return message.getUpdatedAt();
+    }
+
+    @Override
+    public DirectMessageDocument toDocument(DirectMessageMessage message) {
+        if (message.isDeleted()) {
+            return null;
+        }
+
+        DirectMessage dm = message.getDirectMessage();
+        return DirectMessageDocument.builder()
+                .id(message.getId().toString())
+                .messageId(message.getId())
+                .content(message.getContent())
+                .directMessageId(dm.getId())
+                .senderId(message.getSender().getId())
+                .senderUsername(message.getSender().getUsername())
+                .user1Id(dm.getUser1().getId())
+                .user2Id(dm.getUser2().getId())
+                .createdAt(message.getCreatedAt())
+                .edited(message.getUpdatedAt() != null && !message.getUpdatedAt().equals(message.getCreatedAt()))
+                .imageUrl(message.getImageUrl())
+                .build();
+    }
+
+    private MessageSearchResponse buildResponse(SearchHits<DirectMessageDocument> hits, int page, int size) {
+        List<SearchHit<DirectMessageDocument>> searchHits = hits.getSearchHits();
+        List<MessageSearchResult> results = searchHits.stream()
+                .map(hit -> {
+                    DirectMessageDocument doc = hit.getContent();
+                    return MessageSearchResult.builder()
+                            .messageId(doc.getMessageId())
+                            .content(doc.getContent())
+                            .highlightedContent(highlightedContent(hit))
+                            .channelId(doc.getDirectMessageId())
+                            .channelName("Direct Message")
+                            .userId(doc.getSenderId())
+                            .username(doc.getSenderUsername())
+                            .createdAt(doc.getCreatedAt())
+                            .edited(doc.getEdited())
+                            .attachmentUrls(doc.getImageUrl() != null ? List.of(doc.getImageUrl()) : null)
+                            .build();
+                })
+                .collect(Collectors.toList());
+
+        String nextCursor = searchHits.size() == size
+                ? SearchCursor.encode(searchHits.get(searchHits.size() - 1).getSortValues())
+                : null;
+
+        return MessageSearchResponse.builder()
+                .results(results)
+                .totalElements(hits.getTotalHits())
+                .totalPages((int) ((hits.getTotalHits() + size - 1) / size))
+                .page(page)
+                .size(size)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private static String highlightedContent(SearchHit<DirectMessageDocument> hit) {
+        List<String> fragments = hit.getHighlightField("content");
+        if (fragments.isEmpty()) {
+            fragments = hit.getHighlightField("content.prefix");
+        }
+        return fragments.isEmpty() ? null : fragments.get(0);
+    }
+}
@@ -0,0 +1,139 @@
+package com.lootchat.LootChat.service.directmessage;
+
+import com.lootchat.LootChat.dto.message.MessageSearchResponse;
+import com.lootchat.LootChat.dto.message.MessageSearchResult;
+import com.lootchat.LootChat.entity.DirectMessageMessage;
+import com.lootchat.LootChat.service.search.PostgresSearchQuery;
+import com.lootchat.LootChat.service.search.SearchCursor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Direct message search on Postgres full-text search (search.backend=postgres).
+ *
+ * Content is matched through the idx_direct_message_messages_content_search expression
+ * GIN index, created on startup, and the sender's username is matched as well. Postgres
+ * keeps the index in sync with every write, so index and delete have nothing to do.
+ *
+ * Pages are ordered by message id (insertion order) and continued after the last id.
+ * Highlights are only computed for the rows of the requested page.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "search.backend", havingValue = "postgres")
+@RequiredArgsConstructor
+public class PostgresDirectMessageSearchBackend implements DirectMessageSearchBackend {
+
+    private static final String MATCHES =
+            "FROM direct_message_messages m JOIN users u ON u.id = m.sender_id " +
+            "WHERE m.direct_message_id = ? AND m.deleted = false " +
+            "AND (to_tsvector('" + PostgresSearchQuery.CONFIG + "', m.content) @@ to_tsquery('" + PostgresSearchQuery.CONFIG + "', ?) " +
+            "OR to_tsvector('" + PostgresSearchQuery.CONFIG + "', u.username) @@ to_tsquery('" + PostgresSearchQuery.CONFIG + "', ?)) ";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public MessageSearchResponse search(String query, Long directMessageId, int page, int size, String cursor) {
+        String tsQuery = PostgresSearchQuery.toPrefixQuery(query);
+        if (tsQuery == null) {
+            return response(List.of(), 0, page, size);
+        }
+
+        Long total = jdbcTemplate.queryForObject("SELECT COUNT(*) " + MATCHES, Long.class,
+                directMessageId, tsQuery, tsQuery);
+
+        Long afterId = PostgresSearchQuery.afterId(cursor);
+        List<Object> args = new ArrayList<>(List.of(tsQuery, directMessageId, tsQuery, tsQuery));
+        String pageFilter = MATCHES;
+        if (afterId != null) {
+            pageFilter += "AND m.id < ? ";
+            args.add(afterId);
+        }
+        args.add(size);
+        args.add(afterId != null ? 0 : (long) page * size);
+
+        List<MessageSearchResult> results = jdbcTemplate.query(
+                "SELECT m.id, m.content, m.direct_message_id, m.sender_id, u.username, " +
+                "m.created_at, m.updated_at, m.image_url, " +
+                "ts_headline('" + PostgresSearchQuery.CONFIG + "', m.content, to_tsquery('" + PostgresSearchQuery.CONFIG + "', ?), " +
+                "'" + PostgresSearchQuery.HEADLINE_OPTIONS + "') AS highlighted_content " +
+                "FROM (SELECT m.id " + pageFilter + "ORDER BY m.id DESC LIMIT ? OFFSET ?) hit " +
+                "JOIN direct_message_messages m ON m.id = hit.id " +
+                "JOIN users u ON u.id = m.sender_id " +
+                "ORDER BY m.id DESC",
+                PostgresDirectMessageSearchBackend::toResult, args.toArray());
+
+        MessageSearchResponse response = response(results, total != null ? total : 0, page, size);
+        if (results.size() == size) {
+            response.setNextCursor(SearchCursor.encode(List.of(results.get(results.size() - 1).getMessageId())));
+        }
+        return response;
+    }
+
+    /**
+     * Nothing to do, the GIN index is maintained by Postgres within the writing transaction
+     */
+    @Override
+    public void index(DirectMessageMessage message) {
+    }
+
+    /**
+     * Nothing to do, deleted messages are filtered out by the query
+     */
+    @Override
+    public void delete(Long messageId) {
+    }
+
+    /**
+     * Postgres indexes never need rebuilding from the table, only to exist
+     */
+    @Override
+    public void rebuild() {
+        sync();
+    }
+
+    @Override
+    public void sync() {
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_direct_message_messages_content_search " +
+                "ON direct_message_messages USING gin (to_tsvector('" + PostgresSearchQuery.CONFIG + "', content))");
+        log.info("Postgres direct message search index ready");
+    }
+
+    private static MessageSearchResponse response(List<MessageSearchResult> results, long total, int page, int size) {
+        return MessageSearchResponse.builder()
+                .results(results)
+                .totalElements(total)
+                .totalPages((int) ((total + size - 1) / size))
+                .page(page)
+                .size(size)
+                .build();
+    }
+
+    private static MessageSearchResult toResult(ResultSet rs, int rowNum) throws SQLException {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        Timestamp updatedAt = rs.getTimestamp("updated_at");
+        String imageUrl = rs.getString("image_url");
+        return MessageSearchResult.builder()
+                .messageId(rs.getLong("id"))
+                .content(rs.getString("content"))
+                .highlightedContent(rs.getString("highlighted_content"))
+                .channelId(rs.getLong("direct_message_id"))
+                .channelName("Direct Message")
+                .userId(rs.getLong("sender_id"))
+                .username(rs.getString("username"))
+                .createdAt(createdAt.toLocalDateTime())
+                .edited(updatedAt != null && !updatedAt.equals(createdAt))
+                .attachmentUrls(imageUrl != null ? List.of(imageUrl) : null)
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.lootchat.LootChat.service.inbox;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory-only delivery path for ephemeral events.
+ *
+ * Presence updates and reactions are pure broadcasts with no consumer-side state,
+ * so they do not need the durability of the inbox table. Records on configured
+ * topics (or with configured event types) are deduplicated against a bounded
+ * in-memory LRU of their inbox idempotency keys and broadcast straight away,
+ * skipping the inbox insert, poll, transaction and processed update.
+ *
+ * Delivery is at-least-once: offsets are acknowledged only after the poll has been
+ * dispatched, so nothing is lost before the ack. The LRU only spans one pod's
+ * lifetime, so a redelivery after a restart or rebalance is broadcast again, which is
+ * harmless for idempotent presence/reaction updates. A broadcast that fails is
+ * logged and not retried (see InboxEventProcessor.processEphemeral).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EphemeralEventDispatcher {
+
+    private final InboxService inboxService;
+    private final InboxEventProcessor inboxEventProcessor;
+
+    @Value("${inbox.fast-path.topics:lootchat.presence,lootchat.direct.message.reactions}")
+    private Set<String> fastPathTopics;
+
+    @Value("${inbox.fast-path.event-types:REACTION_ADDED,REACTION_REMOVED,PRESENCE_UPDATED}")
+    private Set<String> fastPathEventTypes;
+
+    @Value("${inbox.fast-path.dedup-capacity:100000}")
+    private int dedupCapacity;
+
+    private Map<String, Boolean> recentKeys;
+
+    @PostConstruct
+    void init() {
+        // Access-ordered so the least recently seen key is evicted first
+        recentKeys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > dedupCapacity;
+            }
+        };
+    }
+
+    /**
+     * Whether a record should bypass the inbox table.
+     */
+    public boolean isEphemeral(ConsumerRecord<String, String> record, String eventType) {
+        return fastPathTopics.contains(record.topic()) || fastPathEventTypes.contains(eventType);
+    }
+
+    /**
+     * Deduplicate and broadcast an ephemeral record directly.
+     *
+     * @return true if broadcast, false if it was a duplicate
+     */
+    public boolean dispatch(ConsumerRecord<String, String> record, String eventType) {
+        String key = inboxService.buildIdempotencyKey(record);
+        if (!markSeen(key)) {
+            log.debug("Duplicate ephemeral event ignored: key={}", key);
+            return false;
+        }
+
+        inboxEventProcessor.processEphemeral(inboxService.toInboxEvent(record, eventType));
+        return true;
+    }
+
+    /**
+     * Record a key in the bounded LRU.
+     *
+     * @return false if the key was already present
+     */
+    private synchronized boolean markSeen(String key) {
+        return recentKeys.put(key, Boolean.TRUE) == null;
+    }
+}
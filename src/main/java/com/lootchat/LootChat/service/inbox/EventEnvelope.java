@@ -0,0 +1,128 @@
+package com.lootchat.LootChat.service.inbox;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Kafka envelope for outbox events.
+ *
+ * The JSON payload stays the record value; the envelope metadata travels as headers
+ * so consumers can route an event without parsing its body:
+ * - lootchat-event-type: the outbox event type (e.g. MESSAGE_CREATED, REACTION_REMOVED)
+ * - lootchat-event-version: schema version of the payload for that type
+ * - lootchat-event-id / lootchat-event-created-at: the outbox row the record was published from.
+ *   A re-publish of the same row (e.g. after a send that timed out but succeeded) carries the
+ *   same values, so the inbox derives its dedup key and partition key from them
+ *
+ * Records without headers were produced before the envelope existed and are
+ * resolved by the consumer's legacy payload detection.
+ */
+public final class EventEnvelope {
+
+    public static final String HEADER_EVENT_TYPE = "lootchat-event-type";
+    public static final String HEADER_EVENT_VERSION = "lootchat-event-version";
+    public static final String HEADER_EVENT_ID = "lootchat-event-id";
+    public static final String HEADER_EVENT_CREATED_AT = "lootchat-event-created-at";
+
+    /**
+     * Current payload schema version. Bump when a payload changes incompatibly
+     * and teach InboxEventProcessor to handle both versions during rollout.
+     */
+    public static final int CURRENT_VERSION = 1;
+
+    private EventEnvelope() {
+    }
+
+    /**
+     * Build a producer record carrying the event type and version as headers.
+     */
+    public static ProducerRecord<String, String> toProducerRecord(String topic, String key,
+                                                                  String eventType, String payload) {
+        ProducerRecord<String, String> record = new ProducerRecord<>(topic, key, payload);
+        if (eventType != null) {
+            record.headers().add(HEADER_EVENT_TYPE, eventType.getBytes(StandardCharsets.UTF_8));
+        }
+        record.headers().add(HEADER_EVENT_VERSION,
+                String.valueOf(CURRENT_VERSION).getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+    
+    /**
+     * Build a producer record for an outbox row, also carrying its id and creation time.
+     */
+    public static ProducerRecord<String, String> toProducerRecord(String topic, String key, String eventType,
+                                                                  String payload, Long eventId,
+                                                                  LocalDateTime createdAt) {
+        ProducerRecord<String, String> record = toProducerRecord(topic, key, eventType, payload);
+        if (eventId != null && createdAt != null) {
+            record.headers().add(HEADER_EVENT_ID, eventId.toString().getBytes(StandardCharsets.UTF_8));
+            record.headers().add(HEADER_EVENT_CREATED_AT, createdAt.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+
+    /**
+     * Event type from the record headers, or null for records produced without an envelope.
+     */
+    public static String eventType(ConsumerRecord<String, String> record) {
+        return headerValue(record, HEADER_EVENT_TYPE);
+    }
+
+    /**
+     * Payload schema version from the record headers; records without an envelope are version 1.
+     */
+    public static int version(ConsumerRecord<String, String> record) {
+        String value = headerValue(record, HEADER_EVENT_VERSION);
+        if (value == null) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Id of the outbox row the record was published from, or null for records without one.
+     */
+    public static Long eventId(ConsumerRecord<String, String> record) {
+        String value = headerValue(record, HEADER_EVENT_ID);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creation time of the outbox row the record was published from, or null for records without one.
+     */
+    public static LocalDateTime eventCreatedAt(ConsumerRecord<String, String> record) {
+        String value = headerValue(record, HEADER_EVENT_CREATED_AT);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String headerValue(ConsumerRecord<String, String> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        if (header == null || header.value() == null) {
+            return null;
+        }
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
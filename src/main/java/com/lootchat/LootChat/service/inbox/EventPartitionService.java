@@ -0,0 +1,289 @@
+package com.lootchat.LootChat.service.inbox;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Daily range partitioning for the outbox and inbox tables.
+ *
+ * Both tables are native Postgres partitioned tables with one partition per day
+ * plus a DEFAULT partition for rows outside the pre-created range:
+ * - outbox_events is partitioned by created_at
+ * - inbox_events is partitioned by received_at (the outbox creation time carried in the
+ *   envelope, see InboxService#receivedAt), so a redelivered or re-published event always
+ *   maps to the same row and (idempotency_key, received_at) stays a valid dedup key
+ *
+ * Retention drops whole day partitions instead of running a large DELETE, so there is
+ * no table bloat, index churn or long vacuum after cleanup. Partitions that still hold
+ * unprocessed (failed/dead-letter) rows are never dropped; only their processed rows are deleted.
+ *
+ * All maintenance runs under a Postgres advisory lock so concurrent pods do not race.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EventPartitionService {
+
+    public static final String OUTBOX_TABLE = "outbox_events";
+    public static final String INBOX_TABLE = "inbox_events";
+
+    private static final Map<String, String> PARTITION_COLUMNS = Map.of(
+            OUTBOX_TABLE, "created_at",
+            INBOX_TABLE, "received_at"
+    );
+
+    /**
+     * Indexes declared on the entities, recreated after a table is converted
+     * because Hibernate only adds them on its next schema update, and re-checked
+     * on every startup since inbox inserts depend on idx_inbox_idempotency.
+     */
+    private static final Map<String, List<String>> TABLE_INDEXES = Map.of(
+            OUTBOX_TABLE, List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_outbox_unprocessed ON outbox_events (processed, created_at)"
+            ),
+            INBOX_TABLE, List.of(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_inbox_idempotency ON inbox_events (idempotency_key, received_at)",
+                    "CREATE INDEX IF NOT EXISTS idx_inbox_unprocessed ON inbox_events (processed, created_at)",
+                    "CREATE INDEX IF NOT EXISTS idx_inbox_retry ON inbox_events (processed, retry_count, created_at)",
+                    "CREATE INDEX IF NOT EXISTS idx_inbox_topic ON inbox_events (topic, processed)",
+                    "CREATE INDEX IF NOT EXISTS idx_inbox_message_key ON inbox_events (message_key, processed)"
+            )
+    );
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final long ADVISORY_LOCK_KEY = 7_310_028L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${events.partitioning.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${events.partitioning.premake-days:3}")
+    private int premakeDays;
+
+    /**
+     * Convert a plain table created by Hibernate into a partitioned table.
+     * Unprocessed rows and processed rows still inside the retention window are carried over.
+     * No-op if the table is already partitioned.
+     */
+    @Transactional
+    public void ensurePartitioned(String table) {
+        jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)", Object.class, ADVISORY_LOCK_KEY);
+
+        String relkind = jdbcTemplate.queryForObject(
+                "SELECT c.relkind::text FROM pg_class c WHERE c.oid = to_regclass(?)", String.class, table);
+
+        if (relkind == null) {
+            log.warn("Table {} does not exist yet, skipping partitioning", table);
+            return;
+        }
+        if ("p".equals(relkind)) {
+            createPartitions(table);
+            TABLE_INDEXES.get(table).forEach(jdbcTemplate::execute);
+            return;
+        }
+
+        String column = PARTITION_COLUMNS.get(table);
+        String legacy = table + "_unpartitioned";
+        LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+
+        log.info("Converting {} to a table partitioned by day on {}", table, column);
+
+        jdbcTemplate.execute("ALTER TABLE " + table + " RENAME TO " + legacy);
+        jdbcTemplate.execute("CREATE TABLE " + table + " (LIKE " + legacy + " INCLUDING DEFAULTS) " +
+                "PARTITION BY RANGE (" + column + ")");
+        jdbcTemplate.execute("ALTER TABLE " + table + " ADD PRIMARY KEY (id, " + column + ")");
+
+        createPartitions(table);
+
+        int copied = jdbcTemplate.update("INSERT INTO " + table + " SELECT * FROM " + legacy +
+                " WHERE processed = false OR " + column + " >= ?", cutoff.atStartOfDay());
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + legacy, Long.class);
+
+        // Drops the old identity sequence and the old index names along with the table
+        jdbcTemplate.execute("DROP TABLE " + legacy);
+
+        String sequence = table + "_id_seq";
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence + " OWNED BY " + table + ".id");
+        jdbcTemplate.queryForObject("SELECT setval(?, ?, false)", Long.class, sequence, maxId + 1);
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id SET DEFAULT nextval('" + sequence + "')");
+
+        TABLE_INDEXES.get(table).forEach(jdbcTemplate::execute);
+
+        log.info("Converted {} to partitioned table, carried over {} rows", table, copied);
+    }
+
+    /**
+     * Pre-create day partitions for both tables so inserts never fall into the DEFAULT partition.
+     * Each table is handled in its own transaction, which holds the advisory lock until it commits.
+     */
+    @Scheduled(cron = "0 30 0 * * *")
+    public void createUpcomingPartitions() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (String table : List.of(OUTBOX_TABLE, INBOX_TABLE)) {
+            try {
+                transaction.executeWithoutResult(status -> createPartitionsLocked(table));
+            } catch (Exception e) {
+                log.error("Failed to create upcoming partitions for {}", table, e);
+            }
+        }
+    }
+
+    private void createPartitionsLocked(String table) {
+        if (!tryAdvisoryLock()) {
+            log.debug("Partition maintenance for {} running on another instance, skipping", table);
+            return;
+        }
+        if (!isPartitioned(table)) {
+            log.debug("Table {} is not partitioned, skipping partition maintenance", table);
+            return;
+        }
+        createPartitions(table);
+    }
+
+    /**
+     * Apply retention to a partitioned table by dropping day partitions older than the retention window.
+     *
+     * @return number of partitions dropped
+     */
+    @Transactional
+    public int dropExpiredPartitions(String table) {
+        if (!tryAdvisoryLock()) {
+            log.debug("Partition retention for {} running on another instance, skipping", table);
+            return 0;
+        }
+        if (!isPartitioned(table)) {
+            // Conversion has not run yet, so there are no partitions and no DEFAULT to clean
+            log.warn("Table {} is not partitioned, skipping partition retention", table);
+            return 0;
+        }
+
+        String column = PARTITION_COLUMNS.get(table);
+        LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+        int dropped = 0;
+
+        for (String partition : listPartitions(table)) {
+            LocalDate day = partitionDay(table, partition);
+            if (day == null || day.plusDays(1).isAfter(cutoff)) {
+                continue;
+            }
+
+            Boolean hasPending = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + partition + " WHERE processed = false)", Boolean.class);
+
+            if (Boolean.TRUE.equals(hasPending)) {
+                // Keep failed/dead-letter rows for review, only shed the processed ones
+                int deleted = jdbcTemplate.update("DELETE FROM " + partition + " WHERE processed = true");
+                log.warn("Partition {} has unprocessed events, kept it and deleted {} processed rows",
+                        partition, deleted);
+                continue;
+            }
+
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+            dropped++;
+            log.info("Dropped expired partition {}", partition);
+        }
+
+        // Rows outside the pre-created range land in DEFAULT, which is small and cleaned row by row
+        int deletedDefault = jdbcTemplate.update("DELETE FROM " + table + "_default " +
+                "WHERE processed = true AND " + column + " < ?", cutoff.atStartOfDay());
+
+        log.info("Retention for {}: dropped {} partitions, deleted {} rows from default partition",
+                table, dropped, deletedDefault);
+        return dropped;
+    }
+
+    private void createPartitions(String table) {
+        String column = PARTITION_COLUMNS.get(table);
+        String defaultPartition = table + "_default";
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + defaultPartition + " PARTITION OF " + table + " DEFAULT");
+
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i <= premakeDays; i++) {
+            LocalDate day = today.plusDays(i);
+            String partition = partitionName(table, day);
+
+            if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition)) {
+                continue;
+            }
+
+            String range = column + " >= ? AND " + column + " < ?";
+            Boolean defaultHasRows = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + defaultPartition + " WHERE " + range + ")",
+                    Boolean.class, day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+
+            if (Boolean.TRUE.equals(defaultHasRows)) {
+                // Creating a range that already has rows in DEFAULT fails, so move them over with
+                // DEFAULT detached. Inserts into the table wait on the lock until this commits.
+                jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + defaultPartition);
+                createPartition(table, partition, day);
+                int moved = jdbcTemplate.update("INSERT INTO " + partition + " SELECT * FROM " + defaultPartition +
+                        " WHERE " + range, day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+                jdbcTemplate.update("DELETE FROM " + defaultPartition + " WHERE " + range,
+                        day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+                jdbcTemplate.execute("ALTER TABLE " + table + " ATTACH PARTITION " + defaultPartition + " DEFAULT");
+                log.warn("Moved {} rows for {} out of {} into new partition {}", moved, day, defaultPartition, partition);
+                continue;
+            }
+
+            createPartition(table, partition, day);
+        }
+    }
+
+    private void createPartition(String table, String partition, LocalDate day) {
+        jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + table +
+                " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+        log.info("Created partition {}", partition);
+    }
+
+    private boolean isPartitioned(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?))",
+                Boolean.class, table));
+    }
+
+    private List<String> listPartitions(String table) {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = to_regclass(?) ORDER BY c.relname",
+                String.class, table);
+    }
+
+    private boolean tryAdvisoryLock() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, ADVISORY_LOCK_KEY));
+    }
+
+    private String partitionName(String table, LocalDate day) {
+        return table + "_p" + day.format(PARTITION_SUFFIX);
+    }
+
+    /**
+     * Parse the day from a partition name, or null for DEFAULT and foreign tables.
+     */
+    private LocalDate partitionDay(String table, String partition) {
+        String prefix = table + "_p";
+        if (!partition.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partition.substring(prefix.length()), PARTITION_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.lootchat.LootChat.service.inbox;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * Health of the outbox/inbox pipeline, exposed as the "eventPipeline" health component.
+ *
+ * Reports DEGRADED when the oldest pending outbox or inbox event is older than the
+ * warning threshold, with severity "critical" past the critical threshold. Lag is never
+ * reported as DOWN: it is a backlog to scale out for, not a reason to restart the pod.
+ */
+@Component
+@RequiredArgsConstructor
+public class EventPipelineHealthIndicator implements HealthIndicator {
+
+    public static final Status DEGRADED = new Status("DEGRADED", "Event pipeline is lagging");
+
+    private final EventPipelineMetrics metrics;
+
+    @Value("${events.health.lag-warning-seconds:30}")
+    private long warningSeconds;
+
+    @Value("${events.health.lag-critical-seconds:300}")
+    private long criticalSeconds;
+
+    @Override
+    public Health health() {
+        long outboxLag = metrics.getOutboxLagSeconds();
+        long inboxLag = metrics.getInboxLagSeconds();
+        long maxLag = Math.max(outboxLag, inboxLag);
+
+        Health.Builder builder = maxLag >= warningSeconds ? Health.status(DEGRADED) : Health.up();
+        if (maxLag >= criticalSeconds) {
+            builder.withDetail("severity", "critical");
+        } else if (maxLag >= warningSeconds) {
+            builder.withDetail("severity", "warning");
+        }
+
+        return builder
+                .withDetail("outboxLagSeconds", outboxLag)
+                .withDetail("inboxLagSeconds", inboxLag)
+                .withDetail("outboxDeadLetter", metrics.getOutboxDeadLetterCount())
+                .withDetail("inboxDeadLetter", metrics.getInboxDeadLetterCount())
+                .withDetail("warningThresholdSeconds", warningSeconds)
+                .withDetail("criticalThresholdSeconds", criticalSeconds)
+                .build();
+    }
+}
@@ -0,0 +1,170 @@
+package com.lootchat.LootChat.service.inbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micrometer instrumentation for the outbox/inbox event pipeline.
+ *
+ * Table-derived gauges (pending counts, DLQ sizes, oldest pending age) are refreshed
+ * on a schedule and cached, so Prometheus scrapes never hit the database.
+ * Batch sizes, publish latency, throughput and lock contention are recorded
+ * by the processors as they run.
+ *
+ * Exported as lootchat_outbox_* / lootchat_inbox_* / lootchat_event_lock_failures_total.
+ * Records the inbox rejects are counted per topic in lootchat_inbox_rejected_total.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EventPipelineMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final OutboxService outboxService;
+    private final InboxService inboxService;
+
+    private final AtomicLong outboxPending = new AtomicLong();
+    private final AtomicLong outboxDeadLetter = new AtomicLong();
+    private final AtomicLong outboxOldestAgeSeconds = new AtomicLong();
+    private final AtomicLong inboxPending = new AtomicLong();
+    private final AtomicLong inboxDeadLetter = new AtomicLong();
+    private final AtomicLong inboxOldestAgeSeconds = new AtomicLong();
+
+    private DistributionSummary outboxBatchSize;
+    private DistributionSummary inboxBatchSize;
+    private Timer outboxPublishLatency;
+    private Counter outboxPublished;
+    private Counter outboxPublishFailures;
+    private Counter inboxProcessed;
+    private Counter inboxFailed;
+
+    @PostConstruct
+    void registerMeters() {
+        Gauge.builder("lootchat.outbox.pending", outboxPending, AtomicLong::get)
+                .description("Outbox events waiting to be published")
+                .register(meterRegistry);
+        Gauge.builder("lootchat.outbox.dlq", outboxDeadLetter, AtomicLong::get)
+                .description("Outbox events that exhausted their retries")
+                .register(meterRegistry);
+        Gauge.builder("lootchat.outbox.oldest.pending.age", outboxOldestAgeSeconds, AtomicLong::get)
+                .description("Age of the oldest unpublished outbox event")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("lootchat.inbox.pending", inboxPending, AtomicLong::get)
+                .description("Inbox events waiting to be processed")
+                .register(meterRegistry);
+        Gauge.builder("lootchat.inbox.dlq", inboxDeadLetter, AtomicLong::get)
+                .description("Inbox events that exhausted their retries")
+                .register(meterRegistry);
+        Gauge.builder("lootchat.inbox.oldest.pending.age", inboxOldestAgeSeconds, AtomicLong::get)
+                .description("Age of the oldest unprocessed inbox event")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        outboxBatchSize = DistributionSummary.builder("lootchat.outbox.batch.size")
+                .description("Events per outbox publish batch")
+                .register(meterRegistry);
+        inboxBatchSize = DistributionSummary.builder("lootchat.inbox.batch.size")
+                .description("Events per claimed inbox batch")
+                .register(meterRegistry);
+        outboxPublishLatency = Timer.builder("lootchat.outbox.publish.latency")
+                .description("Duration of one Kafka transaction publishing an outbox batch")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        outboxPublished = Counter.builder("lootchat.outbox.published")
+                .description("Outbox events published to Kafka")
+                .register(meterRegistry);
+        outboxPublishFailures = Counter.builder("lootchat.outbox.publish.failures")
+                .description("Outbox events whose publish attempt failed")
+                .register(meterRegistry);
+        inboxProcessed = Counter.builder("lootchat.inbox.processed")
+                .description("Inbox events processed successfully")
+                .register(meterRegistry);
+        inboxFailed = Counter.builder("lootchat.inbox.failed")
+                .description("Inbox events whose processing attempt failed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Refresh the table-derived gauges.
+     */
+    @Scheduled(fixedDelay = 15000)
+    public void refresh() {
+        try {
+            long outboxFailed = outboxService.getFailedEventCount();
+            outboxDeadLetter.set(outboxFailed);
+            outboxPending.set(Math.max(0, outboxService.getPendingEventCount() - outboxFailed));
+            outboxOldestAgeSeconds.set(ageSeconds(outboxService.getOldestPendingEventTime()));
+
+            long inboxExhausted = inboxService.getExhaustedEventCount();
+            inboxDeadLetter.set(inboxExhausted);
+            inboxPending.set(Math.max(0, inboxService.getPendingEventCount() - inboxExhausted));
+            inboxOldestAgeSeconds.set(ageSeconds(inboxService.getOldestPendingEventTime()));
+        } catch (Exception e) {
+            log.warn("Failed to refresh event pipeline metrics: {}", e.getMessage());
+        }
+    }
+
+    public void recordOutboxPublish(int batchSize, long durationNanos, boolean success) {
+        outboxBatchSize.record(batchSize);
+        outboxPublishLatency.record(durationNanos, TimeUnit.NANOSECONDS);
+        if (success) {
+            outboxPublished.increment(batchSize);
+        } else {
+            outboxPublishFailures.increment(batchSize);
+        }
+    }
+
+    public void recordInboxBatch(int claimed, int processed) {
+        inboxBatchSize.record(claimed);
+        inboxProcessed.increment(processed);
+        inboxFailed.increment(claimed - processed);
+    }
+
+    /**
+     * Count a record the inbox table rejected and sent to the dead-letter topic.
+     */
+    public void recordInboxRejected(String topic) {
+        meterRegistry.counter("lootchat.inbox.rejected", "topic", topic).increment();
+    }
+
+    /**
+     * Count a failed attempt to take one of the pipeline's Redis locks.
+     */
+    public void recordLockFailure(String lock) {
+        meterRegistry.counter("lootchat.event.lock.failures", "lock", lock).increment();
+    }
+
+    public long getOutboxLagSeconds() {
+        return outboxOldestAgeSeconds.get();
+    }
+
+    public long getInboxLagSeconds() {
+        return inboxOldestAgeSeconds.get();
+    }
+
+    public long getOutboxDeadLetterCount() {
+        return outboxDeadLetter.get();
+    }
+
+    public long getInboxDeadLetterCount() {
+        return inboxDeadLetter.get();
+    }
+
+    private long ageSeconds(LocalDateTime oldest) {
+        return oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).toSeconds());
+    }
+}
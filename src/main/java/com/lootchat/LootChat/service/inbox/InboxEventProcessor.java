@@ -1,6 +1,5 @@
 package com.lootchat.LootChat.service.inbox;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lootchat.LootChat.dto.message.*;
 import com.lootchat.LootChat.dto.directmessage.*;
@@ -13,20 +12,24 @@ import com.lootchat.LootChat.entity.Message;
 import com.lootchat.LootChat.repository.DirectMessageMessageRepository;
 import com.lootchat.LootChat.repository.InboxEventRepository;
 import com.lootchat.LootChat.repository.MessageRepository;
+import com.lootchat.LootChat.service.channel.UnreadCounterService;
 import com.lootchat.LootChat.service.common.WebSocketBroadcastService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Inbox Event Processor.
@@ -35,11 +38,12 @@ import java.util.UUID;
  * Ensures exactly-once semantics through idempotency.
  * 
  * Features:
- * - Distributed locking via Redis for multi-pod scaling
- * - Batch processing for efficiency
+ * - Parallel workers on all pods, one per message-key partition (Redis lock per partition)
+ * - Batches claimed (FOR UPDATE SKIP LOCKED, then leased) in a short transaction, each event handled in its own
+ * - Throughput, batch size and lock contention metrics (EventPipelineMetrics)
  * - Exponential backoff retry for failed events
  * - Dead letter handling for exhausted events
- * - Automatic cleanup of old processed events
+ * - Automatic cleanup of old processed events (partition drop)
  * - Cross-pod WebSocket broadcasting via Redis Pub/Sub
  */
 @Service
@@ -49,139 +53,187 @@ public class InboxEventProcessor {
     
     private final InboxEventRepository inboxRepository;
     private final InboxService inboxService;
+    private final EventPartitionService eventPartitionService;
     private final ObjectMapper objectMapper;
     private final MessageRepository messageRepository;
     private final DirectMessageMessageRepository directMessageMessageRepository;
     private final WebSocketBroadcastService broadcastService;
+    private final UnreadCounterService unreadCounterService;
     private final RedisTemplate<String, String> redisTemplate;
     
+    private final ThreadPoolTaskExecutor inboxWorkerExecutor;
+    private final EventPipelineMetrics metrics;
+    
     // Configuration
-    private static final String LOCK_KEY = "inbox:processor:lock";
+    private static final String LOCK_KEY_PREFIX = "inbox:processor:lock:";
     private static final Duration LOCK_DURATION = Duration.ofSeconds(30);
     private static final int BATCH_SIZE = 50;
+    private static final int MAX_BATCHES_PER_CLAIM = 20;
     private static final int MAX_RETRIES = 5;
+    // How long a claimed batch is reserved for its worker; covers handling a whole batch
+    private static final Duration CLAIM_LEASE = Duration.ofMinutes(2);
+    
+    @Value("${inbox.processor.partitions:16}")
+    private int partitions;
+    
+    @Value("${inbox.processor.worker-threads:4}")
+    private int workerThreads;
     
     // Instance identifier for distributed processing
     private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
     
+    // Partitions currently being drained by a worker on this instance
+    private final Set<Integer> activePartitions = ConcurrentHashMap.newKeySet();
+    
     /**
-     * Process inbox events every 500ms.
-     * Uses distributed locking to ensure only one pod processes at a time.
+     * Dispatch inbox work every 500ms.
+     * Events are split into partitions by message key. Each partition is owned by at
+     * most one worker cluster-wide (Redis lock per partition), and workers on all pods
+     * claim rows with FOR UPDATE SKIP LOCKED, so per-key ordering is preserved while
+     * different keys are processed in parallel.
      */
     @Scheduled(fixedDelay = 500)
     public void processInboxEvents() {
-        // Try to acquire distributed lock
-        Boolean acquired = redisTemplate.opsForValue()
-                .setIfAbsent(LOCK_KEY, instanceId, LOCK_DURATION);
-        
-        if (Boolean.FALSE.equals(acquired)) {
-            log.trace("Inbox processor lock held by another instance, skipping");
-            return;
-        }
+        // Start at a random partition so pods do not all contend for the same locks
+        int offset = ThreadLocalRandom.current().nextInt(partitions);
         
-        try {
-            // Extend lock during processing
-            redisTemplate.expire(LOCK_KEY, LOCK_DURATION);
+        for (int i = 0; i < partitions && activePartitions.size() < workerThreads; i++) {
+            int partition = (offset + i) % partitions;
+            if (activePartitions.contains(partition)) {
+                continue;
+            }
             
-            List<InboxEvent> events = inboxRepository.findUnprocessedEvents(
-                    MAX_RETRIES, PageRequest.of(0, BATCH_SIZE));
+            String lockKey = LOCK_KEY_PREFIX + partition;
+            Boolean acquired = redisTemplate.opsForValue()
+                    .setIfAbsent(lockKey, instanceId, LOCK_DURATION);
+            if (!Boolean.TRUE.equals(acquired)) {
+                metrics.recordLockFailure("inbox-partition");
+                continue;
+            }
             
-            if (events.isEmpty()) {
+            activePartitions.add(partition);
+            try {
+                inboxWorkerExecutor.execute(() -> drainPartition(partition, lockKey));
+            } catch (TaskRejectedException e) {
+                activePartitions.remove(partition);
+                releaseLock(lockKey);
                 return;
             }
-            
-            log.debug("Processing {} inbox events", events.size());
-            
-            for (InboxEvent event : events) {
-                processEvent(event);
+        }
+    }
+    
+    /**
+     * Process claimed batches of one partition until it is drained or the per-claim cap is hit.
+     */
+    private void drainPartition(int partition, String lockKey) {
+        try {
+            for (int batch = 0; batch < MAX_BATCHES_PER_CLAIM; batch++) {
+                InboxService.BatchResult result = inboxService.processClaimedBatch(
+                        partition, partitions, BATCH_SIZE, MAX_RETRIES, CLAIM_LEASE, instanceId, this::processEvent);
+                
+                if (result.claimed() > 0) {
+                    metrics.recordInboxBatch(result.claimed(), result.processed());
+                }
+                
+                if (result.claimed() < BATCH_SIZE) {
+                    break;
+                }
                 
                 // Extend lock if still processing
-                redisTemplate.expire(LOCK_KEY, LOCK_DURATION);
+                redisTemplate.expire(lockKey, LOCK_DURATION);
             }
-            
         } catch (Exception e) {
-            log.error("Error in inbox event processor", e);
+            log.error("Error processing inbox partition {}", partition, e);
         } finally {
-            // Release lock if we still own it
-            String currentHolder = redisTemplate.opsForValue().get(LOCK_KEY);
-            if (instanceId.equals(currentHolder)) {
-                redisTemplate.delete(LOCK_KEY);
+            activePartitions.remove(partition);
+            releaseLock(lockKey);
+        }
+    }
+    
+    private void releaseLock(String lockKey) {
+        // Release lock if we still own it
+        String currentHolder = redisTemplate.opsForValue().get(lockKey);
+        if (instanceId.equals(currentHolder)) {
+            redisTemplate.delete(lockKey);
+        }
+    }
+    
+    /**
+     * Process a single inbox event, inside the transaction that marks it processed.
+     * Exceptions fail the event; InboxService rolls back its transaction and records
+     * the failure so it is retried.
+     */
+    private void processEvent(InboxEvent event) {
+        log.debug("Processing inbox event: id={}, type={}, topic={}", 
+                event.getId(), event.getEventType(), event.getTopic());
+        
+        try {
+            if (!route(event)) {
+                // Marked processed anyway to avoid infinite retries
+                log.warn("Unknown inbox event topic: {}", event.getTopic());
+                return;
             }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
         }
+        
+        log.debug("Successfully processed inbox event: id={}", event.getId());
     }
     
     /**
-     * Process a single inbox event.
+     * Handle an ephemeral event that was never stored in the inbox table
+     * (see EphemeralEventDispatcher). Records arrive at least once, duplicates
+     * included, but a failed broadcast is logged, not retried, since a missed
+     * presence or reaction broadcast is superseded by the next one.
      */
-    @Transactional
-    protected void processEvent(InboxEvent event) {
+    public void processEphemeral(InboxEvent event) {
         try {
-            log.debug("Processing inbox event: id={}, type={}, topic={}", 
-                    event.getId(), event.getEventType(), event.getTopic());
-            
-            // Route to appropriate handler based on topic
-            switch (event.getTopic()) {
-                case "lootchat.chat.messages":
-                    processChannelMessageEvent(event);
-                    break;
-                case "lootchat.direct.messages":
-                    processDirectMessageEvent(event);
-                    break;
-                case "lootchat.direct.message.reactions":
-                    processDirectMessageReactionEvent(event);
-                    break;
-                case "lootchat.direct.message.edits":
-                    processDirectMessageEditEvent(event);
-                    break;
-                case "lootchat.direct.message.deletions":
-                    processDirectMessageDeleteEvent(event);
-                    break;
-                case "lootchat.presence":
-                    processPresenceEvent(event);
-                    break;
-                default:
-                    log.warn("Unknown inbox event topic: {}", event.getTopic());
-                    // Mark as processed to avoid infinite retries
-                    inboxService.markAsProcessed(event.getId(), instanceId);
-                    return;
+            if (!route(event)) {
+                log.warn("Unknown ephemeral event topic: {}", event.getTopic());
             }
-            
-            // Mark as successfully processed
-            inboxService.markAsProcessed(event.getId(), instanceId);
-            log.debug("Successfully processed inbox event: id={}", event.getId());
-            
         } catch (Exception e) {
-            log.error("Failed to process inbox event: id={}, error={}", 
-                    event.getId(), e.getMessage(), e);
-            inboxService.recordFailure(event.getId(), e.getMessage());
-            
-            if (event.getRetryCount() + 1 >= MAX_RETRIES) {
-                log.error("Inbox event exhausted after {} retries: id={}, topic={}", 
-                        MAX_RETRIES, event.getId(), event.getTopic());
+            log.warn("Failed to broadcast ephemeral event: key={}, error={}", 
+                    event.getIdempotencyKey(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Route an event to its handler based on topic.
+     *
+     * @return false if the topic is unknown
+     */
+    private boolean route(InboxEvent event) throws Exception {
+        switch (event.getTopic()) {
+            case "lootchat.chat.messages" -> processChannelMessageEvent(event);
+            case "lootchat.direct.messages" -> processDirectMessageEvent(event);
+            case "lootchat.direct.message.reactions" -> processDirectMessageReactionEvent(event);
+            case "lootchat.direct.message.edits" -> processDirectMessageEditEvent(event);
+            case "lootchat.direct.message.deletions" -> processDirectMessageDeleteEvent(event);
+            case "lootchat.presence" -> processPresenceEvent(event);
+            default -> {
+                return false;
             }
         }
+        return true;
     }
     
     /**
      * Process channel message events (create, update, delete, reaction).
+     * Routed on the event type taken from the Kafka envelope header, so the
+     * payload is parsed exactly once, straight into its DTO.
      */
     private void processChannelMessageEvent(InboxEvent event) throws Exception {
         String payload = event.getPayload();
-        JsonNode node = objectMapper.readTree(payload);
-        
-        // Determine event subtype
-        if (node.has("reactionId") && node.has("action") && node.has("emoji")) {
-            handleReaction(payload);
-        } else if (node.has("messageId") && !node.has("content") && !node.has("reactionId") && node.has("channelId")) {
-            handleMessageDelete(payload);
-        } else if (node.has("messageId") && node.has("content") && !node.has("reactionId") && !node.has("userId")) {
-            handleMessageUpdate(payload);
-        } else if (node.has("messageId") && node.has("userId") && node.has("content") && !node.has("reactionId")) {
-            handleChatMessage(payload);
-        } else if (node.has("userId") && node.has("status") && node.has("username") && !node.has("messageId")) {
-            handleUserPresence(payload);
-        } else {
-            log.warn("Unknown channel message event subtype: {}", payload);
+        
+        switch (event.getEventType()) {
+            case OutboxService.EVENT_MESSAGE_CREATED -> handleChatMessage(payload);
+            case OutboxService.EVENT_MESSAGE_EDITED -> handleMessageUpdate(payload);
+            case OutboxService.EVENT_MESSAGE_DELETED -> handleMessageDelete(payload);
+            case OutboxService.EVENT_REACTION_ADDED, OutboxService.EVENT_REACTION_REMOVED -> handleReaction(payload);
+            case OutboxService.EVENT_PRESENCE_UPDATED -> handleUserPresence(payload);
+            default -> log.warn("Unknown channel message event type {}: id={}", event.getEventType(), event.getId());
         }
     }
     
@@ -205,6 +257,10 @@ public class InboxEventProcessor {
         
         if (message.getChannel() != null) {
             broadcastService.broadcastToChannel(message.getChannel().getId(), "/messages", response);
+            if (message.getChannelSeq() != null) {
+                unreadCounterService.incrementForChannel(message.getChannel().getId(), message.getUser().getId(),
+                        message.getChannelSeq());
+            }
         }
         broadcastService.broadcast("/topic/messages", response);
         
@@ -295,6 +351,7 @@ public class InboxEventProcessor {
                 .userId(event.getUserId())
                 .username(event.getUsername())
                 .status(event.getStatus())
+                .version(event.getVersion())
                 .build();
         
         broadcastService.broadcast("/topic/user-presence", update);
@@ -440,7 +497,7 @@ public class InboxEventProcessor {
                 .replyToMessageId(message.getReplyToMessage() != null ? message.getReplyToMessage().getId() : null)
                 .replyToUsername(message.getReplyToUsername())
                 .replyToContent(message.getReplyToContent())
-                .isRead(message.isRead())
+                .isRead(message.getDirectMessage().isReadByRecipient(message))
                 .createdAt(message.getCreatedAt())
                 .updatedAt(message.getUpdatedAt())
                 .reactions(List.of())
@@ -448,14 +505,12 @@ public class InboxEventProcessor {
     }
     
     /**
-     * Cleanup old processed events daily at 4 AM.
+     * Cleanup old processed events daily at 4 AM by dropping expired day partitions.
      * Runs 1 hour after outbox cleanup.
      */
     @Scheduled(cron = "0 0 4 * * ?")
-    @Transactional
     public void cleanupOldEvents() {
-        LocalDateTime cutoff = LocalDateTime.now().minusDays(7);
-        int deleted = inboxRepository.deleteProcessedEventsBefore(cutoff);
-        log.info("Cleaned up {} old inbox events processed before {}", deleted, cutoff);
+        int dropped = eventPartitionService.dropExpiredPartitions(EventPartitionService.INBOX_TABLE);
+        log.info("Inbox retention dropped {} partitions", dropped);
     }
 }
@@ -7,11 +7,24 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Inbox Service for reliable Kafka message consumption.
@@ -23,7 +36,7 @@ import java.util.Optional;
  * 4. Deduplicate by checking idempotency key
  * 
  * Usage:
- * - Kafka consumer calls storeEvent() for each incoming message
+ * - Kafka consumer calls storeEvents() once per poll (storeEvent() for single records)
  * - Returns true if message was stored (new), false if duplicate
  * - InboxEventProcessor handles the actual business logic
  */
@@ -33,6 +46,7 @@ import java.util.Optional;
 public class InboxService {
     
     private final InboxEventRepository inboxRepository;
+    private final PlatformTransactionManager transactionManager;
     
     // Configuration
     private static final int MAX_RETRIES = 5;
@@ -56,18 +70,7 @@ public class InboxService {
         }
         
         try {
-            InboxEvent event = InboxEvent.builder()
-                    .idempotencyKey(idempotencyKey)
-                    .eventType(eventType)
-                    .payload(record.value())
-                    .topic(record.topic())
-                    .kafkaPartition(record.partition())
-                    .kafkaOffset(record.offset())
-                    .messageKey(record.key())
-                    .receivedAt(LocalDateTime.now())
-                    .processed(false)
-                    .retryCount(0)
-                    .build();
+            InboxEvent event = toInboxEvent(record, eventType);
             
             InboxEvent saved = inboxRepository.save(event);
             log.debug("Stored inbox event: id={}, key={}, type={}, topic={}", 
@@ -82,45 +85,89 @@ public class InboxService {
         }
     }
     
+    /**
+     * Store a whole Kafka poll in one multi-row insert.
+     * Duplicates are skipped by ON CONFLICT DO NOTHING instead of a lookup per record,
+     * so a batch of N records costs one statement and one transaction.
+     * Exceptions propagate so the caller does not acknowledge the offsets.
+     * 
+     * @return number of newly stored events
+     */
+    @Transactional
+    public int storeEvents(List<InboxEvent> events) {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        int inserted = inboxRepository.insertIgnoringDuplicates(events);
+        log.debug("Stored {} inbox events in bulk, {} duplicates skipped", inserted, events.size() - inserted);
+        return inserted;
+    }
+    
+    /**
+     * Store one event on its own, for when a bulk insert was rejected.
+     * A duplicate is skipped by ON CONFLICT DO NOTHING, while a row the database rejects
+     * (constraint or size violation) throws, so the caller can tell the two apart.
+     * 
+     * @return true if stored, false if it was a duplicate
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean storeEventIgnoringDuplicate(InboxEvent event) {
+        return inboxRepository.insertIgnoringDuplicates(List.of(event)) == 1;
+    }
+    
+    /**
+     * Build an unsaved inbox event from a Kafka record.
+     */
+    public InboxEvent toInboxEvent(ConsumerRecord<String, String> record, String eventType) {
+        return InboxEvent.builder()
+                .idempotencyKey(buildIdempotencyKey(record))
+                .eventType(eventType)
+                .payload(record.value())
+                .topic(record.topic())
+                .kafkaPartition(record.partition())
+                .kafkaOffset(record.offset())
+                .messageKey(record.key())
+                .receivedAt(receivedAt(record))
+                .processed(false)
+                .retryCount(0)
+                .build();
+    }
+    
     /**
      * Store an event with a custom idempotency key.
      * Use this when you have a business-level unique identifier.
      * 
+     * The key is only unique together with the partition key, so occurredAt must be a
+     * property of the event itself (never the time of the call): every delivery of the
+     * same event has to pass the same value for a duplicate to be recognised.
+     * 
      * @param idempotencyKey Custom unique identifier
      * @param eventType The type of event
      * @param topic Source topic
      * @param payload The raw JSON payload
-     * @return The stored InboxEvent, or empty if duplicate
+     * @param occurredAt When the event happened, used as the inbox partition key
+     * @return true if stored, false if duplicate
      */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public Optional<InboxEvent> storeEvent(String idempotencyKey, String eventType, 
-                                           String topic, String payload) {
-        if (inboxRepository.existsByIdempotencyKey(idempotencyKey)) {
-            log.debug("Duplicate inbox event ignored: key={}", idempotencyKey);
-            return Optional.empty();
-        }
+    public boolean storeEvent(String idempotencyKey, String eventType, 
+                              String topic, String payload, LocalDateTime occurredAt) {
+        InboxEvent event = InboxEvent.builder()
+                .idempotencyKey(idempotencyKey)
+                .eventType(eventType)
+                .payload(payload)
+                .topic(topic)
+                .receivedAt(occurredAt)
+                .processed(false)
+                .retryCount(0)
+                .build();
         
-        try {
-            InboxEvent event = InboxEvent.builder()
-                    .idempotencyKey(idempotencyKey)
-                    .eventType(eventType)
-                    .payload(payload)
-                    .topic(topic)
-                    .receivedAt(LocalDateTime.now())
-                    .processed(false)
-                    .retryCount(0)
-                    .build();
-            
-            InboxEvent saved = inboxRepository.save(event);
-            log.debug("Stored inbox event: id={}, key={}, type={}", 
-                    saved.getId(), idempotencyKey, eventType);
-            
-            return Optional.of(saved);
-            
-        } catch (DataIntegrityViolationException e) {
-            log.debug("Concurrent duplicate inbox event ignored: key={}", idempotencyKey);
-            return Optional.empty();
+        boolean stored = inboxRepository.insertIgnoringDuplicates(List.of(event)) == 1;
+        if (stored) {
+            log.debug("Stored inbox event: key={}, type={}", idempotencyKey, eventType);
+        } else {
+            log.debug("Duplicate inbox event ignored: key={}", idempotencyKey);
         }
+        return stored;
     }
     
     /**
@@ -139,12 +186,113 @@ public class InboxService {
     
     /**
      * Build idempotency key from Kafka consumer record.
-     * Format: topic:partition:offset
+     * Format: outbox:{id} for records published from the outbox, so a re-publish of the
+     * same row is a duplicate even though it has a new offset; topic:partition:offset otherwise.
      */
     public String buildIdempotencyKey(ConsumerRecord<String, String> record) {
+        Long eventId = EventEnvelope.eventId(record);
+        if (eventId != null) {
+            return "outbox:" + eventId;
+        }
         return String.format("%s:%d:%d", record.topic(), record.partition(), record.offset());
     }
     
+    /**
+     * Inbox partition key for a Kafka record.
+     * The outbox creation time from the envelope, which every publish of the same row repeats,
+     * so a duplicate lands on the same (idempotency_key, received_at) row. Records without it
+     * fall back to the Kafka record timestamp (same for a redelivery), then to now.
+     */
+    public LocalDateTime receivedAt(ConsumerRecord<String, String> record) {
+        LocalDateTime createdAt = EventEnvelope.eventCreatedAt(record);
+        if (createdAt != null) {
+            return createdAt;
+        }
+        if (record.timestamp() < 0) {
+            return LocalDateTime.now();
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(record.timestamp()), ZoneId.systemDefault());
+    }
+    
+    /**
+     * Claim one batch of a message-key partition and process it event by event.
+     * 
+     * The claim is its own short transaction: the batch is found FOR UPDATE SKIP LOCKED
+     * and leased (claimed_until) before the locks are released. Each event is then handled
+     * and marked processed in its own transaction, so a failing handler only rolls back
+     * its own event, and its failure is recorded in a further transaction that survives
+     * that rollback. A lease that is never completed (worker died) simply expires.
+     * 
+     * A failed event keeps its claim for its retry backoff. The rest of the batch with the
+     * same message key is handed back unattempted and, like every later event of that key,
+     * is only claimed again once the failed one has been retried, which keeps per-key order.
+     * 
+     * @param handler handles one event, throwing to fail it
+     */
+    public BatchResult processClaimedBatch(int partition, int partitions, int batchSize, int maxRetries,
+                                           Duration lease, String processorInstance,
+                                           Consumer<InboxEvent> handler) {
+        List<InboxEvent> events = inNewTransaction(status -> {
+            List<InboxEvent> claimed = inboxRepository.claimUnprocessedEvents(maxRetries, partitions, partition, batchSize);
+            if (!claimed.isEmpty()) {
+                inboxRepository.leaseEvents(claimed.stream().map(InboxEvent::getId).toList(),
+                        LocalDateTime.now().plus(lease));
+            }
+            return claimed;
+        });
+        if (events == null || events.isEmpty()) {
+            return new BatchResult(0, 0);
+        }
+        
+        int processed = 0;
+        Set<String> failedKeys = new HashSet<>();
+        List<Long> heldBack = new ArrayList<>();
+        for (InboxEvent event : events) {
+            if (event.getMessageKey() != null && failedKeys.contains(event.getMessageKey())) {
+                heldBack.add(event.getId());
+                continue;
+            }
+            try {
+                inNewTransaction(status -> {
+                    handler.accept(event);
+                    inboxRepository.markAsProcessed(event.getId(), LocalDateTime.now(), processorInstance);
+                    return null;
+                });
+                processed++;
+            } catch (Exception e) {
+                log.error("Failed to process inbox event: id={}, error={}", event.getId(), e.getMessage(), e);
+                inNewTransaction(status -> {
+                    recordFailure(event.getId(), e.getMessage());
+                    return null;
+                });
+                if (event.getMessageKey() != null) {
+                    failedKeys.add(event.getMessageKey());
+                }
+                if (event.getRetryCount() + 1 >= maxRetries) {
+                    log.error("Inbox event exhausted after {} retries: id={}, topic={}",
+                            maxRetries, event.getId(), event.getTopic());
+                }
+            }
+        }
+        
+        if (!heldBack.isEmpty()) {
+            inNewTransaction(status -> inboxRepository.releaseEvents(heldBack));
+            log.debug("Held back {} inbox events behind a failed event of the same key", heldBack.size());
+        }
+        return new BatchResult(events.size(), processed);
+    }
+    
+    private <T> T inNewTransaction(TransactionCallback<T> action) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template.execute(action);
+    }
+    
+    /**
+     * Outcome of a claimed batch.
+     */
+    public record BatchResult(int claimed, int processed) {}
+    
     /**
      * Mark an event as successfully processed.
      */
@@ -155,12 +303,25 @@ public class InboxService {
     }
     
     /**
-     * Record a processing failure for retry.
+     * Mark a batch of events as successfully processed in one statement and one transaction.
      */
     @Transactional
+    public void markAsProcessed(Collection<Long> eventIds, String processorInstance) {
+        if (eventIds.isEmpty()) {
+            return;
+        }
+        int updated = inboxRepository.markAllAsProcessed(eventIds, LocalDateTime.now(), processorInstance);
+        log.debug("Marked {} inbox events as processed: processor={}", updated, processorInstance);
+    }
+    
+    /**
+     * Record a processing failure for retry after a backoff.
+     * Runs in its own transaction so the count survives a rollback of the handler's.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void recordFailure(Long eventId, String error) {
         String truncatedError = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
-        inboxRepository.incrementRetryCount(eventId, truncatedError);
+        inboxRepository.incrementRetryCount(eventId, truncatedError, LocalDateTime.now());
         log.warn("Recorded inbox event failure: id={}, error={}", eventId, truncatedError);
     }
     
@@ -185,6 +346,13 @@ public class InboxService {
         return inboxRepository.countExhaustedEvents(MAX_RETRIES);
     }
     
+    /**
+     * Get creation time of the oldest event not yet processed, or null if none.
+     */
+    public LocalDateTime getOldestPendingEventTime() {
+        return inboxRepository.findOldestUnprocessedCreatedAt(MAX_RETRIES);
+    }
+    
     /**
      * Get max retries configuration.
      */
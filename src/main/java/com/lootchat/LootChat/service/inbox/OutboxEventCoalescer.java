@@ -0,0 +1,114 @@
+package com.lootchat.LootChat.service.inbox;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lootchat.LootChat.entity.OutboxEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drops outbox events within a batch that are superseded by later events in the same batch.
+ *
+ * - MESSAGE_EDITED: only the last edit per (topic, messageId) is published. Edit handlers
+ *   reload the message, so the latest edit carries the final state.
+ * - REACTION_ADDED followed by REACTION_REMOVED for the same (topic, messageId, userId, emoji):
+ *   both are dropped, the reaction never existed as far as other pods are concerned.
+ *   A remove followed by an add is kept, since the re-added reaction has a new id.
+ *
+ * Surviving events keep their original relative order, so per-key ordering is preserved.
+ * Dropped events must still be marked processed together with the published batch.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxEventCoalescer {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @return the events of the batch that still need to be published, in original order
+     */
+    public List<OutboxEvent> coalesce(List<OutboxEvent> events) {
+        if (events.size() < 2) {
+            return events;
+        }
+
+        boolean[] dropped = new boolean[events.size()];
+        Map<String, Integer> lastEdit = new HashMap<>();
+        Map<String, Integer> pendingAdd = new HashMap<>();
+
+        for (int i = 0; i < events.size(); i++) {
+            OutboxEvent event = events.get(i);
+            String eventType = event.getEventType();
+
+            if (OutboxService.EVENT_MESSAGE_EDITED.equals(eventType)) {
+                String key = editKey(event);
+                if (key != null) {
+                    Integer previous = lastEdit.put(key, i);
+                    if (previous != null) {
+                        dropped[previous] = true;
+                    }
+                }
+            } else if (OutboxService.EVENT_REACTION_ADDED.equals(eventType)) {
+                String key = reactionKey(event);
+                if (key != null) {
+                    pendingAdd.put(key, i);
+                }
+            } else if (OutboxService.EVENT_REACTION_REMOVED.equals(eventType)) {
+                String key = reactionKey(event);
+                Integer add = key != null ? pendingAdd.remove(key) : null;
+                if (add != null) {
+                    dropped[add] = true;
+                    dropped[i] = true;
+                }
+            }
+        }
+
+        List<OutboxEvent> kept = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            if (!dropped[i]) {
+                kept.add(events.get(i));
+            }
+        }
+
+        if (kept.size() < events.size()) {
+            log.debug("Coalesced outbox batch: {} events, {} superseded", events.size(), events.size() - kept.size());
+        }
+        return kept;
+    }
+
+    private String editKey(OutboxEvent event) {
+        JsonNode node = readPayload(event);
+        if (node == null || !node.hasNonNull("messageId")) {
+            return null;
+        }
+        return event.getTopic() + ":" + node.get("messageId").asText();
+    }
+
+    private String reactionKey(OutboxEvent event) {
+        JsonNode node = readPayload(event);
+        if (node == null || !node.hasNonNull("messageId") || !node.hasNonNull("userId") || !node.hasNonNull("emoji")) {
+            return null;
+        }
+        return event.getTopic() + ":" + node.get("messageId").asText() + ":"
+                + node.get("userId").asText() + ":" + node.get("emoji").asText();
+    }
+
+    /**
+     * Parse the payload; events that cannot be parsed are never coalesced.
+     */
+    private JsonNode readPayload(OutboxEvent event) {
+        try {
+            return objectMapper.readTree(event.getPayload());
+        } catch (Exception e) {
+            log.debug("Not coalescing outbox event {}: {}", event.getId(), e.getMessage());
+            return null;
+        }
+    }
+}
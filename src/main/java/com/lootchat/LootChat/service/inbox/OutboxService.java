@@ -10,6 +10,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+
 /**
  * Centralized Outbox Service for reliable event publishing.
  * 
@@ -123,6 +126,30 @@ public class OutboxService {
         return saveEvent(EVENT_MESSAGE_DELETED, TOPIC_DIRECT_DELETIONS, String.valueOf(directMessageId), payload);
     }
     
+    /**
+     * Mark a published batch as processed in one statement and one transaction.
+     */
+    @Transactional
+    public int markEventsAsProcessed(Collection<Long> eventIds) {
+        if (eventIds.isEmpty()) {
+            return 0;
+        }
+        return outboxRepository.markAsProcessed(eventIds, LocalDateTime.now());
+    }
+    
+    /**
+     * Record a failed publish attempt for a whole batch in one statement and one transaction.
+     * Pushes each event's next attempt out by its backoff and dead-letters exhausted events.
+     */
+    @Transactional
+    public int recordFailedAttempt(Collection<Long> eventIds, String error, int maxRetries) {
+        if (eventIds.isEmpty()) {
+            return 0;
+        }
+        String truncatedError = error != null && error.length() > 500 ? error.substring(0, 500) : error;
+        return outboxRepository.recordFailedAttempt(eventIds, truncatedError, LocalDateTime.now(), maxRetries);
+    }
+    
     /**
      * Get count of pending (unprocessed) events.
      * Useful for monitoring and health checks.
@@ -138,4 +165,12 @@ public class OutboxService {
     public long getFailedEventCount() {
         return outboxRepository.countByProcessedFalseAndRetryCountGreaterThanEqual(5);
     }
+    
+    /**
+     * Get creation time of the oldest event not yet published, or null if none.
+     * Useful for lag monitoring.
+     */
+    public LocalDateTime getOldestPendingEventTime() {
+        return outboxRepository.findOldestPendingCreatedAt(5);
+    }
 }
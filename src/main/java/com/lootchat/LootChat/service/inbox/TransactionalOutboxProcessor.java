@@ -4,11 +4,11 @@ import com.lootchat.LootChat.entity.OutboxEvent;
 import com.lootchat.LootChat.repository.OutboxEventRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
@@ -21,6 +21,7 @@ import java.util.List;
  * - Messages are sent within a Kafka transaction
  * - Either all messages in the batch are committed or none
  * - Consumers with read_committed isolation only see committed messages
+ * - Events superseded within a batch are coalesced away before publishing (OutboxEventCoalescer)
  * 
  * Multi-pod safety:
  * - Uses Redis distributed lock to prevent duplicate processing
@@ -32,8 +33,12 @@ import java.util.List;
 public class TransactionalOutboxProcessor {
     
     private final OutboxEventRepository outboxRepository;
+    private final OutboxService outboxService;
+    private final EventPartitionService eventPartitionService;
     private final KafkaTemplate<String, String> kafkaTemplate;
     private final RedisTemplate<String, String> redisTemplate;
+    private final EventPipelineMetrics metrics;
+    private final OutboxEventCoalescer coalescer;
     
     private static final String LOCK_KEY = "outbox:processor:lock";
     private static final Duration LOCK_DURATION = Duration.ofSeconds(30);
@@ -42,7 +47,8 @@ public class TransactionalOutboxProcessor {
     
     /**
      * Process outbox events within a Kafka transaction.
-     * All events in a batch are committed atomically to Kafka.
+     * All events in a batch are committed atomically to Kafka. Failed events are retried
+     * by this same loop once their backoff (next_attempt_at) has elapsed.
      * Uses distributed lock to ensure only one pod processes at a time.
      */
     @Scheduled(fixedDelay = 500)
@@ -53,6 +59,7 @@ public class TransactionalOutboxProcessor {
         
         if (Boolean.FALSE.equals(acquired)) {
             // Another pod is processing
+            metrics.recordLockFailure("outbox");
             return;
         }
         
@@ -65,11 +72,9 @@ public class TransactionalOutboxProcessor {
     }
     
     private void doProcessOutboxEvents() {
-        List<OutboxEvent> events = outboxRepository.findUnprocessedEvents()
-                .stream()
-                .filter(e -> !e.isDeadLetter())
-                .limit(BATCH_SIZE)
-                .toList();
+        // Fresh and retried events in one creation-ordered query; backoff, retry limits
+        // and per-key ordering are evaluated by the database
+        List<OutboxEvent> events = outboxRepository.findDueEvents(MAX_RETRIES, LocalDateTime.now(), BATCH_SIZE);
         
         if (events.isEmpty()) {
             return;
@@ -77,18 +82,19 @@ public class TransactionalOutboxProcessor {
         
         log.debug("Processing {} outbox events with Kafka transaction", events.size());
         
+        // Superseded edits and cancelled reaction pairs are marked processed without publishing
+        List<OutboxEvent> toPublish = coalescer.coalesce(events);
+        
+        long start = System.nanoTime();
         try {
             // Execute all sends within a single Kafka transaction
             kafkaTemplate.executeInTransaction(ops -> {
-                for (OutboxEvent event : events) {
-                    String topic = event.getTopic() != null 
-                            ? event.getTopic() 
-                            : "lootchat.chat.messages";
-                    
-                    ops.send(topic, event.getMessageKey(), event.getPayload());
+                for (OutboxEvent event : toPublish) {
+                    ops.send(toProducerRecord(event));
                 }
                 return null;
             });
+            metrics.recordOutboxPublish(toPublish.size(), System.nanoTime() - start, true);
             
             // Transaction committed successfully - mark all events as processed
             markEventsAsProcessed(events);
@@ -98,108 +104,55 @@ public class TransactionalOutboxProcessor {
         } catch (Exception e) {
             log.error("Kafka transaction failed for batch of {} events: {}", 
                     events.size(), e.getMessage());
+            metrics.recordOutboxPublish(events.size(), System.nanoTime() - start, false);
             
             // Transaction was aborted - increment retry counts
             incrementRetryCountsForBatch(events, e.getMessage());
         }
     }
     
-    @Transactional
-    protected void markEventsAsProcessed(List<OutboxEvent> events) {
-        LocalDateTime now = LocalDateTime.now();
-        for (OutboxEvent event : events) {
-            event.setProcessed(true);
-            event.setProcessedAt(now);
-            event.setLastError(null);
-        }
-        outboxRepository.saveAll(events);
-    }
-    
-    @Transactional
-    protected void incrementRetryCountsForBatch(List<OutboxEvent> events, String error) {
-        for (OutboxEvent event : events) {
-            int newRetryCount = event.getRetryCount() + 1;
-            event.setRetryCount(newRetryCount);
-            event.setLastError(truncateError(error));
-            
-            if (newRetryCount >= MAX_RETRIES) {
-                event.setEventType("DLQ_" + event.getEventType());
-                log.error("Event {} moved to DLQ after {} retries", event.getId(), MAX_RETRIES);
-            }
-        }
-        outboxRepository.saveAll(events);
+    /**
+     * Mark a published batch as processed with a single UPDATE.
+     */
+    private void markEventsAsProcessed(List<OutboxEvent> events) {
+        outboxService.markEventsAsProcessed(eventIds(events));
     }
     
     /**
-     * Retry failed events with exponential backoff.
-     * Uses distributed lock to ensure only one pod retries at a time.
+     * Record the failed attempt for the whole batch with a single UPDATE.
+     * Backoff and dead-lettering are computed per row by the database.
      */
-    @Scheduled(fixedDelay = 10000)
-    public void retryFailedEvents() {
-        Boolean acquired = redisTemplate.opsForValue()
-                .setIfAbsent(LOCK_KEY + ":retry", "retrying", Duration.ofSeconds(60));
+    private void incrementRetryCountsForBatch(List<OutboxEvent> events, String error) {
+        outboxService.recordFailedAttempt(eventIds(events), error, MAX_RETRIES);
         
-        if (Boolean.FALSE.equals(acquired)) {
-            return;
-        }
-        
-        try {
-            doRetryFailedEvents();
-        } finally {
-            redisTemplate.delete(LOCK_KEY + ":retry");
-        }
+        events.stream()
+                .filter(event -> event.getRetryCount() + 1 >= MAX_RETRIES)
+                .forEach(event -> log.error("Event {} moved to DLQ after {} retries", event.getId(), MAX_RETRIES));
     }
     
-    private void doRetryFailedEvents() {
-        List<OutboxEvent> failedEvents = outboxRepository.findByProcessedFalseOrderByCreatedAtAsc()
-                .stream()
-                .filter(e -> e.getRetryCount() > 0 && e.getRetryCount() < MAX_RETRIES)
-                .filter(e -> !e.isDeadLetter())
-                .filter(this::shouldRetry)
-                .limit(20)
-                .toList();
-        
-        if (failedEvents.isEmpty()) {
-            return;
-        }
-        
-        log.info("Retrying {} failed events with Kafka transaction", failedEvents.size());
-        
-        try {
-            kafkaTemplate.executeInTransaction(ops -> {
-                for (OutboxEvent event : failedEvents) {
-                    String topic = event.getTopic() != null 
-                            ? event.getTopic() 
-                            : "lootchat.chat.messages";
-                    ops.send(topic, event.getMessageKey(), event.getPayload());
-                }
-                return null;
-            });
-            
-            markEventsAsProcessed(failedEvents);
-            
-        } catch (Exception e) {
-            log.error("Retry transaction failed: {}", e.getMessage());
-            incrementRetryCountsForBatch(failedEvents, e.getMessage());
-        }
+    /**
+     * Wrap an outbox event in the Kafka envelope: payload as value, event type, version, id and
+     * creation time as headers. Re-publishing the same row yields the same inbox dedup key.
+     */
+    private ProducerRecord<String, String> toProducerRecord(OutboxEvent event) {
+        String topic = event.getTopic() != null 
+                ? event.getTopic() 
+                : "lootchat.chat.messages";
+        return EventEnvelope.toProducerRecord(topic, event.getMessageKey(), event.getEventType(), event.getPayload(),
+                event.getId(), event.getCreatedAt());
     }
     
-    private boolean shouldRetry(OutboxEvent event) {
-        // Exponential backoff: 2^retryCount seconds
-        long backoffSeconds = (long) Math.pow(2, event.getRetryCount());
-        LocalDateTime retryAfter = event.getCreatedAt().plusSeconds(backoffSeconds);
-        return LocalDateTime.now().isAfter(retryAfter);
+    private List<Long> eventIds(List<OutboxEvent> events) {
+        return events.stream().map(OutboxEvent::getId).toList();
     }
     
     /**
-     * Cleanup old processed events.
+     * Cleanup old processed events by dropping expired day partitions.
      */
     @Scheduled(cron = "0 0 3 * * *")
-    @Transactional
     public void cleanupOldEvents() {
-        LocalDateTime cutoff = LocalDateTime.now().minusDays(7);
-        outboxRepository.deleteByProcessedTrueAndProcessedAtBefore(cutoff);
-        log.info("Cleaned up outbox events processed before {}", cutoff);
+        int dropped = eventPartitionService.dropExpiredPartitions(EventPartitionService.OUTBOX_TABLE);
+        log.info("Outbox retention dropped {} partitions", dropped);
     }
     
     /**
@@ -212,9 +165,4 @@ public class TransactionalOutboxProcessor {
             log.warn("ALERT: {} outbox events in dead letter queue", dlqCount);
         }
     }
-    
-    private String truncateError(String error) {
-        if (error == null) return null;
-        return error.length() > 500 ? error.substring(0, 500) : error;
-    }
 }
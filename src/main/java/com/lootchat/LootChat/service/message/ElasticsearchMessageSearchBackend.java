@@ -0,0 +1,232 @@
+package com.lootchat.LootChat.service.message;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import com.lootchat.LootChat.document.MessageDocument;
+import com.lootchat.LootChat.dto.message.MessageSearchResponse;
+import com.lootchat.LootChat.dto.message.MessageSearchResult;
+import com.lootchat.LootChat.entity.ChannelType;
+import com.lootchat.LootChat.entity.Message;
+import com.lootchat.LootChat.repository.MessageRepository;
+import com.lootchat.LootChat.service.search.ReindexSource;
+import com.lootchat.LootChat.service.search.SearchCursor;
+import com.lootchat.LootChat.service.search.SearchIndexQueue;
+import com.lootchat.LootChat.service.search.SearchReindexer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.HighlightQuery;
+import org.springframework.data.elasticsearch.core.query.highlight.Highlight;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightField;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightParameters;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Message search on Elasticsearch, the default backend.
+ *
+ * Writes are queued through SearchIndexQueue, the index behind the "messages" alias
+ * is (re)built by SearchReindexer, with this class as its row source.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "search.backend", havingValue = "elasticsearch", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ElasticsearchMessageSearchBackend implements MessageSearchBackend, ReindexSource<Message> {
+    
+    /**
+     * Whole words on content, plus word prefixes through the edge-n-gram subfield
+     */
+    private static final List<String> SEARCH_FIELDS = List.of("content^3", "content.prefix");
+    
+    private static final Sort SORT = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("messageId"));
+    
+    /**
+     * Whole content with matches wrapped in mark tags
+     */
+    private static final HighlightQuery HIGHLIGHT = new HighlightQuery(
+            new Highlight(
+                    HighlightParameters.builder()
+                            .withPreTags("<mark>")
+                            .withPostTags("</mark>")
+                            .withNumberOfFragments(0)
+                            .build(),
+                    List.of(new HighlightField("content"), new HighlightField("content.prefix"))),
+            MessageDocument.class);
+    
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final MessageRepository messageRepository;
+    private final SearchIndexQueue searchIndexQueue;
+    private final SearchReindexer searchReindexer;
+    
+    /**
+     * Newest matches first. Pages after the first are fetched with search_after from
+     * the previous page's cursor; page offsets are only used by clients without one.
+     */
+    @Override
+    public MessageSearchResponse search(String text, Long channelId, int page, int size, String cursor) {
+        NativeQueryBuilder query = NativeQuery.builder()
+                .withQuery(q -> q.bool(b -> {
+                    b.must(m -> m.multiMatch(mm -> mm
+                            .query(text)
+                            .fields(SEARCH_FIELDS)
+                            .type(TextQueryType.MostFields)
+                            .operator(Operator.And)));
+                    if (channelId != null) {
+                        b.filter(f -> f.term(t -> t.field("channelId").value(channelId)));
+                    }
+                    return b;
+                }))
+                .withSort(SORT)
+                .withHighlightQuery(HIGHLIGHT);
+        
+        if (cursor != null) {
+            query.withSearchAfter(SearchCursor.decode(cursor)).withPageable(PageRequest.of(0, size));
+        } else {
+            query.withPageable(PageRequest.of(page, size));
+        }
+        
+        SearchHits<MessageDocument> hits = elasticsearchOperations.search(query.build(), MessageDocument.class);
+        return buildResponse(hits, page, size);
+    }
+    
+    /**
+     * Queue a message for indexing once the surrounding transaction commits
+     */
+    @Override
+    public void index(Message message) {
+        MessageDocument document = toDocument(message);
+        if (document == null) {
+            log.debug("Skipping indexing for message {} from voice channel", message.getId());
+            return;
+        }
+        
+        searchIndexQueue.index(message.getId().toString(), document);
+    }
+    
+    /**
+     * Queue a message for removal from the index once the surrounding transaction commits
+     */
+    @Override
+    public void delete(Long messageId) {
+        searchIndexQueue.delete(MessageDocument.class, messageId.toString());
+    }
+    
+    /**
+     * Rebuild the message index into a new versioned index (for maintenance)
+     */
+    @Override
+    public void rebuild() {
+        searchReindexer.rebuild(this);
+    }
+    
+    /**
+     * Bring the message index up to date with changes since the last sync
+     */
+    @Override
+    public void sync() {
+        searchReindexer.sync(this);
+    }
+    
+    @Override
+    public Class<?> documentClass() {
+        return MessageDocument.class;
+    }
+    
+    @Override
+    public List<Message> findAfter(long afterId, int limit) {
+        return messageRepository.findForIndexingAfter(afterId, PageRequest.of(0, limit));
+    }
+    
+    @Override
+    public List<Message> findChangedSince(LocalDateTime since, long afterId, int limit) {
+        return messageRepository.findForIndexingChangedSince(since, afterId, PageRequest.of(0, limit));
+    }
+    
+    @Override
+    public long idOf(Message message) {
+        return message.getId();
+    }
+    
+    @Override
+    public LocalDateTime updatedAtOf(Message message) {
+        return message.getUpdatedAt();
+    }
+    
+    /**
+     * Only messages in TEXT channels are searchable
+     */
+    @Override
+    public MessageDocument toDocument(Message message) {
+        if (message.isDeleted() || message.getChannel().getChannelType() != ChannelType.TEXT) {
+            return null;
+        }
+        
+        return MessageDocument.builder()
+                .id(message.getId().toString())
+                .messageId(message.getId())
+                .content(message.getContent())
+                .channelId(message.getChannel().getId())
+                .channelName(message.getChannel().getName())
+                .userId(message.getUser().getId())
+                .username(message.getUser().getUsername())
+                .createdAt(message.getCreatedAt())
+                .edited(message.getUpdatedAt() != null && !message.getUpdatedAt().equals(message.getCreatedAt()))
+                .attachmentUrls(message.getImageUrl())
+                .build();
+    }
+    
+    private MessageSearchResponse buildResponse(SearchHits<MessageDocument> hits, int page, int size) {
+        List<SearchHit<MessageDocument>> searchHits = hits.getSearchHits();
+        List<MessageSearchResult> results = searchHits.stream()
+                .map(hit -> {
+                    MessageDocument doc = hit.getContent();
+                    return MessageSearchResult.builder()
+                            .messageId(doc.getMessageId())
+                            .content(doc.getContent())
+                            .highlightedContent(highlightedContent(hit))
+                            .channelId(doc.getChannelId())
+                            .channelName(doc.getChannelName())
+                            .userId(doc.getUserId())
+                            .username(doc.getUsername())
+                            .createdAt(doc.getCreatedAt())
+                            .edited(doc.getEdited())
+                            .attachmentUrls(doc.getAttachmentUrls() != null ? 
+                                    Arrays.asList(doc.getAttachmentUrls().split(",")) : null)
+                            .build();
+                })
+                .collect(Collectors.toList());
+        
+        String nextCursor = searchHits.size() == size
+                ? SearchCursor.encode(searchHits.get(searchHits.size() - 1).getSortValues())
+                : null;
+        
+        return MessageSearchResponse.builder()
+                .results(results)
+                .page(page)
+                .size(size)
+                .totalElements(hits.getTotalHits())
+                .totalPages((int) ((hits.getTotalHits() + size - 1) / size))
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    private static String highlightedContent(SearchHit<MessageDocument> hit) {
+        List<String> fragments = hit.getHighlightField("content");
+        if (fragments.isEmpty()) {
+            fragments = hit.getHighlightField("content.prefix");
+        }
+        return fragments.isEmpty() ? null : fragments.get(0);
+    }
+}
@@ -92,13 +92,9 @@ public class MentionService {
 
         else if (mentions.contains("here")) {
             mentionType = "here";
-            Set<String> onlineUsernames = userPresenceService.getOnlineUsers();
-            for (String username : onlineUsernames) {
-                User user = userRepository.findByUsername(username);
-                if (user != null && !user.getId().equals(senderId)) {
-                    mentionedUserIds.add(user.getId());
-                }
-            }
+            mentionedUserIds = userPresenceService.getOnlineUserIds().stream()
+                    .filter(id -> !id.equals(senderId))
+                    .collect(Collectors.toCollection(HashSet::new));
             log.debug("@here mention - notifying {} online users", mentionedUserIds.size());
         }
         
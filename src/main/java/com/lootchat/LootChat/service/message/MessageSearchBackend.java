@@ -0,0 +1,37 @@
+package com.lootchat.LootChat.service.message;
+
+import com.lootchat.LootChat.dto.message.MessageSearchResponse;
+import com.lootchat.LootChat.entity.Message;
+
+/**
+ * Where channel messages are indexed and searched, selected with search.backend:
+ * - elasticsearch (default): ElasticsearchMessageSearchBackend
+ * - postgres: PostgresMessageSearchBackend, no infrastructure beyond the database
+ *
+ * Results carry no avatars, MessageSearchService resolves them for the whole page.
+ */
+public interface MessageSearchBackend {
+
+    /**
+     * Newest matches first, optionally within one channel. A cursor from the previous
+     * page takes precedence over the page number.
+     */
+    MessageSearchResponse search(String query, Long channelId, int page, int size, String cursor);
+
+    /**
+     * Index (or re-index) a message once the surrounding transaction commits
+     */
+    void index(Message message);
+
+    void delete(Long messageId);
+
+    /**
+     * Rebuild the index from the database (for maintenance)
+     */
+    void rebuild();
+
+    /**
+     * Bring the index up to date on startup
+     */
+    void sync();
+}
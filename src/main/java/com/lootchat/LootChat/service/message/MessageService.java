@@ -13,6 +13,7 @@ import com.lootchat.LootChat.repository.MessageReactionRepository;
 import com.lootchat.LootChat.repository.MessageRepository;
 import com.lootchat.LootChat.repository.UserRepository;
 import com.lootchat.LootChat.security.CurrentUserService;
+import com.lootchat.LootChat.service.channel.ChannelSequenceService;
 import com.lootchat.LootChat.service.file.S3FileStorageService;
 import com.lootchat.LootChat.service.inbox.OutboxService;
 import com.lootchat.LootChat.service.common.WebSocketBroadcastService;
@@ -56,6 +57,7 @@ public class MessageService {
     private final CacheManager cacheManager;
     private final WebSocketBroadcastService broadcastService;
     private final MentionService mentionService;
+    private final ChannelSequenceService channelSequenceService;
     @Lazy
     private final MessageSearchService messageSearchService;
 
@@ -95,7 +97,8 @@ public class MessageService {
         Message.MessageBuilder messageBuilder = Message.builder()
                 .content(content)
                 .user(user)
-                .channel(channel);
+                .channel(channel)
+                .channelSeq(channelSequenceService.nextSequence(channelId));
 
         if (replyToMessageId != null) {
             Message replyToMessage = messageRepository.findById(replyToMessageId)
@@ -144,6 +147,7 @@ public class MessageService {
                 .content(messageContent)
                 .user(user)
                 .channel(channel)
+                .channelSeq(channelSequenceService.nextSequence(channelId))
                 .imageUrl(imageUrl)
                 .imageFilename(imageFilename);
 
@@ -0,0 +1,149 @@
+package com.lootchat.LootChat.service.message;
+
+import com.lootchat.LootChat.dto.message.MessageSearchResponse;
+import com.lootchat.LootChat.dto.message.MessageSearchResult;
+import com.lootchat.LootChat.entity.Message;
+import com.lootchat.LootChat.service.search.PostgresSearchQuery;
+import com.lootchat.LootChat.service.search.SearchCursor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Message search on Postgres full-text search (search.backend=postgres).
+ *
+ * Content is matched through the idx_messages_content_search expression GIN index,
+ * created on startup. Postgres keeps that index in sync with every write, so index and
+ * delete have nothing to do and search results are consistent with the database.
+ *
+ * Pages are ordered by message id (insertion order) and continued after the last id.
+ * Highlights are only computed for the rows of the requested page.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "search.backend", havingValue = "postgres")
+@RequiredArgsConstructor
+public class PostgresMessageSearchBackend implements MessageSearchBackend {
+
+    private static final String MATCHES =
+            "FROM messages m JOIN channels c ON c.id = m.channel_id " +
+            "WHERE to_tsvector('" + PostgresSearchQuery.CONFIG + "', m.content) @@ to_tsquery('" + PostgresSearchQuery.CONFIG + "', ?) " +
+            "AND m.deleted = false AND c.channel_type = 'TEXT' ";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public MessageSearchResponse search(String text, Long channelId, int page, int size, String cursor) {
+        String tsQuery = PostgresSearchQuery.toPrefixQuery(text);
+        if (tsQuery == null) {
+            return response(List.of(), 0, page, size);
+        }
+
+        StringBuilder filter = new StringBuilder(MATCHES);
+        List<Object> filterArgs = new ArrayList<>(List.of(tsQuery));
+        if (channelId != null) {
+            filter.append("AND m.channel_id = ? ");
+            filterArgs.add(channelId);
+        }
+
+        Long total = jdbcTemplate.queryForObject("SELECT COUNT(*) " + filter, Long.class, filterArgs.toArray());
+
+        Long afterId = PostgresSearchQuery.afterId(cursor);
+        List<Object> pageArgs = new ArrayList<>(filterArgs);
+        String pageFilter = filter.toString();
+        if (afterId != null) {
+            pageFilter += "AND m.id < ? ";
+            pageArgs.add(afterId);
+        }
+        pageArgs.add(size);
+        pageArgs.add(afterId != null ? 0 : (long) page * size);
+
+        List<Object> args = new ArrayList<>();
+        args.add(tsQuery);
+        args.addAll(pageArgs);
+        List<MessageSearchResult> results = jdbcTemplate.query(
+                "SELECT m.id, m.content, m.channel_id, c.name AS channel_name, m.user_id, u.username, " +
+                "m.created_at, m.updated_at, m.image_url, " +
+                "ts_headline('" + PostgresSearchQuery.CONFIG + "', m.content, to_tsquery('" + PostgresSearchQuery.CONFIG + "', ?), " +
+                "'" + PostgresSearchQuery.HEADLINE_OPTIONS + "') AS highlighted_content " +
+                "FROM (SELECT m.id " + pageFilter + "ORDER BY m.id DESC LIMIT ? OFFSET ?) hit " +
+                "JOIN messages m ON m.id = hit.id " +
+                "JOIN channels c ON c.id = m.channel_id " +
+                "JOIN users u ON u.id = m.user_id " +
+                "ORDER BY m.id DESC",
+                PostgresMessageSearchBackend::toResult, args.toArray());
+
+        MessageSearchResponse response = response(results, total != null ? total : 0, page, size);
+        if (results.size() == size) {
+            response.setNextCursor(SearchCursor.encode(List.of(results.get(results.size() - 1).getMessageId())));
+        }
+        return response;
+    }
+
+    /**
+     * Nothing to do, the GIN index is maintained by Postgres within the writing transaction
+     */
+    @Override
+    public void index(Message message) {
+    }
+
+    /**
+     * Nothing to do, deleted messages are filtered out by the query
+     */
+    @Override
+    public void delete(Long messageId) {
+    }
+
+    /**
+     * Postgres indexes never need rebuilding from the table, only to exist
+     */
+    @Override
+    public void rebuild() {
+        sync();
+    }
+
+    @Override
+    public void sync() {
+        jdbcTemplate.execute(
+                "CREATE INDEX IF NOT EXISTS idx_messages_content_search " +
+                "ON messages USING gin (to_tsvector('" + PostgresSearchQuery.CONFIG + "', content))");
+        log.info("Postgres message search index ready");
+    }
+
+    private static MessageSearchResponse response(List<MessageSearchResult> results, long total, int page, int size) {
+        return MessageSearchResponse.builder()
+                .results(results)
+                .page(page)
+                .size(size)
+                .totalElements(total)
+                .totalPages((int) ((total + size - 1) / size))
+                .build();
+    }
+
+    private static MessageSearchResult toResult(ResultSet rs, int rowNum) throws SQLException {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        Timestamp updatedAt = rs.getTimestamp("updated_at");
+        String imageUrl = rs.getString("image_url");
+        return MessageSearchResult.builder()
+                .messageId(rs.getLong("id"))
+                .content(rs.getString("content"))
+                .highlightedContent(rs.getString("highlighted_content"))
+                .channelId(rs.getLong("channel_id"))
+                .channelName(rs.getString("channel_name"))
+                .userId(rs.getLong("user_id"))
+                .username(rs.getString("username"))
+                .createdAt(createdAt.toLocalDateTime())
+                .edited(updatedAt != null && !updatedAt.equals(createdAt))
+                .attachmentUrls(imageUrl != null ? Arrays.asList(imageUrl.split(",")) : null)
+                .build();
+    }
+}
@@ -0,0 +1,55 @@
+package com.lootchat.LootChat.service.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Shared pieces of the Postgres search backends.
+ *
+ * Content is matched through expression GIN indexes on to_tsvector('simple', content),
+ * so queries must use exactly that expression. The simple configuration only lowercases,
+ * like the standard analyzer on the Elasticsearch side, and every search term is a prefix
+ * match, like the edge-n-gram subfields there.
+ */
+public final class PostgresSearchQuery {
+
+    public static final String CONFIG = "simple";
+
+    /**
+     * Whole content with matches wrapped in mark tags, same as the Elasticsearch highlighter
+     */
+    public static final String HEADLINE_OPTIONS = "StartSel=<mark>, StopSel=</mark>, HighlightAll=true";
+
+    private PostgresSearchQuery() {
+    }
+
+    /**
+     * A tsquery requiring every word of the input as a prefix ("hel wor" -> "hel:* & wor:*"),
+     * or null if the input has no words. Anything but letters and digits separates words,
+     * so user input can never carry tsquery operators.
+     */
+    public static String toPrefixQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        String query = Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .map(word -> word + ":*")
+                .collect(Collectors.joining(" & "));
+        return query.isEmpty() ? null : query;
+    }
+
+    /**
+     * The message id to continue after. Postgres pages are ordered by id alone, and the
+     * id is the last sort value of every cursor, so Elasticsearch cursors stay usable.
+     */
+    public static Long afterId(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        List<Object> values = SearchCursor.decode(cursor);
+        return (Long) values.get(values.size() - 1);
+    }
+}
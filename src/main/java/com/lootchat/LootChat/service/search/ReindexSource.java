@@ -0,0 +1,34 @@
+package com.lootchat.LootChat.service.search;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A database table that SearchReindexer streams into a search alias.
+ *
+ * Rows are read in keyset-paged chunks: by id for full builds, and by
+ * (updatedAt, id) to catch up on changes since a high-water mark.
+ *
+ * @param <T> the entity type
+ */
+public interface ReindexSource<T> {
+
+    /**
+     * Document class whose index name is used as the alias.
+     */
+    Class<?> documentClass();
+
+    List<T> findAfter(long afterId, int limit);
+
+    List<T> findChangedSince(LocalDateTime since, long afterId, int limit);
+
+    long idOf(T row);
+
+    LocalDateTime updatedAtOf(T row);
+
+    /**
+     * Search document of a row, or null if the row must not be searchable
+     * (e.g. it was deleted).
+     */
+    Object toDocument(T row);
+}
@@ -0,0 +1,33 @@
+package com.lootchat.LootChat.service.search;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Opaque search_after cursor handed to clients: the sort values of the last hit
+ * of a page, comma-separated. Elasticsearch results are sorted by (createdAt, messageId),
+ * both numeric, so the cursor is a pair of longs; Postgres results by messageId alone.
+ * Either way the message id comes last.
+ */
+public final class SearchCursor {
+
+    private SearchCursor() {
+    }
+
+    public static String encode(List<Object> sortValues) {
+        return sortValues.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    public static List<Object> decode(String cursor) {
+        try {
+            return new ArrayList<>(Arrays.stream(cursor.split(",")).map(Long::valueOf).toList());
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid search cursor");
+        }
+    }
+}
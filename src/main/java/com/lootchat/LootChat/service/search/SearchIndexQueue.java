@@ -0,0 +1,268 @@
+package com.lootchat.LootChat.service.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pod-local queue feeding Elasticsearch with _bulk requests.
+ *
+ * Search services hand over index and delete operations here instead of calling
+ * Elasticsearch themselves. Operations are queued once the surrounding transaction
+ * commits (rolled back writes are never indexed), keyed by index and document id
+ * so only the latest operation per document is sent. The queue is flushed every
+ * flush interval, or as soon as a full batch is pending.
+ *
+ * Documents that fail are retried with exponential backoff, up to max-attempts.
+ * Operations still queued when a pod dies are covered by the startup catch-up:
+ * SearchIndexInitializer has SearchReindexer replay every row changed since the
+ * alias high-water mark.
+ *
+ * Exported as lootchat_search_index_*.
+ */
+@Service
+@ConditionalOnProperty(name = "search.backend", havingValue = "elasticsearch", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class SearchIndexQueue {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final MeterRegistry meterRegistry;
+    private final Executor taskExecutor;
+
+    @Value("${search.indexing.batch-size:500}")
+    private int batchSize;
+
+    @Value("${search.indexing.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${search.indexing.initial-backoff-ms:500}")
+    private long initialBackoffMs;
+
+    @Value("${search.indexing.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    private final Map<DocKey, PendingOp> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private Timer bulkLatency;
+    private Timer indexLag;
+    private Counter indexed;
+    private Counter failures;
+    private Counter dropped;
+
+    @PostConstruct
+    void registerMeters() {
+        Gauge.builder("lootchat.search.index.pending", pending, Map::size)
+                .description("Search index operations waiting to be sent")
+                .register(meterRegistry);
+        Gauge.builder("lootchat.search.index.oldest.pending.age", this, SearchIndexQueue::oldestPendingAgeSeconds)
+                .description("Age of the oldest unsent search index operation")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        bulkLatency = Timer.builder("lootchat.search.bulk.latency")
+                .description("Duration of search _bulk requests")
+                .register(meterRegistry);
+        indexLag = Timer.builder("lootchat.search.index.lag")
+                .description("Time from commit until a document is searchable")
+                .register(meterRegistry);
+        indexed = Counter.builder("lootchat.search.index.operations")
+                .description("Search index operations applied")
+                .register(meterRegistry);
+        failures = Counter.builder("lootchat.search.index.failures")
+                .description("Search index operations that failed and were scheduled for retry")
+                .register(meterRegistry);
+        dropped = Counter.builder("lootchat.search.index.dropped")
+                .description("Search index operations that exhausted their retries")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Index (or replace) a document once the surrounding transaction commits.
+     */
+    public void index(String id, Object document) {
+        enqueue(new DocKey(indexName(document.getClass()), id), document);
+    }
+
+    /**
+     * Remove a document once the surrounding transaction commits.
+     */
+    public void delete(Class<?> documentClass, String id) {
+        enqueue(new DocKey(indexName(documentClass), id), null);
+    }
+
+    private void enqueue(DocKey key, Object document) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueueNow(key, document);
+                }
+            });
+        } else {
+            enqueueNow(key, document);
+        }
+    }
+
+    private void enqueueNow(DocKey key, Object document) {
+        // A newer operation replaces any pending one for the same document
+        pending.put(key, PendingOp.of(document));
+        if (pending.size() >= batchSize) {
+            try {
+                taskExecutor.execute(this::flush);
+            } catch (Exception e) {
+                // Executor saturated, the scheduled flush picks the batch up
+                log.debug("Could not trigger search index flush: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Send all due operations in _bulk requests of at most batch-size operations.
+     * Only one flush runs at a time per pod.
+     */
+    @Scheduled(fixedDelayString = "${search.indexing.flush-interval-ms:1000}")
+    public void flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Map.Entry<DocKey, PendingOp>> batch;
+            while (!(batch = takeDue(Instant.now())).isEmpty()) {
+                sendBulk(batch);
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private List<Map.Entry<DocKey, PendingOp>> takeDue(Instant now) {
+        List<Map.Entry<DocKey, PendingOp>> batch = new ArrayList<>();
+        for (Map.Entry<DocKey, PendingOp> entry : pending.entrySet()) {
+            if (batch.size() >= batchSize) {
+                break;
+            }
+            PendingOp op = entry.getValue();
+            // Only remove the exact operation seen, a newer one stays queued
+            if (!op.nextAttemptAt().isAfter(now) && pending.remove(entry.getKey(), op)) {
+                batch.add(Map.entry(entry.getKey(), op));
+            }
+        }
+        return batch;
+    }
+
+    private void sendBulk(List<Map.Entry<DocKey, PendingOp>> batch) {
+        BulkRequest.Builder request = new BulkRequest.Builder();
+        for (Map.Entry<DocKey, PendingOp> entry : batch) {
+            DocKey key = entry.getKey();
+            Object document = entry.getValue().document();
+            if (document != null) {
+                Map<String, Object> source = elasticsearchOperations.getElasticsearchConverter().mapObject(document);
+                request.operations(op -> op.index(index -> index.index(key.index()).id(key.id()).document(source)));
+            } else {
+                request.operations(op -> op.delete(delete -> delete.index(key.index()).id(key.id())));
+            }
+        }
+
+        BulkResponse response;
+        try {
+            response = bulkLatency.recordCallable(() -> elasticsearchClient.bulk(request.build()));
+        } catch (Exception e) {
+            log.warn("Search _bulk request of {} operations failed: {}", batch.size(), e.getMessage());
+            batch.forEach(entry -> retry(entry.getKey(), entry.getValue()));
+            return;
+        }
+
+        Instant now = Instant.now();
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < batch.size(); i++) {
+            DocKey key = batch.get(i).getKey();
+            PendingOp op = batch.get(i).getValue();
+            // Deleting a document that was never indexed reports not_found without an error
+            if (i < items.size() && items.get(i).error() == null) {
+                indexed.increment();
+                indexLag.record(Duration.between(op.enqueuedAt(), now));
+            } else {
+                if (i < items.size()) {
+                    log.debug("Search index operation on {}/{} failed: {}",
+                            key.index(), key.id(), items.get(i).error().reason());
+                }
+                retry(key, op);
+            }
+        }
+    }
+
+    private void retry(DocKey key, PendingOp op) {
+        failures.increment();
+        int attempts = op.attempts() + 1;
+        if (attempts >= maxAttempts) {
+            dropped.increment();
+            log.error("Dropping search index operation on {}/{} after {} attempts", key.index(), key.id(), attempts);
+            return;
+        }
+        long backoffMs = Math.min(initialBackoffMs << Math.min(attempts - 1, 20), maxBackoffMs);
+        // Never overwrite a newer operation queued meanwhile
+        pending.putIfAbsent(key, new PendingOp(op.document(), op.enqueuedAt(), attempts,
+                Instant.now().plusMillis(backoffMs)));
+    }
+
+    private double oldestPendingAgeSeconds() {
+        Instant now = Instant.now();
+        return pending.values().stream()
+                .map(PendingOp::enqueuedAt)
+                .min(Instant::compareTo)
+                .map(oldest -> Duration.between(oldest, now).toMillis() / 1000.0)
+                .orElse(0.0);
+    }
+
+    private String indexName(Class<?> documentClass) {
+        return elasticsearchOperations.getIndexCoordinatesFor(documentClass).getIndexName();
+    }
+
+    private record DocKey(String index, String id) {}
+
+    /**
+     * A queued operation; document is null for deletes.
+     */
+    private record PendingOp(Object document, Instant enqueuedAt, int attempts, Instant nextAttemptAt) {
+        static PendingOp of(Object document) {
+            Instant now = Instant.now();
+            return new PendingOp(document, now, 0, now);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.lootchat.LootChat.service.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import com.lootchat.LootChat.config.DistributedLockService;
+import com.lootchat.LootChat.entity.SearchIndexState;
+import com.lootchat.LootChat.repository.SearchIndexStateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rebuilds and catches up search indexes without taking search offline.
+ *
+ * Every document type is served through an alias (e.g. "messages") pointing at a
+ * versioned index (e.g. "messages_20250101120000"). A rebuild streams the table in
+ * keyset-paged chunks into a fresh versioned index, checkpointing the last id written
+ * in search_index_states, and atomically moves the alias once the table is exhausted.
+ * Search keeps answering from the old index meanwhile, and an interrupted build
+ * resumes from its checkpoint.
+ *
+ * Live writes go through SearchIndexQueue. On startup, sync only replays rows changed
+ * since the alias's high-water mark, which also covers writes the queue lost with a
+ * pod and writes that landed in the old index during a rebuild.
+ *
+ * Runs are serialized cluster-wide per alias with a distributed lock.
+ */
+@Service
+@ConditionalOnProperty(name = "search.backend", havingValue = "elasticsearch", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class SearchReindexer {
+
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final SearchIndexStateRepository stateRepository;
+    private final DistributedLockService lockService;
+
+    @Value("${search.reindex.chunk-size:1000}")
+    private int chunkSize;
+
+    /**
+     * Changes are replayed from this long before the high-water mark, covering
+     * transactions that committed after rows with later timestamps.
+     */
+    @Value("${search.reindex.catch-up-overlap-seconds:300}")
+    private long catchUpOverlapSeconds;
+
+    @Value("${search.reindex.lock-timeout-minutes:60}")
+    private long lockTimeoutMinutes;
+
+    /**
+     * Bring an alias up to date: finish an interrupted build, build the index if the
+     * alias has none yet or its settings/mapping changed, then replay changes since
+     * the high-water mark.
+     */
+    public <T> void sync(ReindexSource<T> source) {
+        withLock(source, () -> {
+            SearchIndexState state = loadState(source);
+            boolean mappingChanged = !mappingHash(source.documentClass()).equals(state.getMappingHash());
+            if (state.getBuildIndex() != null && !mappingChanged) {
+                log.info("Resuming search index build {} after id {}", state.getBuildIndex(), state.getBuildCursor());
+                build(source, state);
+            } else if (state.getBuildIndex() != null) {
+                log.info("Search mapping of {} changed, restarting its build", state.getAliasName());
+                elasticsearchOperations.indexOps(IndexCoordinates.of(state.getBuildIndex())).delete();
+                startBuild(source, state);
+            } else if (mappingChanged || state.getActiveIndex() == null
+                    || !aliasTargets(state.getAliasName()).contains(state.getActiveIndex())) {
+                startBuild(source, state);
+            }
+            catchUp(source, state);
+        });
+    }
+
+    /**
+     * Rebuild an alias into a new versioned index, then replay changes made meanwhile.
+     */
+    public <T> void rebuild(ReindexSource<T> source) {
+        withLock(source, () -> {
+            SearchIndexState state = loadState(source);
+            if (state.getBuildIndex() != null) {
+                build(source, state);
+            } else {
+                startBuild(source, state);
+            }
+            catchUp(source, state);
+        });
+    }
+
+    private <T> void startBuild(ReindexSource<T> source, SearchIndexState state) {
+        String index = state.getAliasName() + "_" + LocalDateTime.now().format(VERSION_FORMAT);
+        IndexOperations template = elasticsearchOperations.indexOps(source.documentClass());
+        elasticsearchOperations.indexOps(IndexCoordinates.of(index))
+                .create(template.createSettings(source.documentClass()), template.createMapping(source.documentClass()));
+        setRefreshInterval(index, "-1");
+
+        state.setBuildIndex(index);
+        state.setMappingHash(mappingHash(source.documentClass()));
+        state.setBuildCursor(0L);
+        state.setBuildStartedAt(LocalDateTime.now());
+        stateRepository.save(state);
+        log.info("Building search index {} for alias {}", index, state.getAliasName());
+
+        build(source, state);
+    }
+
+    /**
+     * Fingerprint of the settings and mapping derived from a document class.
+     */
+    public String mappingHash(Class<?> documentClass) {
+        IndexOperations template = elasticsearchOperations.indexOps(documentClass);
+        String definition = template.createSettings(documentClass).toJson() + template.createMapping(documentClass).toJson();
+        return DigestUtils.md5DigestAsHex(definition.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private <T> void build(ReindexSource<T> source, SearchIndexState state) {
+        String index = state.getBuildIndex();
+        long written = 0;
+        List<T> chunk;
+        while (!(chunk = source.findAfter(state.getBuildCursor(), chunkSize)).isEmpty()) {
+            written += write(index, source, chunk, false);
+            state.setBuildCursor(source.idOf(chunk.get(chunk.size() - 1)));
+            stateRepository.save(state);
+        }
+        setRefreshInterval(index, "1s");
+
+        swapAlias(state.getAliasName(), index);
+
+        state.setActiveIndex(index);
+        state.setBuildIndex(null);
+        state.setBuildCursor(null);
+        // Rows changed after the build started may only have reached the old index
+        state.setHighWaterMark(state.getBuildStartedAt());
+        state.setBuildStartedAt(null);
+        stateRepository.save(state);
+        log.info("Search alias {} now points to {} ({} documents written)", state.getAliasName(), index, written);
+    }
+
+    private <T> void catchUp(ReindexSource<T> source, SearchIndexState state) {
+        if (state.getHighWaterMark() == null) {
+            state.setHighWaterMark(LocalDateTime.now());
+            stateRepository.save(state);
+            return;
+        }
+
+        LocalDateTime since = state.getHighWaterMark().minusSeconds(catchUpOverlapSeconds);
+        long afterId = 0;
+        long replayed = 0;
+        List<T> chunk;
+        while (!(chunk = source.findChangedSince(since, afterId, chunkSize)).isEmpty()) {
+            replayed += write(state.getAliasName(), source, chunk, true);
+            T last = chunk.get(chunk.size() - 1);
+            since = source.updatedAtOf(last);
+            afterId = source.idOf(last);
+            if (since.isAfter(state.getHighWaterMark())) {
+                state.setHighWaterMark(since);
+                stateRepository.save(state);
+            }
+        }
+        if (replayed > 0) {
+            log.info("Caught up {} changed documents in search alias {}", replayed, state.getAliasName());
+        }
+    }
+
+    /**
+     * Write a chunk in one _bulk request. Rows without a document are skipped during
+     * a build and deleted during catch-up. Any failed item fails the chunk, so the
+     * checkpoint is not advanced past it.
+     */
+    private <T> int write(String index, ReindexSource<T> source, List<T> chunk, boolean deleteUnsearchable) {
+        BulkRequest.Builder request = new BulkRequest.Builder();
+        int operations = 0;
+        for (T row : chunk) {
+            String id = String.valueOf(source.idOf(row));
+            Object document = source.toDocument(row);
+            if (document != null) {
+                Map<String, Object> sourceMap = elasticsearchOperations.getElasticsearchConverter().mapObject(document);
+                request.operations(op -> op.index(idx -> idx.index(index).id(id).document(sourceMap)));
+                operations++;
+            } else if (deleteUnsearchable) {
+                request.operations(op -> op.delete(delete -> delete.index(index).id(id)));
+                operations++;
+            }
+        }
+        if (operations == 0) {
+            return 0;
+        }
+
+        try {
+            BulkResponse response = elasticsearchClient.bulk(request.build());
+            if (response.errors()) {
+                long failed = response.items().stream().filter(item -> item.error() != null).count();
+                throw new IllegalStateException(failed + " of " + operations + " documents failed in " + index);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Bulk write to " + index + " failed", e);
+        }
+        return operations;
+    }
+
+    /**
+     * Point the alias at the new index in one atomic update. Indexes it pointed to
+     * before are deleted afterwards, as is a concrete index that still carries the
+     * alias's name from before aliases were used.
+     */
+    private void swapAlias(String alias, String index) {
+        Set<String> previous = aliasTargets(alias);
+        boolean legacyIndex = previous.isEmpty() && elasticsearchOperations.indexOps(IndexCoordinates.of(alias)).exists();
+
+        try {
+            elasticsearchClient.indices().updateAliases(update -> {
+                update.actions(action -> action.add(add -> add.index(index).alias(alias)));
+                for (String old : previous) {
+                    update.actions(action -> action.remove(remove -> remove.index(old).alias(alias)));
+                }
+                if (legacyIndex) {
+                    update.actions(action -> action.removeIndex(remove -> remove.index(alias)));
+                }
+                return update;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to point alias " + alias + " to " + index, e);
+        }
+
+        for (String old : previous) {
+            if (!old.equals(index)) {
+                elasticsearchOperations.indexOps(IndexCoordinates.of(old)).delete();
+            }
+        }
+    }
+
+    private Set<String> aliasTargets(String alias) {
+        try {
+            if (!elasticsearchClient.indices().existsAlias(exists -> exists.name(alias)).value()) {
+                return Set.of();
+            }
+            return elasticsearchClient.indices().getAlias(get -> get.name(alias)).result().keySet();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to resolve alias " + alias, e);
+        }
+    }
+
+    private void setRefreshInterval(String index, String interval) {
+        try {
+            elasticsearchClient.indices().putSettings(put -> put
+                    .index(index)
+                    .settings(settings -> settings.refreshInterval(time -> time.time(interval))));
+        } catch (IOException e) {
+            // Only affects build throughput
+            log.warn("Failed to set refresh interval of {}: {}", index, e.getMessage());
+        }
+    }
+
+    private SearchIndexState loadState(ReindexSource<?> source) {
+        String alias = elasticsearchOperations.getIndexCoordinatesFor(source.documentClass()).getIndexName();
+        return stateRepository.findById(alias)
+                .orElseGet(() -> SearchIndexState.builder().aliasName(alias).build());
+    }
+
+    private void withLock(ReindexSource<?> source, Runnable action) {
+        String alias = elasticsearchOperations.getIndexCoordinatesFor(source.documentClass()).getIndexName();
+        String lockKey = "search:reindex:" + alias;
+        String token = lockService.tryLock(lockKey, Duration.ofMinutes(lockTimeoutMinutes));
+        if (token == null) {
+            log.info("Search alias {} is being reindexed by another instance, skipping", alias);
+            return;
+        }
+        try {
+            action.run();
+        } finally {
+            lockService.unlock(lockKey, token);
+        }
+    }
+}
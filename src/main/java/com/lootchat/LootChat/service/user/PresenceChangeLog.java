@@ -0,0 +1,139 @@
+package com.lootchat.LootChat.service.user;
+
+import com.lootchat.LootChat.dto.user.PresenceDelta;
+import com.lootchat.LootChat.dto.user.UserPresenceUpdate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Versioned log of presence transitions.
+ *
+ * Every online/offline transition increments presence:version and is recorded in the
+ * presence:changes sorted set scored by that version, so clients holding version V can
+ * fetch only what changed after V instead of the full online list.
+ *
+ * Members are "userId:status:username". Re-adding the same transition moves it to the
+ * newer version, which keeps the log bounded by twice the number of users that changed.
+ * The log is additionally capped at max-entries; presence:changes:floor records the highest
+ * version that was trimmed, and clients older than it are told to take a new snapshot.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceChangeLog {
+
+    static final String VERSION_KEY = "presence:version";
+    static final String CHANGES_KEY = "presence:changes";
+    static final String FLOOR_KEY = "presence:changes:floor";
+
+    /**
+     * Bump the version and append the change atomically, so a reader never sees
+     * version N before change N is in the log.
+     */
+    private static final RedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('INCR', KEYS[1]) " +
+            "redis.call('ZADD', KEYS[2], v, ARGV[1]) " +
+            "local excess = redis.call('ZCARD', KEYS[2]) - tonumber(ARGV[2]) " +
+            "if excess > 0 then " +
+            "  local trimmed = redis.call('ZRANGE', KEYS[2], excess - 1, excess - 1, 'WITHSCORES') " +
+            "  redis.call('ZREMRANGEBYRANK', KEYS[2], 0, excess - 1) " +
+            "  redis.call('SET', KEYS[3], trimmed[2]) " +
+            "end " +
+            "return v",
+            Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Value("${presence.changes.max-entries:10000}")
+    private long maxEntries;
+
+    /**
+     * Record a presence transition.
+     *
+     * @return the version assigned to the change
+     */
+    public long record(Long userId, String username, String status) {
+        Long version = redisTemplate.execute(RECORD_SCRIPT,
+                List.of(VERSION_KEY, CHANGES_KEY, FLOOR_KEY),
+                userId + ":" + status + ":" + username, String.valueOf(maxEntries));
+        return version != null ? version : 0L;
+    }
+
+    public long currentVersion() {
+        String version = redisTemplate.opsForValue().get(VERSION_KEY);
+        return version != null ? Long.parseLong(version) : 0L;
+    }
+
+    /**
+     * Net presence changes after the given version.
+     * A user that went offline and back online inside the window only appears as joined.
+     */
+    public PresenceDelta changesSince(long since) {
+        long current = currentVersion();
+        if (since > current || since < floor()) {
+            // Unknown future version (Redis was reset) or history already trimmed
+            return PresenceDelta.builder()
+                    .version(current)
+                    .snapshotRequired(true)
+                    .joined(List.of())
+                    .left(List.of())
+                    .build();
+        }
+
+        Set<ZSetOperations.TypedTuple<String>> entries = redisTemplate.opsForZSet()
+                .rangeByScoreWithScores(CHANGES_KEY, since + 1, Double.POSITIVE_INFINITY);
+
+        long version = since;
+        Map<Long, UserPresenceUpdate> latest = new LinkedHashMap<>();
+        if (entries != null) {
+            for (ZSetOperations.TypedTuple<String> entry : entries) {
+                String[] parts = entry.getValue().split(":", 3);
+                long entryVersion = entry.getScore().longValue();
+                Long userId = Long.valueOf(parts[0]);
+                // Entries come back in version order, later ones replace earlier ones
+                latest.remove(userId);
+                latest.put(userId, UserPresenceUpdate.builder()
+                        .userId(userId)
+                        .status(parts[1])
+                        .username(parts[2])
+                        .version(entryVersion)
+                        .build());
+                version = Math.max(version, entryVersion);
+            }
+        }
+
+        List<UserPresenceUpdate> joined = new ArrayList<>();
+        List<Long> left = new ArrayList<>();
+        for (UserPresenceUpdate update : latest.values()) {
+            if ("online".equals(update.getStatus())) {
+                joined.add(update);
+            } else {
+                left.add(update.getUserId());
+            }
+        }
+
+        return PresenceDelta.builder()
+                .version(version)
+                .snapshotRequired(false)
+                .joined(joined)
+                .left(left)
+                .build();
+    }
+
+    private long floor() {
+        String floor = redisTemplate.opsForValue().get(FLOOR_KEY);
+        return floor != null ? (long) Double.parseDouble(floor) : 0L;
+    }
+}
@@ -0,0 +1,94 @@
+package com.lootchat.LootChat.service.user;
+
+import com.lootchat.LootChat.dto.user.PresenceDelta;
+import com.lootchat.LootChat.dto.user.UserPresenceUpdate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pod-local copy of the online user set.
+ *
+ * Bootstrapped from the Redis presence snapshot and then advanced with the
+ * presence change log (see PresenceChangeLog), so online checks, @here resolution
+ * and presence endpoints are plain memory reads. Transitions made on this pod are
+ * applied immediately; transitions from other pods arrive with the next refresh.
+ *
+ * The mirror only answers while it was synced within max-staleness-ms. Past that
+ * (Redis unreachable, refresh stuck) callers fall back to Redis.
+ */
+@Component
+public class PresenceMirror {
+
+    private volatile Map<Long, String> online = new ConcurrentHashMap<>();
+    private volatile long version = -1;
+    private volatile long syncedAt;
+
+    @Value("${presence.mirror.max-staleness-ms:5000}")
+    private long maxStalenessMs;
+
+    public boolean isFresh() {
+        return version >= 0 && System.currentTimeMillis() - syncedAt <= maxStalenessMs;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isOnline(Long userId) {
+        return online.containsKey(userId);
+    }
+
+    public Set<Long> getOnlineUserIds() {
+        return Set.copyOf(online.keySet());
+    }
+
+    public Map<Long, String> getOnlineUserPresence() {
+        return Map.copyOf(online);
+    }
+
+    /**
+     * Replace the mirror with a snapshot taken at or after the given version.
+     */
+    public void reset(Map<Long, String> snapshot, long snapshotVersion) {
+        online = new ConcurrentHashMap<>(snapshot);
+        version = snapshotVersion;
+        syncedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Apply the changes since the mirror's version.
+     */
+    public void advance(PresenceDelta delta) {
+        for (UserPresenceUpdate joined : delta.getJoined()) {
+            online.put(joined.getUserId(), joined.getUsername());
+        }
+        for (Long userId : delta.getLeft()) {
+            online.remove(userId);
+        }
+        version = Math.max(version, delta.getVersion());
+        syncedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Mark the mirror as current without changes, the Redis version did not move.
+     */
+    public void touch() {
+        syncedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Apply a transition made on this pod without waiting for the next refresh.
+     * The version is left alone so the refresh still picks up earlier changes from other pods.
+     */
+    public void apply(Long userId, String username, String status) {
+        if ("online".equals(status)) {
+            online.put(userId, username);
+        } else {
+            online.remove(userId);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.lootchat.LootChat.service.user;
+
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+/**
+ * Server-side presence operations.
+ *
+ * Each script runs atomically in Redis, so concurrent connects/disconnects of the
+ * same user from several tabs or pods can no longer interleave between the counter
+ * update and the presence set update, and each operation is a single round trip.
+ *
+ * CONNECT, DISCONNECT and HEARTBEAT take the same keys:
+ * KEYS[1] = user:connections:{username}, KEYS[2] = presence:online, KEYS[3] = presence:usernames,
+ * KEYS[4] = presence:offline:pending
+ * and ARGV[1] = userId, ARGV[2] = username, ARGV[3] = now (epoch millis),
+ * ARGV[4] = new expiry (epoch millis), ARGV[5] = connection counter TTL (seconds),
+ * ARGV[6] = offline grace period (millis).
+ */
+final class PresenceScripts {
+
+    /**
+     * Open a connection, cancelling a pending offline transition.
+     * Returns {connection count, 1 if the user was offline}.
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CONNECT = new DefaultRedisScript<>(
+            "local count = redis.call('INCR', KEYS[1]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[5]) " +
+            "redis.call('ZREM', KEYS[4], ARGV[1]) " +
+            "local score = redis.call('ZSCORE', KEYS[2], ARGV[1]) " +
+            "local wasOffline = 0 " +
+            "if not score or tonumber(score) <= tonumber(ARGV[3]) then wasOffline = 1 end " +
+            "redis.call('ZADD', KEYS[2], ARGV[4], ARGV[1]) " +
+            "redis.call('HSET', KEYS[3], ARGV[1], ARGV[2]) " +
+            "return {count, wasOffline}",
+            List.class);
+
+    /**
+     * Close a connection. Returns {remaining connections, 1 if this call took the user offline}.
+     * With a grace period the last disconnect only schedules the offline transition in
+     * presence:offline:pending and keeps the user online; FINALIZE_OFFLINE completes it later.
+     * Only the call that actually removes the user from the presence set reports the transition,
+     * so a racing disconnect or expiry sweep cannot publish "offline" twice.
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> DISCONNECT = new DefaultRedisScript<>(
+            "local count = redis.call('DECR', KEYS[1]) " +
+            "if count <= 0 then " +
+            "  redis.call('DEL', KEYS[1]) " +
+            "  if tonumber(ARGV[6]) > 0 then " +
+            "    redis.call('ZADD', KEYS[4], tonumber(ARGV[3]) + tonumber(ARGV[6]), ARGV[1]) " +
+            "    redis.call('ZADD', KEYS[2], ARGV[4], ARGV[1]) " +
+            "    return {0, 0} " +
+            "  end " +
+            "  local removed = redis.call('ZREM', KEYS[2], ARGV[1]) " +
+            "  redis.call('HDEL', KEYS[3], ARGV[1]) " +
+            "  return {0, removed} " +
+            "end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[5]) " +
+            "redis.call('ZADD', KEYS[2], ARGV[4], ARGV[1]) " +
+            "redis.call('HSET', KEYS[3], ARGV[1], ARGV[2]) " +
+            "return {count, 0}",
+            List.class);
+
+    /**
+     * Extend presence from a heartbeat. Returns 1 if the user was offline.
+     * A heartbeat proves one open connection, not a new one: the counter is only set to 1
+     * when it has expired (SET NX) and never incremented, so the matching disconnect still
+     * brings it back to 0.
+     */
+    static final RedisScript<Long> HEARTBEAT = new DefaultRedisScript<>(
+            "local score = redis.call('ZSCORE', KEYS[2], ARGV[1]) " +
+            "local wasOffline = 0 " +
+            "if not score or tonumber(score) <= tonumber(ARGV[3]) then wasOffline = 1 end " +
+            "redis.call('SET', KEYS[1], 1, 'NX') " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[5]) " +
+            "redis.call('ZADD', KEYS[2], ARGV[4], ARGV[1]) " +
+            "redis.call('HSET', KEYS[3], ARGV[1], ARGV[2]) " +
+            "return wasOffline",
+            Long.class);
+
+    /**
+     * Remove a user whose presence expired, unless a connect or heartbeat extended it
+     * after the sweep read it. KEYS[1] = presence:online, KEYS[2] = presence:usernames,
+     * ARGV[1] = userId, ARGV[2] = now. Returns the username if removed, else false.
+     */
+    static final RedisScript<String> EXPIRE = new DefaultRedisScript<>(
+            "local score = redis.call('ZSCORE', KEYS[1], ARGV[1]) " +
+            "if score and tonumber(score) <= tonumber(ARGV[2]) then " +
+            "  local username = redis.call('HGET', KEYS[2], ARGV[1]) " +
+            "  redis.call('ZREM', KEYS[1], ARGV[1]) " +
+            "  redis.call('HDEL', KEYS[2], ARGV[1]) " +
+            "  return username " +
+            "end " +
+            "return false",
+            String.class);
+
+    /**
+     * Complete an offline transition whose grace period elapsed, unless the user reconnected.
+     * KEYS[1] = presence:online, KEYS[2] = presence:usernames, KEYS[3] = presence:offline:pending,
+     * ARGV[1] = userId, ARGV[2] = now, ARGV[3] = connection counter key prefix.
+     * Returns the username if the user went offline, else false.
+     */
+    static final RedisScript<String> FINALIZE_OFFLINE = new DefaultRedisScript<>(
+            "local due = redis.call('ZSCORE', KEYS[3], ARGV[1]) " +
+            "if not due or tonumber(due) > tonumber(ARGV[2]) then return false end " +
+            "redis.call('ZREM', KEYS[3], ARGV[1]) " +
+            "local username = redis.call('HGET', KEYS[2], ARGV[1]) " +
+            "if not username then return false end " +
+            "if tonumber(redis.call('GET', ARGV[3] .. username) or '0') > 0 then return false end " +
+            "local removed = redis.call('ZREM', KEYS[1], ARGV[1]) " +
+            "redis.call('HDEL', KEYS[2], ARGV[1]) " +
+            "if removed == 1 then return username end " +
+            "return false",
+            String.class);
+
+    private PresenceScripts() {
+    }
+}
@@ -0,0 +1,144 @@
+package com.lootchat.LootChat.service.user;
+
+import com.lootchat.LootChat.entity.User;
+import com.lootchat.LootChat.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Avatar URLs by user id, for responses that only carry user ids (search hits).
+ *
+ * Layout: one key per user, user:avatar:{userId} -> avatar URL ("" for users without
+ * one), each with its own TTL.
+ *
+ * A lookup is one MGET for all requested ids; misses are loaded with a single
+ * findAllById and written back in one pipeline with SET NX EX. Avatar changes replace
+ * the user's key with a short-lived eviction marker after commit, so a lookup that
+ * read the old avatar before the change cannot write it back. If Redis is
+ * unavailable, lookups go straight to the database.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserAvatarCache {
+
+    static final String KEY_PREFIX = "user:avatar:";
+    private static final String NO_AVATAR = "";
+    private static final String EVICTED = "!evicted";
+    private static final Duration EVICTED_TTL = Duration.ofSeconds(30);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final UserRepository userRepository;
+
+    @Value("${user.avatar-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    /**
+     * Avatar URL per user id; users without an avatar or that no longer exist are absent.
+     */
+    public Map<Long, String> getAvatars(Collection<Long> userIds) {
+        Set<Long> ids = new LinkedHashSet<>(userIds);
+        ids.remove(null);
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, String> avatars = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        List<String> keys = ids.stream().map(UserAvatarCache::key).toList();
+        try {
+            List<String> cached = redisTemplate.opsForValue().multiGet(keys);
+            int i = 0;
+            for (Long id : ids) {
+                String avatar = cached.get(i++);
+                if (avatar == null || EVICTED.equals(avatar)) {
+                    missing.add(id);
+                } else if (!NO_AVATAR.equals(avatar)) {
+                    avatars.put(id, avatar);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read cached avatars, loading from database: {}", e.getMessage());
+            missing = new ArrayList<>(ids);
+        }
+
+        if (!missing.isEmpty()) {
+            avatars.putAll(load(missing));
+        }
+        return avatars;
+    }
+
+    /**
+     * Drop a user's cached avatar once the surrounding transaction commits.
+     */
+    public void evict(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(userId);
+                }
+            });
+        } else {
+            evictNow(userId);
+        }
+    }
+
+    private void evictNow(Long userId) {
+        try {
+            // A marker rather than a delete, so in-flight loads (SET NX) cannot restore the old avatar
+            redisTemplate.opsForValue().set(key(userId), EVICTED, EVICTED_TTL);
+        } catch (Exception e) {
+            log.warn("Failed to evict cached avatar of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private Map<Long, String> load(List<Long> userIds) {
+        Map<String, String> entries = new HashMap<>();
+        Map<Long, String> avatars = new HashMap<>();
+        for (User user : userRepository.findAllById(userIds)) {
+            String avatar = user.getAvatar();
+            entries.put(key(user.getId()), avatar != null ? avatar : NO_AVATAR);
+            if (avatar != null) {
+                avatars.put(user.getId(), avatar);
+            }
+        }
+
+        if (!entries.isEmpty()) {
+            try {
+                Expiration ttl = Expiration.from(Duration.ofMinutes(ttlMinutes));
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    entries.forEach((key, avatar) -> connection.stringCommands().set(
+                            key.getBytes(StandardCharsets.UTF_8), avatar.getBytes(StandardCharsets.UTF_8),
+                            ttl, RedisStringCommands.SetOption.ifAbsent()));
+                    return null;
+                });
+            } catch (Exception e) {
+                log.warn("Failed to cache avatars: {}", e.getMessage());
+            }
+        }
+        return avatars;
+    }
+
+    private static String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+}
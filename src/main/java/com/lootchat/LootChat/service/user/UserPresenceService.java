@@ -1,49 +1,82 @@
 package com.lootchat.LootChat.service.user;
 
+import com.lootchat.LootChat.dto.user.PresenceDelta;
 import com.lootchat.LootChat.dto.user.UserPresenceEvent;
 import com.lootchat.LootChat.entity.User;
-import com.lootchat.LootChat.repository.UserRepository;
 import com.lootchat.LootChat.service.inbox.OutboxService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * Tracks which users are online in Redis.
+ *
+ * Layout (no per-user presence keys, so nothing ever needs a KEYS scan):
+ * - presence:online     sorted set, member = userId, score = presence expiry (epoch millis)
+ * - presence:usernames  hash, userId -> username of every member of presence:online
+ * - user:connections:{username}  open WebSocket connection counter
+ *
+ * A user is online while their score is in the future; connects and heartbeats push it
+ * out by PRESENCE_TTL. Connect, disconnect, heartbeat and expiry are Lua scripts (see
+ * PresenceScripts), so each is one atomic round trip. Heartbeats are buffered per pod and
+ * flushed once a second in a single pipeline. Snapshots are a ZRANGEBYSCORE plus HMGET, O(online users), and
+ * "is online" is a single ZSCORE. Expired members are swept periodically.
+ *
+ * Read paths (isUserOnline, online snapshots) are served from the pod-local PresenceMirror
+ * while it is fresh and fall back to Redis otherwise. Transition decisions always use Redis.
+ */
 @Service
 @RequiredArgsConstructor
 public class UserPresenceService {
     
     private static final Logger log = LoggerFactory.getLogger(UserPresenceService.class);
-    private static final String PRESENCE_KEY_PREFIX = "user:presence:";
+    static final String ONLINE_KEY = "presence:online";
+    static final String USERNAMES_KEY = "presence:usernames";
+    static final String OFFLINE_PENDING_KEY = "presence:offline:pending";
     private static final String CONNECTIONS_KEY_PREFIX = "user:connections:";
     private static final long PRESENCE_TTL_MINUTES = 5; // Auto-expire after 5 minutes
+    private static final long PRESENCE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(PRESENCE_TTL_MINUTES);
     
-    private final UserRepository userRepository;
     private final OutboxService outboxService;
     private final RedisTemplate<String, String> redisTemplate;
+    private final PresenceChangeLog presenceChangeLog;
+    private final PresenceMirror presenceMirror;
+    
+    /**
+     * How long after the last connection closes before the user is published as offline.
+     * A reconnect within the window (page refresh, rolling deploy) publishes nothing.
+     */
+    @Value("${presence.offline-grace-seconds:10}")
+    private long offlineGraceSeconds;
+    
+    /** Heartbeats received since the last flush, userId -> username. */
+    private final Map<Long, String> pendingHeartbeats = new ConcurrentHashMap<>();
     
     @Transactional
     public void userConnected(String username, Long userId) {
-        String presenceKey = PRESENCE_KEY_PREFIX + username;
-        String connectionsKey = CONNECTIONS_KEY_PREFIX + username;
-
-        Long connectionCount = redisTemplate.opsForValue().increment(connectionsKey);
-        redisTemplate.expire(connectionsKey, PRESENCE_TTL_MINUTES, TimeUnit.MINUTES);
-        
-        String previousStatus = redisTemplate.opsForValue().get(presenceKey);
-        boolean wasOffline = !"online".equals(previousStatus);
-
-        redisTemplate.opsForValue().set(presenceKey, "online", PRESENCE_TTL_MINUTES, TimeUnit.MINUTES);
+        List<?> result = redisTemplate.execute(PresenceScripts.CONNECT, presenceKeys(username), presenceArgs(userId, username));
+        long connectionCount = toLong(result.get(0));
+        boolean wasOffline = toLong(result.get(1)) == 1;
         
         log.info("User connected: {} (connections: {}, wasOffline: {})", username, connectionCount, wasOffline);
         
@@ -54,59 +87,117 @@ public class UserPresenceService {
     
     @Transactional
     public void userDisconnected(String username, Long userId) {
-        String presenceKey = PRESENCE_KEY_PREFIX + username;
-        String connectionsKey = CONNECTIONS_KEY_PREFIX + username;
-        
-        Long connectionCount = redisTemplate.opsForValue().decrement(connectionsKey);
-        
-        if (connectionCount == null || connectionCount < 0) {
-            connectionCount = 0L;
-            redisTemplate.delete(connectionsKey);
-        }
+        List<?> result = redisTemplate.execute(PresenceScripts.DISCONNECT, presenceKeys(username), presenceArgs(userId, username));
+        long connectionCount = toLong(result.get(0));
+        boolean wentOffline = toLong(result.get(1)) == 1;
         
         log.info("User disconnected: {} (remaining connections: {})", username, connectionCount);
         
-        if (connectionCount <= 0) {
-            redisTemplate.delete(presenceKey);
-            redisTemplate.delete(connectionsKey);
+        if (wentOffline) {
             broadcastPresenceUpdate(userId, username, "offline");
             log.info("User fully offline: {}", username);
-        } else {
-            redisTemplate.expire(connectionsKey, PRESENCE_TTL_MINUTES, TimeUnit.MINUTES);
-            redisTemplate.expire(presenceKey, PRESENCE_TTL_MINUTES, TimeUnit.MINUTES);
+        } else if (connectionCount <= 0) {
+            log.debug("User {} offline pending, grace period {}s", username, offlineGraceSeconds);
+        }
+    }
+    
+    /**
+     * Publish users whose offline grace period elapsed without a reconnect.
+     */
+    @Scheduled(fixedDelayString = "${presence.offline-grace.check-interval-ms:1000}")
+    @Transactional
+    public void publishPendingOffline() {
+        try {
+            long now = System.currentTimeMillis();
+            Set<String> due = redisTemplate.opsForZSet().rangeByScore(OFFLINE_PENDING_KEY, Double.NEGATIVE_INFINITY, now);
+            if (due == null || due.isEmpty()) {
+                return;
+            }
+            
+            for (String member : due) {
+                // Returns null if the user reconnected or another pod completed it first
+                String username = redisTemplate.execute(PresenceScripts.FINALIZE_OFFLINE,
+                        List.of(ONLINE_KEY, USERNAMES_KEY, OFFLINE_PENDING_KEY),
+                        member, String.valueOf(now), CONNECTIONS_KEY_PREFIX);
+                if (username != null) {
+                    broadcastPresenceUpdate(Long.valueOf(member), username, "offline");
+                    log.info("User fully offline after grace period: {}", username);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to publish pending offline presence: {}", e.getMessage());
         }
     }
     
-    public boolean isUserOnline(String username) {
-        String key = PRESENCE_KEY_PREFIX + username;
-        String status = redisTemplate.opsForValue().get(key);
-        return "online".equals(status);
+    /**
+     * Presence check from the pod-local mirror, or a single ZSCORE when the mirror is stale.
+     */
+    public boolean isUserOnline(Long userId) {
+        if (presenceMirror.isFresh()) {
+            return presenceMirror.isOnline(userId);
+        }
+        Double expiresAt = redisTemplate.opsForZSet().score(ONLINE_KEY, userId.toString());
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
     }
     
     /**
-     * Refresh the current user's presence TTL without broadcasting.
-     * Called by heartbeat endpoint to keep presence alive.
+     * Queue a presence refresh for the current user.
+     * Called by heartbeat endpoint to keep presence alive; the actual Redis write
+     * happens in the next batched flush, see flushHeartbeats().
      */
     public void refreshCurrentUserPresence() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication != null && authentication.getPrincipal() instanceof UserDetails) {
-            UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-            String username = userDetails.getUsername();
-            
-            String presenceKey = PRESENCE_KEY_PREFIX + username;
-            String connectionsKey = CONNECTIONS_KEY_PREFIX + username;
-            String currentStatus = redisTemplate.opsForValue().get(presenceKey);
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            pendingHeartbeats.put(user.getId(), user.getUsername());
+        }
+    }
+    
+    /**
+     * Write all heartbeats received by this pod since the last flush in one pipelined call,
+     * one HEARTBEAT script per user. Users whose presence had expired are published as online again.
+     */
+    @Scheduled(fixedDelayString = "${presence.heartbeat.flush-interval-ms:1000}")
+    @Transactional
+    public void flushHeartbeats() {
+        if (pendingHeartbeats.isEmpty()) {
+            return;
+        }
+        
+        List<Map.Entry<Long, String>> batch = new ArrayList<>();
+        for (Long userId : pendingHeartbeats.keySet()) {
+            String username = pendingHeartbeats.remove(userId);
+            if (username != null) {
+                batch.add(Map.entry(userId, username));
+            }
+        }
+        
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                String sha = PresenceScripts.HEARTBEAT.getSha1();
+                // Loads the script if the server's script cache was flushed; a no-op otherwise
+                connection.scriptingCommands().scriptLoad(
+                        PresenceScripts.HEARTBEAT.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                for (Map.Entry<Long, String> heartbeat : batch) {
+                    connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 4,
+                            toBytes(presenceKeys(heartbeat.getValue()), presenceArgs(heartbeat.getKey(), heartbeat.getValue())));
+                }
+                return null;
+            });
             
-            if ("online".equals(currentStatus)) {
-                redisTemplate.expire(presenceKey, PRESENCE_TTL_MINUTES, TimeUnit.MINUTES);
-                redisTemplate.expire(connectionsKey, PRESENCE_TTL_MINUTES, TimeUnit.MINUTES);
-                log.debug("Refreshed presence TTL for user: {}", username);
-            } else {
-                redisTemplate.opsForValue().set(presenceKey, "online", PRESENCE_TTL_MINUTES, TimeUnit.MINUTES);
-                redisTemplate.opsForValue().increment(connectionsKey);
-                redisTemplate.expire(connectionsKey, PRESENCE_TTL_MINUTES, TimeUnit.MINUTES);
-                log.info("Re-established presence in Redis for user: {}", username);
+            // results.get(0) is the SCRIPT LOAD reply
+            for (int i = 0; i < batch.size(); i++) {
+                if (toLong(results.get(i + 1)) == 1) {
+                    Map.Entry<Long, String> heartbeat = batch.get(i);
+                    // The expiry sweep already published this user as offline
+                    broadcastPresenceUpdate(heartbeat.getKey(), heartbeat.getValue(), "online");
+                    log.info("Re-established presence in Redis for user: {}", heartbeat.getValue());
+                }
             }
+            log.debug("Flushed {} presence heartbeats", batch.size());
+        } catch (Exception e) {
+            // Retry with the next flush unless a newer heartbeat was queued meanwhile
+            batch.forEach(heartbeat -> pendingHeartbeats.putIfAbsent(heartbeat.getKey(), heartbeat.getValue()));
+            log.warn("Failed to flush {} presence heartbeats: {}", batch.size(), e.getMessage());
         }
     }
     
@@ -116,42 +207,181 @@ public class UserPresenceService {
         return count != null ? Long.parseLong(count) : 0L;
     }
     
-    public Set<String> getOnlineUsers() {
-        Set<String> keys = redisTemplate.keys(PRESENCE_KEY_PREFIX + "*");
-        if (keys == null) return Set.of();
+    /**
+     * Ids of all online users, O(online users).
+     */
+    public Set<Long> getOnlineUserIds() {
+        if (presenceMirror.isFresh()) {
+            return presenceMirror.getOnlineUserIds();
+        }
+        Set<String> members = redisTemplate.opsForZSet()
+                .rangeByScore(ONLINE_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        if (members == null || members.isEmpty()) {
+            return Set.of();
+        }
+        return members.stream().map(Long::valueOf).collect(Collectors.toSet());
+    }
+    
+    /**
+     * Online users as userId -> username, without any database lookup.
+     */
+    public Map<Long, String> getOnlineUserPresence() {
+        if (presenceMirror.isFresh()) {
+            return presenceMirror.getOnlineUserPresence();
+        }
+        return readOnlineUserPresence();
+    }
+    
+    private Map<Long, String> readOnlineUserPresence() {
+        Set<String> members = redisTemplate.opsForZSet()
+                .rangeByScore(ONLINE_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        if (members == null || members.isEmpty()) {
+            return Map.of();
+        }
         
-        return keys.stream()
-                .map(key -> key.replace(PRESENCE_KEY_PREFIX, ""))
-                .collect(java.util.stream.Collectors.toSet());
+        List<Object> fields = new ArrayList<>(members);
+        List<Object> usernames = redisTemplate.opsForHash().multiGet(USERNAMES_KEY, fields);
+        
+        Map<Long, String> presence = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            Object username = usernames.get(i);
+            if (username != null) {
+                presence.put(Long.valueOf((String) fields.get(i)), (String) username);
+            }
+        }
+        return presence;
+    }
+    
+    public Set<String> getOnlineUsers() {
+        return new HashSet<>(getOnlineUserPresence().values());
     }
     
     public Map<Long, Boolean> getAllUserPresence() {
         Map<Long, Boolean> presenceMap = new HashMap<>();
-        Set<String> keys = redisTemplate.keys(PRESENCE_KEY_PREFIX + "*");
-        
-        if (keys != null) {
-            keys.forEach(key -> {
-                String username = key.replace(PRESENCE_KEY_PREFIX, "");
-                User user = userRepository.findByUsername(username);
-                if (user != null) {
-                    String status = redisTemplate.opsForValue().get(key);
-                    presenceMap.put(user.getId(), "online".equals(status));
+        getOnlineUserIds().forEach(userId -> presenceMap.put(userId, true));
+        return presenceMap;
+    }
+    
+    /**
+     * Version of the most recent presence change, for clients to compare against.
+     */
+    public long getPresenceVersion() {
+        return presenceChangeLog.currentVersion();
+    }
+    
+    /**
+     * Users that joined or left after the given presence version.
+     */
+    public PresenceDelta getPresenceChanges(long sinceVersion) {
+        return presenceChangeLog.changesSince(sinceVersion);
+    }
+    
+    /**
+     * Keep the pod-local mirror within its staleness bound. A version check is a single GET;
+     * only when it moved are the changes fetched, and only when the mirror fell out of the
+     * change log is the full snapshot reloaded.
+     */
+    @Scheduled(fixedDelayString = "${presence.mirror.refresh-interval-ms:1000}")
+    public void refreshPresenceMirror() {
+        try {
+            long mirrorVersion = presenceMirror.getVersion();
+            long currentVersion = presenceChangeLog.currentVersion();
+            
+            if (mirrorVersion == currentVersion) {
+                presenceMirror.touch();
+                return;
+            }
+            
+            if (mirrorVersion >= 0) {
+                PresenceDelta delta = presenceChangeLog.changesSince(mirrorVersion);
+                if (!delta.isSnapshotRequired()) {
+                    presenceMirror.advance(delta);
+                    return;
                 }
-            });
+            }
+            
+            // Version is read before the snapshot, so changes racing with it are re-applied next time
+            presenceMirror.reset(readOnlineUserPresence(), currentVersion);
+            log.info("Reloaded presence mirror at version {}", currentVersion);
+        } catch (Exception e) {
+            log.warn("Failed to refresh presence mirror: {}", e.getMessage());
         }
-        
-        return presenceMap;
+    }
+    
+    /**
+     * Remove users whose presence expired without a disconnect (crashed pods, dropped clients)
+     * and publish them as offline. Each member is claimed with its own ZREM so that only one
+     * pod publishes the transition when several sweep at once.
+     */
+    @Scheduled(fixedDelay = 60000)
+    @Transactional
+    public void removeExpiredPresence() {
+        try {
+            long now = System.currentTimeMillis();
+            Set<String> expired = redisTemplate.opsForZSet().rangeByScore(ONLINE_KEY, Double.NEGATIVE_INFINITY, now);
+            if (expired == null || expired.isEmpty()) {
+                return;
+            }
+            
+            int removed = 0;
+            for (String member : expired) {
+                // Skips members refreshed since the range read or already removed by another pod
+                String username = redisTemplate.execute(PresenceScripts.EXPIRE,
+                        List.of(ONLINE_KEY, USERNAMES_KEY), member, String.valueOf(now));
+                if (username == null) {
+                    continue;
+                }
+                broadcastPresenceUpdate(Long.valueOf(member), username, "offline");
+                removed++;
+            }
+            log.debug("Removed {} expired presence entries", removed);
+        } catch (Exception e) {
+            log.warn("Failed to remove expired presence: {}", e.getMessage());
+        }
+    }
+    
+    private List<String> presenceKeys(String username) {
+        return List.of(CONNECTIONS_KEY_PREFIX + username, ONLINE_KEY, USERNAMES_KEY, OFFLINE_PENDING_KEY);
+    }
+    
+    private Object[] presenceArgs(Long userId, String username) {
+        long now = System.currentTimeMillis();
+        return new Object[] {
+                userId.toString(),
+                username,
+                String.valueOf(now),
+                String.valueOf(now + PRESENCE_TTL_MILLIS),
+                String.valueOf(TimeUnit.MINUTES.toSeconds(PRESENCE_TTL_MINUTES)),
+                String.valueOf(TimeUnit.SECONDS.toMillis(offlineGraceSeconds))
+        };
+    }
+    
+    private static byte[][] toBytes(List<String> keys, Object[] args) {
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[keys.size() + i] = ((String) args[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        return keysAndArgs;
+    }
+    
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
     }
     
     private void broadcastPresenceUpdate(Long userId, String username, String status) {
-        UserPresenceEvent event = new UserPresenceEvent(userId, username, status);
+        long version = presenceChangeLog.record(userId, username, status);
+        presenceMirror.apply(userId, username, status);
+        UserPresenceEvent event = new UserPresenceEvent(userId, username, status, version);
         outboxService.saveEvent(
                 OutboxService.EVENT_PRESENCE_UPDATED,
                 OutboxService.TOPIC_PRESENCE,
                 userId.toString(),
                 event
         );
-        log.debug("Stored user presence update in outbox: userId={}, username={}, status={}", 
-            userId, username, status);
+        log.debug("Stored user presence update in outbox: userId={}, username={}, status={}, version={}", 
+            userId, username, status, version);
     }
 }
@@ -27,6 +27,7 @@ public class UserService {
     private final PasswordEncoder passwordEncoder;
     private final S3FileStorageService s3FileStorageService;
     private final CacheManager cacheManager;
+    private final UserAvatarCache userAvatarCache;
 
     @Cacheable(cacheNames = "users", key = "'all'")
     @Transactional(readOnly = true)
@@ -140,6 +141,7 @@ public class UserService {
             if (usersCache != null) {
                 usersCache.evict("all");
             }
+            userAvatarCache.evict(userId);
             
             return avatarUrl;
         } catch (Exception e) {
@@ -0,0 +1,124 @@
+package com.lootchat.LootChat.config;
+
+import com.lootchat.LootChat.entity.DirectMessage;
+import com.lootchat.LootChat.entity.DirectMessageMessage;
+import com.lootchat.LootChat.entity.Role;
+import com.lootchat.LootChat.entity.User;
+import com.lootchat.LootChat.repository.DirectMessageMessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@DisplayName("DirectMessageSummaryInitializer Tests")
+class DirectMessageSummaryInitializerTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DirectMessageMessageRepository directMessageMessageRepository;
+
+    private DirectMessageSummaryInitializer initializer;
+
+    private User alice;
+    private User bob;
+    private DirectMessage conversation;
+
+    @BeforeEach
+    void setUp() {
+        initializer = new DirectMessageSummaryInitializer(jdbcTemplate);
+
+        alice = entityManager.persist(User.builder()
+                .username("alice").email("alice@lootchat.local").password("x").role(Role.USER).build());
+        bob = entityManager.persist(User.builder()
+                .username("bob").email("bob@lootchat.local").password("x").role(Role.USER).build());
+        conversation = entityManager.persist(DirectMessage.builder().user1(alice).user2(bob).build());
+    }
+
+    @Test
+    @DisplayName("backfill should seed watermarks from is_read and let new messages be inserted")
+    void backfill_LegacyIsRead_ShouldSeedWatermarksAndRelaxColumn() {
+        DirectMessageMessage readByBob = persistMessage(alice, "one");
+        persistMessage(alice, "two");
+        DirectMessageMessage readByAlice = persistMessage(bob, "three");
+        entityManager.flush();
+
+        // The column as the old primitive boolean mapping left it: NOT NULL without a default
+        jdbcTemplate.execute("ALTER TABLE direct_message_messages ADD COLUMN is_read boolean NOT NULL DEFAULT false");
+        jdbcTemplate.execute("ALTER TABLE direct_message_messages ALTER COLUMN is_read DROP DEFAULT");
+        jdbcTemplate.update("UPDATE direct_message_messages SET is_read = true WHERE id IN (?, ?)",
+                readByBob.getId(), readByAlice.getId());
+        clearWatermarks();
+
+        initializer.backfill();
+
+        Map<String, Object> watermarks = watermarks();
+        assertThat(watermarks.get("user1_last_read_message_id")).isEqualTo(readByAlice.getId());
+        assertThat(watermarks.get("user2_last_read_message_id")).isEqualTo(readByBob.getId());
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT is_nullable FROM information_schema.columns " +
+                "WHERE table_schema = current_schema() AND table_name = 'direct_message_messages' " +
+                "AND column_name = 'is_read'", String.class)).isEqualTo("YES");
+
+        // Inserts that leave is_read out no longer violate NOT NULL
+        DirectMessageMessage sent = persistMessage(alice, "four");
+        entityManager.flush();
+
+        assertThat(directMessageMessageRepository.countUnreadMessages(conversation.getId(), bob.getId(), readByBob.getId()))
+                .isEqualTo(2);
+        assertThat(directMessageMessageRepository.countUnreadMessages(conversation.getId(), bob.getId(), sent.getId()))
+                .isZero();
+        assertThat(directMessageMessageRepository.countUnreadMessages(conversation.getId(), alice.getId(), readByAlice.getId()))
+                .isZero();
+    }
+
+    @Test
+    @DisplayName("backfill should start watermarks at zero when is_read never existed")
+    void backfill_NoIsRead_ShouldStartWatermarksAtZero() {
+        persistMessage(alice, "one");
+        persistMessage(bob, "two");
+        entityManager.flush();
+        clearWatermarks();
+
+        initializer.backfill();
+
+        Map<String, Object> watermarks = watermarks();
+        assertThat(watermarks.get("user1_last_read_message_id")).isEqualTo(0L);
+        assertThat(watermarks.get("user2_last_read_message_id")).isEqualTo(0L);
+        assertThat(directMessageMessageRepository.countUnreadMessages(conversation.getId(), bob.getId(), 0L))
+                .isEqualTo(1);
+        assertThat(directMessageMessageRepository.countUnreadMessages(conversation.getId(), alice.getId(), 0L))
+                .isEqualTo(1);
+    }
+
+    private DirectMessageMessage persistMessage(User sender, String content) {
+        return entityManager.persist(DirectMessageMessage.builder()
+                .content(content).sender(sender).directMessage(conversation).build());
+    }
+
+    private void clearWatermarks() {
+        jdbcTemplate.update("UPDATE direct_messages SET user1_last_read_message_id = NULL, " +
+                "user2_last_read_message_id = NULL WHERE id = ?", conversation.getId());
+    }
+
+    private Map<String, Object> watermarks() {
+        return jdbcTemplate.queryForMap("SELECT user1_last_read_message_id, user2_last_read_message_id " +
+                "FROM direct_messages WHERE id = ?", conversation.getId());
+    }
+}
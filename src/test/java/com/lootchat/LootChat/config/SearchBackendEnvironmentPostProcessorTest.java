@@ -0,0 +1,41 @@
+package com.lootchat.LootChat.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("SearchBackendEnvironmentPostProcessor Tests")
+class SearchBackendEnvironmentPostProcessorTest {
+
+    private final SearchBackendEnvironmentPostProcessor postProcessor = new SearchBackendEnvironmentPostProcessor();
+
+    @Test
+    @DisplayName("postgres backend should exclude Elasticsearch auto-configuration and health")
+    void postProcessEnvironment_Postgres_ShouldDisableElasticsearch() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("search.backend", "postgres")
+                .withProperty("spring.autoconfigure.exclude", "com.example.OtherAutoConfiguration");
+
+        postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getProperty("spring.autoconfigure.exclude"))
+                .startsWith("com.example.OtherAutoConfiguration,")
+                .contains(SearchBackendEnvironmentPostProcessor.ELASTICSEARCH_AUTO_CONFIGURATIONS);
+        assertThat(environment.getProperty("management.health.elasticsearch.enabled")).isEqualTo("false");
+    }
+
+    @Test
+    @DisplayName("elasticsearch backend should leave the environment untouched")
+    void postProcessEnvironment_Elasticsearch_ShouldDoNothing() {
+        MockEnvironment environment = new MockEnvironment().withProperty("search.backend", "elasticsearch");
+
+        postProcessor.postProcessEnvironment(environment, new SpringApplication());
+
+        assertThat(environment.getPropertySources().contains(SearchBackendEnvironmentPostProcessor.PROPERTY_SOURCE_NAME))
+                .isFalse();
+        assertThat(environment.getProperty("spring.autoconfigure.exclude")).isNull();
+    }
+}
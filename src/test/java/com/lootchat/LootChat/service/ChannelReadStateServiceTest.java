@@ -4,10 +4,15 @@ import com.lootchat.LootChat.dto.channel.UnreadCountResponse;
 import com.lootchat.LootChat.entity.*;
 import com.lootchat.LootChat.repository.*;
 import com.lootchat.LootChat.security.CurrentUserService;
+import com.lootchat.LootChat.service.channel.ChannelReadStateService;
+import com.lootchat.LootChat.service.channel.ChannelSequenceService;
+import com.lootchat.LootChat.service.channel.ReadStateBuffer;
+import com.lootchat.LootChat.service.channel.UnreadCounterService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -29,15 +34,21 @@ class ChannelReadStateServiceTest {
     @Mock
     private ChannelRepository channelRepository;
 
-    @Mock
-    private MessageRepository messageRepository;
-
     @Mock
     private UserRepository userRepository;
 
     @Mock
     private CurrentUserService currentUserService;
 
+    @Mock
+    private ChannelSequenceService channelSequenceService;
+
+    @Mock
+    private UnreadCounterService unreadCounterService;
+
+    @Mock
+    private ReadStateBuffer readStateBuffer;
+
     @InjectMocks
     private ChannelReadStateService channelReadStateService;
 
@@ -59,6 +70,7 @@ class ChannelReadStateServiceTest {
                 .name("general")
                 .description("General chat")
                 .channelType(ChannelType.TEXT)
+                .lastMessageSeq(150L)
                 .build();
 
         testReadState = UserChannelReadState.builder()
@@ -67,49 +79,25 @@ class ChannelReadStateServiceTest {
                 .channel(testChannel)
                 .lastReadAt(LocalDateTime.now().minusHours(1))
                 .lastReadMessageId(100L)
+                .lastReadSeq(100L)
                 .build();
     }
 
     @Test
-    @DisplayName("markChannelAsRead should update existing read state")
-    void markChannelAsRead_ExistingState_ShouldUpdate() {
+    @DisplayName("markChannelAsRead should buffer the channel head and reset the unread counter")
+    void markChannelAsRead_ShouldBufferWatermark() {
         // Given
         when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(1L);
-        when(channelRepository.findById(1L)).thenReturn(Optional.of(testChannel));
-        when(messageRepository.findLatestMessageIdInChannel(1L)).thenReturn(Optional.of(150L));
-        when(readStateRepository.findByUserIdAndChannelId(1L, 1L)).thenReturn(Optional.of(testReadState));
-        when(readStateRepository.save(any(UserChannelReadState.class))).thenReturn(testReadState);
+        when(channelSequenceService.findHead(1L)).thenReturn(Optional.of(150L));
 
         // When
         channelReadStateService.markChannelAsRead(1L);
 
         // Then
-        verify(readStateRepository).save(argThat(state -> 
-            state.getLastReadMessageId().equals(150L) &&
-            state.getLastReadAt() != null
-        ));
-    }
-
-    @Test
-    @DisplayName("markChannelAsRead should create new read state when none exists")
-    void markChannelAsRead_NoExistingState_ShouldCreate() {
-        // Given
-        when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(1L);
-        when(channelRepository.findById(1L)).thenReturn(Optional.of(testChannel));
-        when(messageRepository.findLatestMessageIdInChannel(1L)).thenReturn(Optional.of(150L));
-        when(readStateRepository.findByUserIdAndChannelId(1L, 1L)).thenReturn(Optional.empty());
-        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(readStateRepository.save(any(UserChannelReadState.class))).thenAnswer(i -> i.getArgument(0));
-
-        // When
-        channelReadStateService.markChannelAsRead(1L);
-
-        // Then
-        verify(readStateRepository).save(argThat(state ->
-            state.getUser().getId().equals(1L) &&
-            state.getChannel().getId().equals(1L) &&
-            state.getLastReadMessageId().equals(150L)
-        ));
+        verify(readStateBuffer).mark(eq(1L), eq(1L), eq(150L), any(LocalDateTime.class));
+        verify(unreadCounterService).reset(1L, 1L, 150L);
+        verifyNoInteractions(readStateRepository, channelRepository, userRepository);
+        verify(channelSequenceService, never()).getHeads();
     }
 
     @Test
@@ -117,37 +105,24 @@ class ChannelReadStateServiceTest {
     void markChannelAsRead_ChannelNotFound_ShouldThrow() {
         // Given
         when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(1L);
-        when(channelRepository.findById(999L)).thenReturn(Optional.empty());
+        when(channelSequenceService.findHead(999L)).thenReturn(Optional.empty());
 
         // When/Then
         assertThatThrownBy(() -> channelReadStateService.markChannelAsRead(999L))
                 .isInstanceOf(ResponseStatusException.class)
                 .hasMessageContaining("Channel not found");
+        verifyNoInteractions(readStateBuffer, unreadCounterService);
     }
 
     @Test
-    @DisplayName("getUnreadCountsForUser should return correct counts for multiple channels")
+    @DisplayName("getUnreadCountsForUser should return head minus read position for each channel")
     void getUnreadCountsForUser_MultipleChannels_ShouldReturnCorrectCounts() {
         // Given
-        Channel channel2 = Channel.builder()
-                .id(2L)
-                .name("random")
-                .channelType(ChannelType.TEXT)
-                .build();
-
-        List<Channel> channels = Arrays.asList(testChannel, channel2);
-        
-        UserChannelReadState readState2 = UserChannelReadState.builder()
-                .id(2L)
-                .user(testUser)
-                .channel(channel2)
-                .lastReadAt(LocalDateTime.now().minusHours(2))
-                .build();
-
-        when(channelRepository.findAll()).thenReturn(channels);
-        when(readStateRepository.findByUserId(1L)).thenReturn(Arrays.asList(testReadState, readState2));
-        when(messageRepository.countUnreadMessagesInChannel(eq(1L), any(LocalDateTime.class))).thenReturn(5);
-        when(messageRepository.countUnreadMessagesInChannel(eq(2L), any(LocalDateTime.class))).thenReturn(10);
+        when(channelSequenceService.getHeads()).thenReturn(Map.of(1L, 105L, 2L, 40L));
+        when(readStateRepository.findLastReadSeqsByUserId(1L)).thenReturn(Arrays.asList(
+                new Object[]{1L, 100L},
+                new Object[]{2L, 30L}
+        ));
 
         // When
         Map<Long, Integer> unreadCounts = channelReadStateService.getUnreadCountsForUser(1L);
@@ -156,25 +131,33 @@ class ChannelReadStateServiceTest {
         assertThat(unreadCounts).hasSize(2);
         assertThat(unreadCounts.get(1L)).isEqualTo(5);
         assertThat(unreadCounts.get(2L)).isEqualTo(10);
+        verify(unreadCounterService).seed(1L, Map.of(1L, 105L, 2L, 40L), Map.of(1L, 100L, 2L, 30L));
+    }
+
+    @Test
+    @DisplayName("getUnreadCountsForUser should serve seeded Redis counters without touching the database")
+    void getUnreadCountsForUser_SeededCounters_ShouldSkipDatabase() {
+        // Given
+        when(unreadCounterService.getCounts(1L)).thenReturn(Optional.of(Map.of(1L, 4, 2L, 0)));
+
+        // When
+        Map<Long, Integer> unreadCounts = channelReadStateService.getUnreadCountsForUser(1L);
+
+        // Then
+        assertThat(unreadCounts).containsExactlyInAnyOrderEntriesOf(Map.of(1L, 4, 2L, 0));
+        verifyNoInteractions(channelSequenceService);
+        verify(readStateRepository, never()).findLastReadSeqsByUserId(anyLong());
+        verify(unreadCounterService, never()).seed(anyLong(), anyMap(), anyMap());
     }
 
     @Test
     @DisplayName("getUnreadCountsForUser should count all messages for channels never read")
     void getUnreadCountsForUser_NeverReadChannel_ShouldCountAllMessages() {
         // Given
-        Channel channel2 = Channel.builder()
-                .id(2L)
-                .name("new-channel")
-                .channelType(ChannelType.TEXT)
-                .build();
-
-        List<Channel> channels = Arrays.asList(testChannel, channel2);
-        
         // Only have read state for channel 1, not channel 2
-        when(channelRepository.findAll()).thenReturn(channels);
-        when(readStateRepository.findByUserId(1L)).thenReturn(Collections.singletonList(testReadState));
-        when(messageRepository.countUnreadMessagesInChannel(eq(1L), any(LocalDateTime.class))).thenReturn(5);
-        when(messageRepository.countAllMessagesInChannel(2L)).thenReturn(150); // More than cap
+        when(channelSequenceService.getHeads()).thenReturn(Map.of(1L, 105L, 2L, 150L));
+        when(readStateRepository.findLastReadSeqsByUserId(1L))
+                .thenReturn(Collections.singletonList(new Object[]{1L, 100L}));
 
         // When
         Map<Long, Integer> unreadCounts = channelReadStateService.getUnreadCountsForUser(1L);
@@ -183,6 +166,22 @@ class ChannelReadStateServiceTest {
         assertThat(unreadCounts).hasSize(2);
         assertThat(unreadCounts.get(1L)).isEqualTo(5);
         assertThat(unreadCounts.get(2L)).isEqualTo(99); // Capped at 99
+        verify(unreadCounterService).seed(1L, Map.of(1L, 105L, 2L, 150L), Map.of(1L, 100L, 2L, 51L));
+    }
+
+    @Test
+    @DisplayName("getUnreadCountsForUser should never return negative counts")
+    void getUnreadCountsForUser_ReadPastCachedHead_ShouldReturnZero() {
+        // Given
+        when(channelSequenceService.getHeads()).thenReturn(Map.of(1L, 100L));
+        when(readStateRepository.findLastReadSeqsByUserId(1L))
+                .thenReturn(Collections.singletonList(new Object[]{1L, 103L}));
+
+        // When
+        Map<Long, Integer> unreadCounts = channelReadStateService.getUnreadCountsForUser(1L);
+
+        // Then
+        assertThat(unreadCounts.get(1L)).isZero();
     }
 
     @Test
@@ -191,7 +190,7 @@ class ChannelReadStateServiceTest {
         // Given
         when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(1L);
         when(readStateRepository.findByUserIdAndChannelId(1L, 1L)).thenReturn(Optional.of(testReadState));
-        when(messageRepository.countUnreadMessagesInChannel(eq(1L), any(LocalDateTime.class))).thenReturn(7);
+        when(channelSequenceService.getHead(1L)).thenReturn(107L);
 
         // When
         int unreadCount = channelReadStateService.getUnreadCountForChannel(1L);
@@ -200,13 +199,29 @@ class ChannelReadStateServiceTest {
         assertThat(unreadCount).isEqualTo(7);
     }
 
+    @Test
+    @DisplayName("getUnreadCountForChannel should prefer a buffered watermark over the stored one")
+    void getUnreadCountForChannel_PendingWatermark_ShouldUseBuffer() {
+        // Given
+        when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(1L);
+        when(readStateBuffer.pendingSeq(1L, 1L)).thenReturn(105L);
+        when(channelSequenceService.getHead(1L)).thenReturn(107L);
+
+        // When
+        int unreadCount = channelReadStateService.getUnreadCountForChannel(1L);
+
+        // Then
+        assertThat(unreadCount).isEqualTo(2);
+        verify(readStateRepository, never()).findByUserIdAndChannelId(anyLong(), anyLong());
+    }
+
     @Test
     @DisplayName("getUnreadCountForChannel should return all messages count for never-read channel")
     void getUnreadCountForChannel_NeverRead_ShouldReturnAllMessagesCount() {
         // Given
         when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(1L);
         when(readStateRepository.findByUserIdAndChannelId(1L, 1L)).thenReturn(Optional.empty());
-        when(messageRepository.countAllMessagesInChannel(1L)).thenReturn(50);
+        when(channelSequenceService.getHead(1L)).thenReturn(50L);
 
         // When
         int unreadCount = channelReadStateService.getUnreadCountForChannel(1L);
@@ -220,9 +235,9 @@ class ChannelReadStateServiceTest {
     void getUnreadCountsAsList_ShouldReturnListFormat() {
         // Given
         when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(1L);
-        when(channelRepository.findAll()).thenReturn(Collections.singletonList(testChannel));
-        when(readStateRepository.findByUserId(1L)).thenReturn(Collections.singletonList(testReadState));
-        when(messageRepository.countUnreadMessagesInChannel(eq(1L), any(LocalDateTime.class))).thenReturn(3);
+        when(channelSequenceService.getHeads()).thenReturn(Map.of(1L, 103L));
+        when(readStateRepository.findLastReadSeqsByUserId(1L))
+                .thenReturn(Collections.singletonList(new Object[]{1L, 100L}));
 
         // When
         List<UnreadCountResponse> result = channelReadStateService.getUnreadCountsAsList();
@@ -234,56 +249,50 @@ class ChannelReadStateServiceTest {
     }
 
     @Test
-    @DisplayName("initializeReadStatesForUser should create states for channels without state")
+    @DisplayName("initializeReadStatesForUser should create missing states in a single statement")
     void initializeReadStatesForUser_ShouldCreateMissingStates() {
         // Given
-        Channel channel2 = Channel.builder()
-                .id(2L)
-                .name("new-channel")
-                .channelType(ChannelType.TEXT)
-                .build();
-
-        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
-        when(channelRepository.findAll()).thenReturn(Arrays.asList(testChannel, channel2));
-        when(readStateRepository.findChannelIdsByUserId(1L)).thenReturn(Collections.singletonList(1L)); // Only channel 1
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(readStateRepository.insertMissingForUser(eq(1L), any(LocalDateTime.class))).thenReturn(1);
 
         // When
         channelReadStateService.initializeReadStatesForUser(1L);
 
         // Then
-        verify(readStateRepository).save(argThat(state ->
-            state.getChannel().getId().equals(2L) &&
-            state.getUser().getId().equals(1L)
-        ));
+        verify(readStateRepository).insertMissingForUser(eq(1L), any(LocalDateTime.class));
+        verify(readStateRepository, never()).save(any(UserChannelReadState.class));
+        verify(channelRepository, never()).findAll();
     }
 
     @Test
-    @DisplayName("initializeReadStatesForChannel should create states for all users")
-    void initializeReadStatesForChannel_ShouldCreateStatesForAllUsers() {
+    @DisplayName("initializeReadStatesForUser should throw when user not found")
+    void initializeReadStatesForUser_UserNotFound_ShouldThrow() {
         // Given
-        User user2 = User.builder()
-                .id(2L)
-                .username("user2")
-                .email("user2@example.com")
-                .password("password")
-                .build();
+        when(userRepository.existsById(999L)).thenReturn(false);
 
-        when(channelRepository.findById(1L)).thenReturn(Optional.of(testChannel));
-        when(userRepository.findAll()).thenReturn(Arrays.asList(testUser, user2));
-        when(readStateRepository.findByUserIdAndChannelId(1L, 1L)).thenReturn(Optional.of(testReadState));
-        when(readStateRepository.findByUserIdAndChannelId(2L, 1L)).thenReturn(Optional.empty());
+        // When/Then
+        assertThatThrownBy(() -> channelReadStateService.initializeReadStatesForUser(999L))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("User not found");
+        verify(readStateRepository, never()).insertMissingForUser(anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("initializeReadStatesForChannel should create states for all users in a single statement")
+    void initializeReadStatesForChannel_ShouldCreateStatesForAllUsers() {
+        // Given
+        when(channelRepository.existsById(1L)).thenReturn(true);
+        when(readStateRepository.insertMissingForChannel(eq(1L), any(LocalDateTime.class))).thenReturn(2);
 
         // When
         channelReadStateService.initializeReadStatesForChannel(1L);
 
         // Then
-        verify(readStateRepository).save(argThat(state ->
-            state.getUser().getId().equals(2L) &&
-            state.getChannel().getId().equals(1L)
-        ));
-        verify(readStateRepository, never()).save(argThat(state -> 
-            state.getUser().getId().equals(1L)
-        ));
+        verify(channelSequenceService).registerChannel(1L);
+        verify(readStateRepository).insertMissingForChannel(eq(1L), any(LocalDateTime.class));
+        verify(userRepository, never()).findAll();
+        verify(readStateRepository, never()).findByUserIdAndChannelId(anyLong(), anyLong());
+        verify(readStateRepository, never()).save(any(UserChannelReadState.class));
     }
 
     @Test
@@ -293,6 +302,9 @@ class ChannelReadStateServiceTest {
         channelReadStateService.deleteReadStatesForChannel(1L);
 
         // Then
-        verify(readStateRepository).deleteByChannelId(1L);
+        InOrder inOrder = inOrder(unreadCounterService, readStateRepository);
+        inOrder.verify(unreadCounterService).removeChannel(1L);
+        inOrder.verify(readStateRepository).deleteByChannelId(1L);
+        verify(channelSequenceService).removeChannel(1L);
     }
 }
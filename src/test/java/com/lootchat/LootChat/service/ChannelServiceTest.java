@@ -9,6 +9,7 @@ import com.lootchat.LootChat.entity.Role;
 import com.lootchat.LootChat.entity.User;
 import com.lootchat.LootChat.repository.ChannelRepository;
 import com.lootchat.LootChat.security.CurrentUserService;
+import jakarta.persistence.Column;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -253,6 +254,25 @@ class ChannelServiceTest {
         verify(channelRepository, times(1)).save(gamingChannel);
     }
 
+    @Test
+    @DisplayName("updateChannel should never write the message sequence head")
+    void updateChannel_ShouldNotWriteMessageSeq() throws NoSuchFieldException {
+        // Loaded before messages were sent; a save must not roll the head back to 0
+        gamingChannel.setLastMessageSeq(0L);
+        UpdateChannelRequest request = new UpdateChannelRequest();
+        request.setDescription("Renamed while messages are being sent");
+
+        when(channelRepository.findById(2L)).thenReturn(Optional.of(gamingChannel));
+        when(channelRepository.save(any(Channel.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        channelService.updateChannel(2L, request);
+
+        verify(channelRepository, never()).incrementMessageSeq(any());
+        Column column = Channel.class.getDeclaredField("lastMessageSeq").getAnnotation(Column.class);
+        assertThat(column.insertable()).isFalse();
+        assertThat(column.updatable()).isFalse();
+    }
+
     @Test
     @DisplayName("updateChannel should throw exception when new name already exists")
     void updateChannel_ShouldThrowException_WhenNewNameExists() {
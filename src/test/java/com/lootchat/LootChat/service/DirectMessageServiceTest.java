@@ -0,0 +1,184 @@
+package com.lootchat.LootChat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lootchat.LootChat.dto.directmessage.SendDirectMessageRequest;
+import com.lootchat.LootChat.entity.DirectMessage;
+import com.lootchat.LootChat.entity.DirectMessageMessage;
+import com.lootchat.LootChat.entity.Role;
+import com.lootchat.LootChat.entity.User;
+import com.lootchat.LootChat.repository.DirectMessageMessageRepository;
+import com.lootchat.LootChat.repository.DirectMessageReactionRepository;
+import com.lootchat.LootChat.repository.DirectMessageRepository;
+import com.lootchat.LootChat.repository.UserRepository;
+import com.lootchat.LootChat.security.CurrentUserService;
+import com.lootchat.LootChat.service.common.WebSocketBroadcastService;
+import com.lootchat.LootChat.service.directmessage.DirectMessageSearchService;
+import com.lootchat.LootChat.service.directmessage.DirectMessageService;
+import com.lootchat.LootChat.service.file.S3FileStorageService;
+import com.lootchat.LootChat.service.inbox.OutboxService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("DirectMessageService Tests")
+class DirectMessageServiceTest {
+
+    @Mock
+    private DirectMessageRepository directMessageRepository;
+
+    @Mock
+    private DirectMessageMessageRepository directMessageMessageRepository;
+
+    @Mock
+    private DirectMessageReactionRepository directMessageReactionRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CurrentUserService currentUserService;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private ObjectMapper objectMapper;
+
+    @Mock
+    private S3FileStorageService s3FileStorageService;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private WebSocketBroadcastService broadcastService;
+
+    @Mock
+    private DirectMessageSearchService searchService;
+
+    @Mock
+    private Cache cache;
+
+    @InjectMocks
+    private DirectMessageService directMessageService;
+
+    private User alice;
+    private User bob;
+    private DirectMessage conversation;
+
+    @BeforeEach
+    void setUp() {
+        alice = User.builder().id(1L).username("alice").role(Role.USER).build();
+        bob = User.builder().id(2L).username("bob").role(Role.USER).build();
+        conversation = DirectMessage.builder().id(10L).user1(alice).user2(bob).build();
+
+        lenient().when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(1L);
+        lenient().when(cacheManager.getCache(anyString())).thenReturn(cache);
+        lenient().when(directMessageRepository.findByIdWithUsers(10L)).thenReturn(Optional.of(conversation));
+    }
+
+    @Test
+    @DisplayName("sendMessage should record the message and count it as unread for the recipient")
+    void sendMessage_ShouldCountUnreadForRecipient() {
+        SendDirectMessageRequest request = new SendDirectMessageRequest();
+        request.setDirectMessageId(10L);
+        request.setContent("hi bob");
+        when(userRepository.findById(1L)).thenReturn(Optional.of(alice));
+        when(directMessageMessageRepository.save(any(DirectMessageMessage.class))).thenAnswer(invocation -> {
+            DirectMessageMessage message = invocation.getArgument(0);
+            message.setId(100L);
+            return message;
+        });
+
+        directMessageService.sendMessage(request);
+
+        verify(directMessageRepository).recordMessage(eq(10L), eq(2L), eq(100L), eq("hi bob"), any(LocalDateTime.class));
+        verify(cache).evict("user:1");
+        verify(cache).evict("user:2");
+    }
+
+    @Test
+    @DisplayName("markAsRead should move the watermark and uncount in a single statement")
+    void markAsRead_ShouldUpdateWatermarkInOneStatement() {
+        directMessageService.markAsRead(10L);
+
+        verify(directMessageRepository).markRead(10L, 1L);
+        // No separate lookup of the newest message that a concurrent send could overtake
+        verifyNoInteractions(directMessageMessageRepository);
+        verify(cache).evict("user:1");
+        verify(cache).evict("user:2");
+    }
+
+    @Test
+    @DisplayName("markAsRead should reject users outside the conversation")
+    void markAsRead_NotParticipant_ShouldThrow() {
+        when(currentUserService.getCurrentUserIdOrThrow()).thenReturn(3L);
+
+        assertThatThrownBy(() -> directMessageService.markAsRead(10L))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Access denied");
+        verify(directMessageRepository, never()).markRead(anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("deleteMessage should uncount the message for the recipient")
+    void deleteMessage_ShouldUncountForRecipient() {
+        DirectMessageMessage message = DirectMessageMessage.builder()
+                .id(100L).content("hi bob").sender(alice).directMessage(conversation).build();
+        when(directMessageMessageRepository.findById(100L)).thenReturn(Optional.of(message));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(alice));
+
+        directMessageService.deleteMessage(100L);
+
+        assertThat(message.isDeleted()).isTrue();
+        assertThat(message.getContent()).isEmpty();
+        verify(directMessageRepository).recordMessageDeleted(10L, 2L, 100L);
+        verify(searchService).deleteMessage(100L);
+    }
+
+    @Test
+    @DisplayName("deleteMessage should not uncount a message that is already deleted")
+    void deleteMessage_AlreadyDeleted_ShouldDoNothing() {
+        DirectMessageMessage message = DirectMessageMessage.builder()
+                .id(100L).content("").sender(alice).directMessage(conversation).deleted(true).build();
+        when(directMessageMessageRepository.findById(100L)).thenReturn(Optional.of(message));
+
+        directMessageService.deleteMessage(100L);
+
+        verify(directMessageRepository, never()).recordMessageDeleted(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("updateMessage should refresh the preview when the edited message is the last one")
+    void updateMessage_LastMessage_ShouldUpdatePreview() {
+        DirectMessageMessage message = DirectMessageMessage.builder()
+                .id(100L).content("hi bob").sender(alice).directMessage(conversation).build();
+        when(directMessageMessageRepository.findById(100L)).thenReturn(Optional.of(message));
+        when(directMessageMessageRepository.save(message)).thenReturn(message);
+        when(directMessageRepository.recordMessageEdited(10L, 100L, "hi bob!")).thenReturn(1);
+
+        directMessageService.updateMessage(100L, "hi bob!");
+
+        assertThat(message.isEdited()).isTrue();
+        verify(directMessageRepository).recordMessageEdited(10L, 100L, "hi bob!");
+        verify(cache).evict("user:2");
+        // Editing never changes read state
+        verify(directMessageRepository, never()).markRead(anyLong(), anyLong());
+    }
+}
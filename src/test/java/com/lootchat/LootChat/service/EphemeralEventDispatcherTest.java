@@ -0,0 +1,93 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.entity.InboxEvent;
+import com.lootchat.LootChat.repository.InboxEventRepository;
+import com.lootchat.LootChat.service.inbox.EphemeralEventDispatcher;
+import com.lootchat.LootChat.service.inbox.InboxEventProcessor;
+import com.lootchat.LootChat.service.inbox.InboxService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EphemeralEventDispatcher Tests")
+class EphemeralEventDispatcherTest {
+
+    private static final String PRESENCE_TOPIC = "lootchat.presence";
+    private static final String CHAT_TOPIC = "lootchat.chat.messages";
+
+    @Mock
+    private InboxEventRepository inboxRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private InboxEventProcessor inboxEventProcessor;
+
+    private EphemeralEventDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new EphemeralEventDispatcher(new InboxService(inboxRepository, transactionManager), inboxEventProcessor);
+        ReflectionTestUtils.setField(dispatcher, "fastPathTopics", Set.of(PRESENCE_TOPIC, "lootchat.direct.message.reactions"));
+        ReflectionTestUtils.setField(dispatcher, "fastPathEventTypes", Set.of("REACTION_ADDED", "REACTION_REMOVED", "PRESENCE_UPDATED"));
+        ReflectionTestUtils.setField(dispatcher, "dedupCapacity", 2);
+        ReflectionTestUtils.invokeMethod(dispatcher, "init");
+    }
+
+    @Test
+    @DisplayName("isEphemeral should route fast-path topics and fast-path event types only")
+    void isEphemeral_ShouldMatchTopicOrEventType() {
+        assertThat(dispatcher.isEphemeral(record(PRESENCE_TOPIC, 1L), null)).isTrue();
+        assertThat(dispatcher.isEphemeral(record(CHAT_TOPIC, 1L), "REACTION_ADDED")).isTrue();
+        assertThat(dispatcher.isEphemeral(record(CHAT_TOPIC, 1L), "MESSAGE_CREATED")).isFalse();
+        assertThat(dispatcher.isEphemeral(record("lootchat.direct.messages", 1L), "DIRECT_MESSAGE")).isFalse();
+    }
+
+    @Test
+    @DisplayName("dispatch should broadcast a record once and drop its redelivery")
+    void dispatch_Duplicate_ShouldBroadcastOnce() {
+        assertThat(dispatcher.dispatch(record(PRESENCE_TOPIC, 10L), "PRESENCE_UPDATED")).isTrue();
+        assertThat(dispatcher.dispatch(record(PRESENCE_TOPIC, 10L), "PRESENCE_UPDATED")).isFalse();
+        assertThat(dispatcher.dispatch(record(PRESENCE_TOPIC, 11L), "PRESENCE_UPDATED")).isTrue();
+
+        ArgumentCaptor<InboxEvent> captor = ArgumentCaptor.forClass(InboxEvent.class);
+        verify(inboxEventProcessor, times(2)).processEphemeral(captor.capture());
+        assertThat(captor.getAllValues()).extracting(InboxEvent::getKafkaOffset).containsExactly(10L, 11L);
+        assertThat(captor.getAllValues()).extracting(InboxEvent::getEventType).containsOnly("PRESENCE_UPDATED");
+        // The fast path never touches the inbox table
+        verifyNoInteractions(inboxRepository);
+    }
+
+    @Test
+    @DisplayName("dispatch should forget the least recently seen key once the LRU is full")
+    void dispatch_OverCapacity_ShouldEvictLeastRecentlySeen() {
+        dispatcher.dispatch(record(PRESENCE_TOPIC, 1L), "PRESENCE_UPDATED");
+        dispatcher.dispatch(record(PRESENCE_TOPIC, 2L), "PRESENCE_UPDATED");
+        // Seeing 1 again makes 2 the eldest entry
+        assertThat(dispatcher.dispatch(record(PRESENCE_TOPIC, 1L), "PRESENCE_UPDATED")).isFalse();
+        dispatcher.dispatch(record(PRESENCE_TOPIC, 3L), "PRESENCE_UPDATED");
+
+        assertThat(dispatcher.dispatch(record(PRESENCE_TOPIC, 1L), "PRESENCE_UPDATED")).isFalse();
+        assertThat(dispatcher.dispatch(record(PRESENCE_TOPIC, 2L), "PRESENCE_UPDATED")).isTrue();
+        verify(inboxEventProcessor, times(4)).processEphemeral(any());
+    }
+
+    private ConsumerRecord<String, String> record(String topic, long offset) {
+        return new ConsumerRecord<>(topic, 0, offset, "user-1", "{\"userId\":1}");
+    }
+}
@@ -0,0 +1,150 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.service.inbox.EventPartitionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the test profile database; each test's DDL is rolled back with its transaction.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@DisplayName("EventPartitionService Tests")
+class EventPartitionServiceTest {
+
+    private static final String INBOX = EventPartitionService.INBOX_TABLE;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private EventPartitionService eventPartitionService;
+
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setUp() {
+        eventPartitionService = new EventPartitionService(jdbcTemplate, transactionManager);
+        ReflectionTestUtils.setField(eventPartitionService, "retentionDays", 7);
+        ReflectionTestUtils.setField(eventPartitionService, "premakeDays", 1);
+    }
+
+    @Test
+    @DisplayName("ensurePartitioned should convert the table and carry over pending and recent rows")
+    void ensurePartitioned_ShouldConvertAndCarryOverRows() {
+        insertEvent("expired-processed", today.minusDays(30).atTime(12, 0), true);
+        insertEvent("expired-pending", today.minusDays(30).atTime(12, 0), false);
+        insertEvent("recent-processed", today.atTime(12, 0), true);
+
+        eventPartitionService.ensurePartitioned(INBOX);
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?))",
+                Boolean.class, INBOX)).isTrue();
+        assertThat(tableExists(partition(today))).isTrue();
+        assertThat(tableExists(partition(today.plusDays(1)))).isTrue();
+        assertThat(rowsIn(INBOX)).isEqualTo(2);
+        assertThat(rowsIn(partition(today))).isEqualTo(1);
+        assertThat(rowsIn(INBOX + "_default")).isEqualTo(1);
+
+        // The dedup target of the inbox inserts exists after conversion
+        assertThat(jdbcTemplate.update(
+                "INSERT INTO inbox_events (idempotency_key, event_type, payload, topic, received_at, created_at, " +
+                "processed, retry_count) VALUES ('recent-processed', 'T', '{}', 't', ?, now(), false, 0) " +
+                "ON CONFLICT (idempotency_key, received_at) DO NOTHING", today.atTime(12, 0))).isZero();
+    }
+
+    @Test
+    @DisplayName("createUpcomingPartitions should move rows already in DEFAULT into the new partition")
+    void createUpcomingPartitions_ShouldMoveRowsOutOfDefault() {
+        ReflectionTestUtils.setField(eventPartitionService, "premakeDays", 0);
+        eventPartitionService.ensurePartitioned(INBOX);
+        LocalDate tomorrow = today.plusDays(1);
+        insertEvent("early", tomorrow.atTime(9, 0), false);
+        insertEvent("far-future", today.plusDays(10).atTime(9, 0), false);
+        assertThat(rowsIn(INBOX + "_default")).isEqualTo(2);
+
+        ReflectionTestUtils.setField(eventPartitionService, "premakeDays", 1);
+        eventPartitionService.createUpcomingPartitions();
+
+        assertThat(rowsIn(partition(tomorrow))).isEqualTo(1);
+        assertThat(rowsIn(INBOX + "_default")).isEqualTo(1);
+        // DEFAULT is attached again and keeps taking rows outside the pre-created range
+        insertEvent("later", today.plusDays(20).atTime(9, 0), false);
+        assertThat(rowsIn(INBOX + "_default")).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("dropExpiredPartitions should keep partitions with unprocessed rows and drop the rest")
+    void dropExpiredPartitions_ShouldKeepPartitionsWithPendingRows() {
+        eventPartitionService.ensurePartitioned(INBOX);
+        LocalDate drained = today.minusDays(10);
+        LocalDate withPending = today.minusDays(9);
+        LocalDate recent = today.minusDays(2);
+        for (LocalDate day : new LocalDate[] {drained, withPending, recent}) {
+            jdbcTemplate.execute("CREATE TABLE " + partition(day) + " PARTITION OF " + INBOX +
+                    " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+        }
+        insertEvent("drained", drained.atTime(12, 0), true);
+        insertEvent("failed", withPending.atTime(12, 0), false);
+        insertEvent("done", withPending.atTime(13, 0), true);
+        insertEvent("recent", recent.atTime(12, 0), true);
+        insertEvent("old-default", today.minusDays(40).atTime(12, 0), true);
+
+        int dropped = eventPartitionService.dropExpiredPartitions(INBOX);
+
+        assertThat(dropped).isEqualTo(1);
+        assertThat(tableExists(partition(drained))).isFalse();
+        assertThat(tableExists(partition(withPending))).isTrue();
+        assertThat(jdbcTemplate.queryForList("SELECT idempotency_key FROM " + partition(withPending), String.class))
+                .containsExactly("failed");
+        assertThat(rowsIn(partition(recent))).isEqualTo(1);
+        assertThat(rowsIn(INBOX + "_default")).isZero();
+    }
+
+    @Test
+    @DisplayName("dropExpiredPartitions should skip a table that is not partitioned yet")
+    void dropExpiredPartitions_Unpartitioned_ShouldSkip() {
+        insertEvent("expired-processed", today.minusDays(30).atTime(12, 0), true);
+
+        assertThat(eventPartitionService.dropExpiredPartitions(INBOX)).isZero();
+        assertThat(rowsIn(INBOX)).isEqualTo(1);
+    }
+
+    private void insertEvent(String key, LocalDateTime receivedAt, boolean processed) {
+        jdbcTemplate.update(
+                "INSERT INTO inbox_events (idempotency_key, event_type, payload, topic, received_at, created_at, " +
+                "processed, retry_count) VALUES (?, 'MESSAGE_CREATED', '{}', 'lootchat.chat.messages', ?, now(), ?, 0) " +
+                "ON CONFLICT DO NOTHING",
+                key, receivedAt, processed);
+    }
+
+    private int rowsIn(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private boolean tableExists(String table) {
+        return jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table);
+    }
+
+    private String partition(LocalDate day) {
+        return INBOX + "_p" + day.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+    }
+}
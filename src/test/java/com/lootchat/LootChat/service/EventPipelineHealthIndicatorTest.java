@@ -0,0 +1,70 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.service.inbox.EventPipelineHealthIndicator;
+import com.lootchat.LootChat.service.inbox.EventPipelineMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EventPipelineHealthIndicator Tests")
+class EventPipelineHealthIndicatorTest {
+
+    @Mock
+    private EventPipelineMetrics metrics;
+
+    @InjectMocks
+    private EventPipelineHealthIndicator healthIndicator;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(healthIndicator, "warningSeconds", 30L);
+        ReflectionTestUtils.setField(healthIndicator, "criticalSeconds", 300L);
+    }
+
+    @Test
+    @DisplayName("health should be UP when lag is below the warning threshold")
+    void health_ShouldBeUp_WhenLagIsLow() {
+        when(metrics.getOutboxLagSeconds()).thenReturn(2L);
+        when(metrics.getInboxLagSeconds()).thenReturn(5L);
+
+        Health health = healthIndicator.health();
+
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).doesNotContainKey("severity");
+    }
+
+    @Test
+    @DisplayName("health should be DEGRADED with warning severity past the warning threshold")
+    void health_ShouldDegrade_WhenLagCrossesWarning() {
+        when(metrics.getOutboxLagSeconds()).thenReturn(45L);
+        when(metrics.getInboxLagSeconds()).thenReturn(0L);
+
+        Health health = healthIndicator.health();
+
+        assertThat(health.getStatus()).isEqualTo(EventPipelineHealthIndicator.DEGRADED);
+        assertThat(health.getDetails()).containsEntry("severity", "warning");
+    }
+
+    @Test
+    @DisplayName("health should report critical severity past the critical threshold")
+    void health_ShouldBeCritical_WhenLagCrossesCritical() {
+        when(metrics.getOutboxLagSeconds()).thenReturn(0L);
+        when(metrics.getInboxLagSeconds()).thenReturn(600L);
+
+        Health health = healthIndicator.health();
+
+        assertThat(health.getStatus()).isEqualTo(EventPipelineHealthIndicator.DEGRADED);
+        assertThat(health.getDetails()).containsEntry("severity", "critical");
+    }
+}
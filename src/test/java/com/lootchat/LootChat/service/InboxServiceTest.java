@@ -2,7 +2,12 @@ package com.lootchat.LootChat.service;
 
 import com.lootchat.LootChat.entity.InboxEvent;
 import com.lootchat.LootChat.repository.InboxEventRepository;
+import com.lootchat.LootChat.service.inbox.EventEnvelope;
+import com.lootchat.LootChat.service.inbox.InboxService;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,11 +17,23 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DataIntegrityViolationException;
-
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -27,6 +44,9 @@ class InboxServiceTest {
     @Mock
     private InboxEventRepository inboxRepository;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private InboxService inboxService;
 
@@ -34,6 +54,7 @@ class InboxServiceTest {
 
     @BeforeEach
     void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
         testRecord = new ConsumerRecord<>(
                 "lootchat.chat.messages", // topic
                 0,                         // partition
@@ -67,6 +88,20 @@ class InboxServiceTest {
         verify(inboxRepository).save(any(InboxEvent.class));
     }
 
+    @Test
+    @DisplayName("receivedAt should use the Kafka record timestamp as partition key")
+    void receivedAt_ShouldUseRecordTimestamp() {
+        long timestamp = 1_700_000_000_000L;
+        ConsumerRecord<String, String> record = new ConsumerRecord<>(
+                "lootchat.chat.messages", 0, 100L, timestamp, TimestampType.CREATE_TIME,
+                0, 0, "channel-1", "{}", new RecordHeaders(), Optional.empty());
+
+        LocalDateTime receivedAt = inboxService.receivedAt(record);
+
+        assertThat(receivedAt).isEqualTo(
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+    }
+
     @Test
     @DisplayName("storeEvent should return empty for duplicate event")
     void storeEvent_ShouldReturnEmpty_ForDuplicate() {
@@ -92,26 +127,47 @@ class InboxServiceTest {
     }
 
     @Test
-    @DisplayName("storeEvent with custom key should work correctly")
+    @DisplayName("storeEvent with custom key should partition by the event's own time")
     void storeEvent_WithCustomKey_ShouldWork() {
         String customKey = "custom:business:key";
-        when(inboxRepository.existsByIdempotencyKey(customKey)).thenReturn(false);
-        when(inboxRepository.save(any(InboxEvent.class))).thenAnswer(invocation -> {
-            InboxEvent event = invocation.getArgument(0);
-            event.setId(1L);
-            return event;
+        LocalDateTime occurredAt = LocalDateTime.of(2026, 10, 1, 12, 0);
+        when(inboxRepository.insertIgnoringDuplicates(anyList())).thenReturn(1, 0);
+
+        boolean first = inboxService.storeEvent(customKey, "MESSAGE_CREATED", "test-topic", "{\"data\":\"value\"}", occurredAt);
+        boolean second = inboxService.storeEvent(customKey, "MESSAGE_CREATED", "test-topic", "{\"data\":\"value\"}", occurredAt);
+
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<InboxEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(inboxRepository, times(2)).insertIgnoringDuplicates(captor.capture());
+        assertThat(captor.getAllValues()).allSatisfy(events -> {
+            assertThat(events.get(0).getIdempotencyKey()).isEqualTo(customKey);
+            assertThat(events.get(0).getReceivedAt()).isEqualTo(occurredAt);
         });
+    }
 
-        Optional<InboxEvent> result = inboxService.storeEvent(
-                customKey, 
-                "MESSAGE_CREATED", 
-                "test-topic", 
-                "{\"data\":\"value\"}"
-        );
+    @Test
+    @DisplayName("a re-published outbox event should get the same idempotency and partition key")
+    void toInboxEvent_RepublishedOutboxEvent_ShouldMatchOriginal() {
+        LocalDateTime createdAt = LocalDateTime.of(2026, 10, 1, 12, 0, 0, 123_000_000);
+        ConsumerRecord<String, String> original = outboxRecord(100L, 1_700_000_000_000L, createdAt);
+        ConsumerRecord<String, String> republished = outboxRecord(250L, 1_700_000_090_000L, createdAt);
+
+        InboxEvent first = inboxService.toInboxEvent(original, "MESSAGE_CREATED");
+        InboxEvent second = inboxService.toInboxEvent(republished, "MESSAGE_CREATED");
+
+        assertThat(first.getIdempotencyKey()).isEqualTo("outbox:42").isEqualTo(second.getIdempotencyKey());
+        assertThat(first.getReceivedAt()).isEqualTo(createdAt).isEqualTo(second.getReceivedAt());
+        assertThat(first.getKafkaOffset()).isEqualTo(100L);
+    }
 
-        assertThat(result).isPresent();
-        assertThat(result.get().getIdempotencyKey()).isEqualTo(customKey);
-        assertThat(result.get().getTopic()).isEqualTo("test-topic");
+    private ConsumerRecord<String, String> outboxRecord(long offset, long timestamp, LocalDateTime createdAt) {
+        ProducerRecord<String, String> produced = EventEnvelope.toProducerRecord(
+                "lootchat.chat.messages", "channel-1", "MESSAGE_CREATED", "{}", 42L, createdAt);
+        return new ConsumerRecord<>(
+                "lootchat.chat.messages", 0, offset, timestamp, TimestampType.CREATE_TIME,
+                0, 0, "channel-1", "{}", produced.headers(), Optional.empty());
     }
 
     @Test
@@ -150,6 +206,119 @@ class InboxServiceTest {
         verify(inboxRepository).markAsProcessed(eq(1L), any(), eq("processor-1"));
     }
 
+    @Test
+    @DisplayName("markAsProcessed with ids should issue a single bulk update")
+    void markAsProcessed_WithIds_ShouldBulkUpdate() {
+        List<Long> ids = List.of(1L, 2L, 3L);
+        when(inboxRepository.markAllAsProcessed(eq(ids), any(), eq("processor-1"))).thenReturn(3);
+
+        inboxService.markAsProcessed(ids, "processor-1");
+
+        verify(inboxRepository).markAllAsProcessed(eq(ids), any(), eq("processor-1"));
+        verify(inboxRepository, never()).markAsProcessed(anyLong(), any(), anyString());
+    }
+
+    @Test
+    @DisplayName("markAsProcessed with no ids should not touch the database")
+    void markAsProcessed_WithNoIds_ShouldSkipUpdate() {
+        inboxService.markAsProcessed(List.of(), "processor-1");
+
+        verifyNoInteractions(inboxRepository);
+    }
+
+    @Test
+    @DisplayName("storeEvents should insert the whole batch in one statement")
+    void storeEvents_ShouldBulkInsert() {
+        List<InboxEvent> events = List.of(
+                inboxService.toInboxEvent(testRecord, "MESSAGE_CREATED"),
+                inboxService.toInboxEvent(testRecord, "MESSAGE_CREATED"));
+        when(inboxRepository.insertIgnoringDuplicates(events)).thenReturn(1);
+
+        int stored = inboxService.storeEvents(events);
+
+        assertThat(stored).isEqualTo(1);
+        assertThat(events.get(0).getIdempotencyKey()).isEqualTo("lootchat.chat.messages:0:100");
+        verify(inboxRepository).insertIgnoringDuplicates(events);
+        verify(inboxRepository, never()).existsByIdempotencyKey(anyString());
+    }
+
+    @Test
+    @DisplayName("storeEvents should skip the insert for an empty batch")
+    void storeEvents_WithNoEvents_ShouldSkipInsert() {
+        assertThat(inboxService.storeEvents(List.of())).isZero();
+
+        verifyNoInteractions(inboxRepository);
+    }
+
+    @Test
+    @DisplayName("processClaimedBatch should lease the batch and mark only handled events as processed")
+    void processClaimedBatch_ShouldMarkHandledEvents() {
+        InboxEvent ok = InboxEvent.builder().id(1L).retryCount(0).build();
+        InboxEvent failed = InboxEvent.builder().id(2L).retryCount(0).build();
+        when(inboxRepository.claimUnprocessedEvents(5, 16, 3, 50)).thenReturn(List.of(ok, failed));
+
+        InboxService.BatchResult result = inboxService.processClaimedBatch(
+                3, 16, 50, 5, Duration.ofMinutes(2), "processor-1", event -> {
+                    if (event.getId() == 2L) {
+                        throw new IllegalStateException("boom");
+                    }
+                });
+
+        assertThat(result.claimed()).isEqualTo(2);
+        assertThat(result.processed()).isEqualTo(1);
+        verify(inboxRepository).leaseEvents(eq(List.of(1L, 2L)), any());
+        verify(inboxRepository).markAsProcessed(eq(1L), any(), eq("processor-1"));
+        verify(inboxRepository, never()).markAsProcessed(eq(2L), any(), anyString());
+        verify(inboxRepository).incrementRetryCount(eq(2L), eq("boom"), any(LocalDateTime.class));
+        verify(inboxRepository, never()).releaseEvents(any());
+    }
+
+    @Test
+    @DisplayName("processClaimedBatch should still count a retry when the handler's transaction rolls back")
+    void processClaimedBatch_DataAccessFailure_ShouldIncrementRetryCount() {
+        InboxEvent poison = InboxEvent.builder().id(7L).retryCount(4).topic("lootchat.chat.messages").build();
+        when(inboxRepository.claimUnprocessedEvents(5, 16, 0, 50)).thenReturn(List.of(poison));
+
+        InboxService.BatchResult result = inboxService.processClaimedBatch(
+                0, 16, 50, 5, Duration.ofMinutes(2), "processor-1", event -> {
+                    throw new QueryTimeoutException("canceling statement due to statement timeout");
+                });
+
+        assertThat(result.processed()).isZero();
+        // Claim, handler and failure each run in their own transaction
+        verify(transactionManager, times(3)).getTransaction(
+                argThat(definition -> definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(transactionManager, times(1)).rollback(any(TransactionStatus.class));
+        verify(transactionManager, times(2)).commit(any(TransactionStatus.class));
+        verify(inboxRepository).incrementRetryCount(eq(7L), contains("statement timeout"), any(LocalDateTime.class));
+        verify(inboxRepository, never()).markAsProcessed(anyLong(), any(), anyString());
+    }
+
+    @Test
+    @DisplayName("processClaimedBatch should hold back later events of a failed event's key")
+    void processClaimedBatch_Failure_ShouldHoldBackSameKey() {
+        InboxEvent first = InboxEvent.builder().id(1L).messageKey("channel-1").retryCount(0).build();
+        InboxEvent otherKey = InboxEvent.builder().id(2L).messageKey("channel-2").retryCount(0).build();
+        InboxEvent second = InboxEvent.builder().id(3L).messageKey("channel-1").retryCount(0).build();
+        when(inboxRepository.claimUnprocessedEvents(5, 16, 3, 50)).thenReturn(List.of(first, otherKey, second));
+        List<Long> handled = new ArrayList<>();
+
+        InboxService.BatchResult result = inboxService.processClaimedBatch(
+                3, 16, 50, 5, Duration.ofMinutes(2), "processor-1", event -> {
+                    handled.add(event.getId());
+                    if (event.getId() == 1L) {
+                        throw new IllegalStateException("boom");
+                    }
+                });
+
+        assertThat(handled).containsExactly(1L, 2L);
+        assertThat(result.processed()).isEqualTo(1);
+        verify(inboxRepository).incrementRetryCount(eq(1L), eq("boom"), any(LocalDateTime.class));
+        verify(inboxRepository).markAsProcessed(eq(2L), any(), eq("processor-1"));
+        verify(inboxRepository, never()).markAsProcessed(eq(3L), any(), anyString());
+        verify(inboxRepository).releaseEvents(List.of(3L));
+    }
+
     @Test
     @DisplayName("recordFailure should truncate long error messages")
     void recordFailure_ShouldTruncateLongError() {
@@ -158,7 +327,7 @@ class InboxServiceTest {
         inboxService.recordFailure(1L, longError);
 
         ArgumentCaptor<String> errorCaptor = ArgumentCaptor.forClass(String.class);
-        verify(inboxRepository).incrementRetryCount(eq(1L), errorCaptor.capture());
+        verify(inboxRepository).incrementRetryCount(eq(1L), errorCaptor.capture(), any(LocalDateTime.class));
         
         assertThat(errorCaptor.getValue()).hasSize(1000);
     }
@@ -0,0 +1,114 @@
+package com.lootchat.LootChat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lootchat.LootChat.entity.InboxEvent;
+import com.lootchat.LootChat.service.common.KafkaConsumerService;
+import com.lootchat.LootChat.service.inbox.EphemeralEventDispatcher;
+import com.lootchat.LootChat.service.inbox.EventPipelineMetrics;
+import com.lootchat.LootChat.service.inbox.InboxService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("KafkaConsumerService Tests")
+class KafkaConsumerServiceTest {
+
+    private static final String TOPIC = "lootchat.direct.messages";
+
+    @Mock
+    private InboxService inboxService;
+
+    @Mock
+    private EphemeralEventDispatcher ephemeralEventDispatcher;
+
+    @Mock
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Mock
+    private EventPipelineMetrics metrics;
+
+    @Mock
+    private Acknowledgment acknowledgment;
+
+    private KafkaConsumerService kafkaConsumerService;
+
+    private ConsumerRecord<String, String> valid;
+    private ConsumerRecord<String, String> duplicate;
+    private ConsumerRecord<String, String> rejected;
+
+    @BeforeEach
+    void setUp() {
+        kafkaConsumerService = new KafkaConsumerService(
+                inboxService, ephemeralEventDispatcher, new ObjectMapper(), kafkaTemplate, metrics);
+
+        valid = new ConsumerRecord<>(TOPIC, 0, 10L, "dm-1", "{\"id\":1}");
+        duplicate = new ConsumerRecord<>(TOPIC, 0, 11L, "dm-1", "{\"id\":2}");
+        rejected = new ConsumerRecord<>(TOPIC, 0, 12L, "dm-1", "{\"id\":3}");
+        lenient().when(inboxService.toInboxEvent(any(), any())).thenAnswer(invocation -> {
+            ConsumerRecord<String, String> record = invocation.getArgument(0);
+            return InboxEvent.builder().idempotencyKey(TOPIC + ":0:" + record.offset()).build();
+        });
+        lenient().when(inboxService.storeEvents(anyList()))
+                .thenThrow(new DataIntegrityViolationException("value too long"));
+    }
+
+    @Test
+    @DisplayName("consumeInboxEvents should dead-letter only the record the database rejects")
+    void consumeInboxEvents_BulkRejected_ShouldDeadLetterOffendingRecord() {
+        when(inboxService.storeEventIgnoringDuplicate(any())).thenAnswer(invocation -> {
+            InboxEvent event = invocation.getArgument(0);
+            if (event.getIdempotencyKey().endsWith(":12")) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            return event.getIdempotencyKey().endsWith(":10");
+        });
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+
+        kafkaConsumerService.consumeInboxEvents(List.of(valid, duplicate, rejected), acknowledgment);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<ProducerRecord<String, String>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, times(1)).send(captor.capture());
+        assertThat(captor.getValue().topic()).isEqualTo(TOPIC + ".DLT");
+        assertThat(captor.getValue().value()).isEqualTo("{\"id\":3}");
+        assertThat(captor.getValue().headers().lastHeader("lootchat-inbox-error")).isNotNull();
+        verify(metrics, times(1)).recordInboxRejected(TOPIC);
+        verify(inboxService, times(3)).storeEventIgnoringDuplicate(any());
+        verify(acknowledgment).acknowledge();
+    }
+
+    @Test
+    @DisplayName("consumeInboxEvents should not acknowledge when the dead-letter publish fails")
+    void consumeInboxEvents_DeadLetterFails_ShouldNotAcknowledge() {
+        when(inboxService.storeEventIgnoringDuplicate(any()))
+                .thenThrow(new DataIntegrityViolationException("value too long"));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        assertThatThrownBy(() -> kafkaConsumerService.consumeInboxEvents(List.of(rejected), acknowledgment))
+                .hasRootCauseMessage("broker down");
+
+        verify(acknowledgment, never()).acknowledge();
+    }
+}
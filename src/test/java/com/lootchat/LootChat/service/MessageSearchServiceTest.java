@@ -0,0 +1,68 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.dto.message.MessageSearchResponse;
+import com.lootchat.LootChat.dto.message.MessageSearchResult;
+import com.lootchat.LootChat.service.message.MessageSearchBackend;
+import com.lootchat.LootChat.service.message.MessageSearchService;
+import com.lootchat.LootChat.service.user.UserAvatarCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MessageSearchService Tests")
+class MessageSearchServiceTest {
+
+    @Mock
+    private MessageSearchBackend searchBackend;
+
+    @Mock
+    private UserAvatarCache userAvatarCache;
+
+    private MessageSearchService messageSearchService;
+
+    @BeforeEach
+    void setUp() {
+        messageSearchService = new MessageSearchService(searchBackend, userAvatarCache);
+    }
+
+    @Test
+    @DisplayName("searchChannelMessages should fill avatars of the whole page with one lookup")
+    void searchChannelMessages_ShouldResolveAvatarsOnce() {
+        MessageSearchResponse page = MessageSearchResponse.builder()
+                .results(List.of(result(1L, 10L), result(2L, 11L), result(3L, 10L)))
+                .build();
+        when(searchBackend.search("hello", 5L, 0, 20, "cursor")).thenReturn(page);
+        when(userAvatarCache.getAvatars(List.of(10L, 11L, 10L))).thenReturn(Map.of(10L, "/a10.png"));
+
+        MessageSearchResponse response = messageSearchService.searchChannelMessages(5L, "hello", 0, 20, "cursor");
+
+        assertThat(response.getResults()).extracting(MessageSearchResult::getUserAvatar)
+                .containsExactly("/a10.png", null, "/a10.png");
+        verify(userAvatarCache, times(1)).getAvatars(anyList());
+    }
+
+    @Test
+    @DisplayName("searchAllMessages should search without a channel filter")
+    void searchAllMessages_ShouldNotFilterByChannel() {
+        when(searchBackend.search("hello", null, 1, 20, null))
+                .thenReturn(MessageSearchResponse.builder().results(List.of()).build());
+
+        messageSearchService.searchAllMessages("hello", 1, 20, null);
+
+        verify(searchBackend).search("hello", null, 1, 20, null);
+    }
+
+    private static MessageSearchResult result(Long messageId, Long userId) {
+        return MessageSearchResult.builder().messageId(messageId).userId(userId).content("hello").build();
+    }
+}
@@ -9,6 +9,7 @@ import com.lootchat.LootChat.repository.MessageReactionRepository;
 import com.lootchat.LootChat.repository.MessageRepository;
 import com.lootchat.LootChat.repository.UserRepository;
 import com.lootchat.LootChat.security.CurrentUserService;
+import com.lootchat.LootChat.service.channel.ChannelSequenceService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -61,6 +62,9 @@ class MessageServiceTest {
     @Mock
     private OutboxService outboxService;
 
+    @Mock
+    private ChannelSequenceService channelSequenceService;
+
     @Mock
     private ObjectMapper objectMapper;
 
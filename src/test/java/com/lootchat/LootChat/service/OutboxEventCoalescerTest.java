@@ -0,0 +1,75 @@
+package com.lootchat.LootChat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lootchat.LootChat.entity.OutboxEvent;
+import com.lootchat.LootChat.service.inbox.OutboxEventCoalescer;
+import com.lootchat.LootChat.service.inbox.OutboxService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("OutboxEventCoalescer Tests")
+class OutboxEventCoalescerTest {
+
+    private final OutboxEventCoalescer coalescer = new OutboxEventCoalescer(new ObjectMapper());
+
+    @Test
+    @DisplayName("coalesce should keep only the last edit per message")
+    void coalesce_ShouldCollapseEditsToLatest() {
+        OutboxEvent created = event(1L, OutboxService.EVENT_MESSAGE_CREATED, "{\"messageId\":5,\"userId\":1,\"content\":\"a\"}");
+        OutboxEvent edit1 = event(2L, OutboxService.EVENT_MESSAGE_EDITED, "{\"messageId\":7,\"content\":\"b\"}");
+        OutboxEvent otherEdit = event(3L, OutboxService.EVENT_MESSAGE_EDITED, "{\"messageId\":8,\"content\":\"c\"}");
+        OutboxEvent edit2 = event(4L, OutboxService.EVENT_MESSAGE_EDITED, "{\"messageId\":7,\"content\":\"d\"}");
+
+        List<OutboxEvent> result = coalescer.coalesce(List.of(created, edit1, otherEdit, edit2));
+
+        assertThat(result).containsExactly(created, otherEdit, edit2);
+    }
+
+    @Test
+    @DisplayName("coalesce should cancel an add followed by a remove of the same reaction")
+    void coalesce_ShouldCancelAddRemovePairs() {
+        String reaction = "{\"reactionId\":3,\"messageId\":7,\"userId\":1,\"emoji\":\"👍\"}";
+        OutboxEvent add = event(1L, OutboxService.EVENT_REACTION_ADDED, reaction);
+        OutboxEvent otherAdd = event(2L, OutboxService.EVENT_REACTION_ADDED, "{\"reactionId\":4,\"messageId\":7,\"userId\":2,\"emoji\":\"👍\"}");
+        OutboxEvent remove = event(3L, OutboxService.EVENT_REACTION_REMOVED, reaction);
+
+        List<OutboxEvent> result = coalescer.coalesce(List.of(add, otherAdd, remove));
+
+        assertThat(result).containsExactly(otherAdd);
+    }
+
+    @Test
+    @DisplayName("coalesce should keep a remove followed by a re-add")
+    void coalesce_ShouldKeepRemoveThenAdd() {
+        OutboxEvent remove = event(1L, OutboxService.EVENT_REACTION_REMOVED, "{\"reactionId\":3,\"messageId\":7,\"userId\":1,\"emoji\":\"x\"}");
+        OutboxEvent add = event(2L, OutboxService.EVENT_REACTION_ADDED, "{\"reactionId\":9,\"messageId\":7,\"userId\":1,\"emoji\":\"x\"}");
+
+        List<OutboxEvent> result = coalescer.coalesce(List.of(remove, add));
+
+        assertThat(result).containsExactly(remove, add);
+    }
+
+    @Test
+    @DisplayName("coalesce should keep events whose payload cannot be parsed")
+    void coalesce_ShouldKeepUnparseableEvents() {
+        OutboxEvent broken1 = event(1L, OutboxService.EVENT_MESSAGE_EDITED, "not json");
+        OutboxEvent broken2 = event(2L, OutboxService.EVENT_MESSAGE_EDITED, "not json");
+
+        List<OutboxEvent> result = coalescer.coalesce(List.of(broken1, broken2));
+
+        assertThat(result).containsExactly(broken1, broken2);
+    }
+
+    private OutboxEvent event(Long id, String eventType, String payload) {
+        return OutboxEvent.builder()
+                .id(id)
+                .eventType(eventType)
+                .topic(OutboxService.TOPIC_CHANNEL_MESSAGES)
+                .payload(payload)
+                .build();
+    }
+}
@@ -0,0 +1,35 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.service.search.PostgresSearchQuery;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("PostgresSearchQuery Tests")
+class PostgresSearchQueryTest {
+
+    @Test
+    @DisplayName("toPrefixQuery should require every word as a prefix")
+    void toPrefixQuery_ShouldAndPrefixTerms() {
+        assertThat(PostgresSearchQuery.toPrefixQuery("Hel  wörld")).isEqualTo("hel:* & wörld:*");
+    }
+
+    @Test
+    @DisplayName("toPrefixQuery should strip tsquery operators from user input")
+    void toPrefixQuery_ShouldStripOperators() {
+        assertThat(PostgresSearchQuery.toPrefixQuery("a&b | !c:*'")).isEqualTo("a:* & b:* & c:*");
+        assertThat(PostgresSearchQuery.toPrefixQuery(" !&| ")).isNull();
+    }
+
+    @Test
+    @DisplayName("afterId should take the message id from both cursor formats")
+    void afterId_ShouldReadLastSortValue() {
+        assertThat(PostgresSearchQuery.afterId(null)).isNull();
+        assertThat(PostgresSearchQuery.afterId("42")).isEqualTo(42L);
+        assertThat(PostgresSearchQuery.afterId("1700000000000,42")).isEqualTo(42L);
+        assertThatThrownBy(() -> PostgresSearchQuery.afterId("abc")).isInstanceOf(ResponseStatusException.class);
+    }
+}
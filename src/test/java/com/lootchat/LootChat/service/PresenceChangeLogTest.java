@@ -0,0 +1,108 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.dto.user.PresenceDelta;
+import com.lootchat.LootChat.dto.user.UserPresenceUpdate;
+import com.lootchat.LootChat.service.user.PresenceChangeLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PresenceChangeLog Tests")
+class PresenceChangeLogTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    private PresenceChangeLog presenceChangeLog;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        presenceChangeLog = new PresenceChangeLog(redisTemplate);
+    }
+
+    @Test
+    @DisplayName("changesSince should return the net change per user since the version")
+    void changesSince_ShouldReturnNetChangePerUser() {
+        when(valueOperations.get("presence:version")).thenReturn("12");
+        when(valueOperations.get("presence:changes:floor")).thenReturn(null);
+        Set<ZSetOperations.TypedTuple<String>> entries = new LinkedHashSet<>(List.of(
+                new DefaultTypedTuple<>("1:offline:alice", 9.0),
+                new DefaultTypedTuple<>("2:online:bob", 10.0),
+                new DefaultTypedTuple<>("1:online:alice", 11.0),
+                new DefaultTypedTuple<>("3:offline:carol", 12.0)
+        ));
+        when(zSetOperations.rangeByScoreWithScores(eq("presence:changes"), eq(9.0), eq(Double.POSITIVE_INFINITY)))
+                .thenReturn(entries);
+
+        PresenceDelta delta = presenceChangeLog.changesSince(8);
+
+        assertThat(delta.isSnapshotRequired()).isFalse();
+        assertThat(delta.getVersion()).isEqualTo(12);
+        assertThat(delta.getJoined()).extracting(UserPresenceUpdate::getUserId).containsExactly(2L, 1L);
+        assertThat(delta.getJoined()).extracting(UserPresenceUpdate::getUsername).containsExactly("bob", "alice");
+        assertThat(delta.getLeft()).containsExactly(3L);
+    }
+
+    @Test
+    @DisplayName("changesSince should keep the client version when nothing changed")
+    void changesSince_ShouldKeepVersion_WhenNothingChanged() {
+        when(valueOperations.get("presence:version")).thenReturn("5");
+        when(zSetOperations.rangeByScoreWithScores(eq("presence:changes"), eq(6.0), eq(Double.POSITIVE_INFINITY)))
+                .thenReturn(Set.of());
+
+        PresenceDelta delta = presenceChangeLog.changesSince(5);
+
+        assertThat(delta.isSnapshotRequired()).isFalse();
+        assertThat(delta.getVersion()).isEqualTo(5);
+        assertThat(delta.getJoined()).isEmpty();
+        assertThat(delta.getLeft()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("changesSince should require a snapshot when the version was trimmed from the log")
+    void changesSince_ShouldRequireSnapshot_WhenVersionTrimmed() {
+        when(valueOperations.get("presence:version")).thenReturn("500");
+        when(valueOperations.get("presence:changes:floor")).thenReturn("120");
+
+        PresenceDelta delta = presenceChangeLog.changesSince(100);
+
+        assertThat(delta.isSnapshotRequired()).isTrue();
+        assertThat(delta.getVersion()).isEqualTo(500);
+        verifyNoInteractions(zSetOperations);
+    }
+
+    @Test
+    @DisplayName("changesSince should require a snapshot when the client is ahead of Redis")
+    void changesSince_ShouldRequireSnapshot_WhenClientAhead() {
+        when(valueOperations.get("presence:version")).thenReturn("3");
+
+        PresenceDelta delta = presenceChangeLog.changesSince(40);
+
+        assertThat(delta.isSnapshotRequired()).isTrue();
+        assertThat(delta.getVersion()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,107 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.service.channel.ReadStateBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ReadStateBuffer Tests")
+class ReadStateBufferTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ReadStateBuffer readStateBuffer;
+
+    @BeforeEach
+    void setUp() {
+        readStateBuffer = new ReadStateBuffer(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("mark should keep the highest sequence per user and channel")
+    void mark_RepeatedReads_ShouldKeepMaxSeq() {
+        LocalDateTime now = LocalDateTime.now();
+        readStateBuffer.mark(1L, 10L, 50L, now);
+        readStateBuffer.mark(1L, 10L, 40L, now.plusSeconds(1));
+        readStateBuffer.mark(1L, 20L, 7L, now);
+        readStateBuffer.mark(2L, 10L, 3L, now);
+
+        assertThat(readStateBuffer.pendingSeq(1L, 10L)).isEqualTo(50L);
+        assertThat(readStateBuffer.pendingSeqs(1L)).isEqualTo(Map.of(10L, 50L, 20L, 7L));
+        assertThat(readStateBuffer.pendingSeq(3L, 10L)).isNull();
+    }
+
+    @Test
+    @DisplayName("flush should write all coalesced watermarks in one batch and clear the buffer")
+    @SuppressWarnings("unchecked")
+    void flush_ShouldBatchUpsertAndClear() {
+        LocalDateTime now = LocalDateTime.now();
+        readStateBuffer.mark(1L, 10L, 50L, now);
+        readStateBuffer.mark(1L, 10L, 51L, now);
+        readStateBuffer.mark(2L, 10L, 51L, now);
+
+        readStateBuffer.flush();
+
+        ArgumentCaptor<Collection<Object>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), batch.capture(), eq(2), any(ParameterizedPreparedStatementSetter.class));
+        assertThat(batch.getValue()).hasSize(2);
+        assertThat(readStateBuffer.pendingSeqs(1L)).isEmpty();
+        assertThat(readStateBuffer.pendingSeqs(2L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("flush should keep a newer read that arrives while the batch is written")
+    @SuppressWarnings("unchecked")
+    void flush_ReadDuringFlush_ShouldKeepNewerMark() {
+        LocalDateTime now = LocalDateTime.now();
+        readStateBuffer.mark(1L, 10L, 50L, now);
+        readStateBuffer.mark(1L, 20L, 7L, now);
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    readStateBuffer.mark(1L, 10L, 60L, now.plusSeconds(1));
+                    return new int[][]{{1, 1}};
+                });
+
+        readStateBuffer.flush();
+
+        assertThat(readStateBuffer.pendingSeqs(1L)).isEqualTo(Map.of(10L, 60L));
+    }
+
+    @Test
+    @DisplayName("flush should keep watermarks buffered when the batch fails")
+    @SuppressWarnings("unchecked")
+    void flush_Failure_ShouldRequeue() {
+        readStateBuffer.mark(1L, 10L, 50L, LocalDateTime.now());
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new QueryTimeoutException("timeout"));
+
+        readStateBuffer.flush();
+
+        assertThat(readStateBuffer.pendingSeq(1L, 10L)).isEqualTo(50L);
+    }
+
+    @Test
+    @DisplayName("flush should not touch the database when nothing is buffered")
+    void flush_Empty_ShouldSkip() {
+        readStateBuffer.flush();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
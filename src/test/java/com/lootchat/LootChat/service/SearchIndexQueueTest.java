@@ -0,0 +1,165 @@
+package com.lootchat.LootChat.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.lootchat.LootChat.document.MessageDocument;
+import com.lootchat.LootChat.service.search.SearchIndexQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SearchIndexQueue Tests")
+class SearchIndexQueueTest {
+
+    @Mock
+    private ElasticsearchClient elasticsearchClient;
+
+    @Mock
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Mock
+    private ElasticsearchConverter elasticsearchConverter;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SearchIndexQueue searchIndexQueue;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(elasticsearchOperations.getIndexCoordinatesFor(MessageDocument.class))
+                .thenReturn(IndexCoordinates.of("messages"));
+        lenient().when(elasticsearchOperations.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+        lenient().when(elasticsearchConverter.mapObject(any())).thenReturn(Document.create());
+
+        meterRegistry = new SimpleMeterRegistry();
+        searchIndexQueue = new SearchIndexQueue(elasticsearchClient, elasticsearchOperations, meterRegistry, Runnable::run);
+        ReflectionTestUtils.setField(searchIndexQueue, "batchSize", 3);
+        ReflectionTestUtils.setField(searchIndexQueue, "maxAttempts", 2);
+        ReflectionTestUtils.setField(searchIndexQueue, "initialBackoffMs", 0L);
+        ReflectionTestUtils.setField(searchIndexQueue, "maxBackoffMs", 0L);
+        ReflectionTestUtils.invokeMethod(searchIndexQueue, "registerMeters");
+    }
+
+    @Test
+    @DisplayName("flush should send the latest operation per document in one _bulk request")
+    void flush_ShouldCoalesceIntoOneBulkRequest() throws IOException {
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response(null, null));
+
+        searchIndexQueue.index("1", document(1L));
+        searchIndexQueue.index("1", document(1L));
+        searchIndexQueue.index("2", document(2L));
+        searchIndexQueue.delete(MessageDocument.class, "2");
+        searchIndexQueue.flush();
+
+        ArgumentCaptor<BulkRequest> request = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(elasticsearchClient).bulk(request.capture());
+        assertThat(request.getValue().operations()).hasSize(2);
+        assertThat(request.getValue().operations())
+                .anySatisfy(op -> assertThat(op.isIndex()).isTrue())
+                .anySatisfy(op -> assertThat(op.isDelete()).isTrue());
+        assertThat(meterRegistry.get("lootchat.search.index.pending").gauge().value()).isZero();
+        assertThat(meterRegistry.get("lootchat.search.index.operations").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("enqueue should flush as soon as a full batch is pending")
+    void enqueue_FullBatch_ShouldFlush() throws IOException {
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response(null, null, null));
+
+        searchIndexQueue.index("1", document(1L));
+        searchIndexQueue.index("2", document(2L));
+        verifyNoInteractions(elasticsearchClient);
+
+        searchIndexQueue.index("3", document(3L));
+
+        verify(elasticsearchClient).bulk(any(BulkRequest.class));
+    }
+
+    @Test
+    @DisplayName("flush should retry only the documents that failed")
+    void flush_ItemFailure_ShouldRetryFailedDocuments() throws IOException {
+        when(elasticsearchClient.bulk(any(BulkRequest.class)))
+                .thenReturn(response(null, "mapper_parsing_exception"))
+                .thenReturn(response((String) null));
+
+        searchIndexQueue.index("1", document(1L));
+        searchIndexQueue.index("2", document(2L));
+        searchIndexQueue.flush();
+
+        assertThat(meterRegistry.get("lootchat.search.index.pending").gauge().value()).isEqualTo(1);
+
+        searchIndexQueue.flush();
+
+        ArgumentCaptor<BulkRequest> request = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(elasticsearchClient, times(2)).bulk(request.capture());
+        assertThat(request.getAllValues().get(1).operations()).hasSize(1);
+        assertThat(meterRegistry.get("lootchat.search.index.failures").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("lootchat.search.index.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("flush should drop operations that exhaust their retries")
+    void flush_RequestFailure_ShouldDropAfterMaxAttempts() throws IOException {
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenThrow(new IOException("connection refused"));
+
+        searchIndexQueue.index("1", document(1L));
+        searchIndexQueue.flush();
+        assertThat(meterRegistry.get("lootchat.search.index.pending").gauge().value()).isEqualTo(1);
+
+        searchIndexQueue.flush();
+
+        assertThat(meterRegistry.get("lootchat.search.index.pending").gauge().value()).isZero();
+        assertThat(meterRegistry.get("lootchat.search.index.dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("flush should not call Elasticsearch when nothing is queued")
+    void flush_Empty_ShouldSkip() {
+        searchIndexQueue.flush();
+
+        verifyNoInteractions(elasticsearchClient);
+    }
+
+    private static MessageDocument document(Long id) {
+        return MessageDocument.builder().id(id.toString()).messageId(id).content("hello").build();
+    }
+
+    /**
+     * A bulk response with one item per error reason; null means the item succeeded.
+     */
+    private static BulkResponse response(String... errors) {
+        List<BulkResponseItem> items = Arrays.stream(errors)
+                .map(error -> BulkResponseItem.of(item -> {
+                    item.operationType(OperationType.Index).index("messages").status(error == null ? 200 : 400);
+                    if (error != null) {
+                        item.error(cause -> cause.type(error).reason(error));
+                    }
+                    return item;
+                }))
+                .toList();
+        return BulkResponse.of(b -> b.errors(items.stream().anyMatch(item -> item.error() != null))
+                .took(1)
+                .items(items));
+    }
+}
@@ -0,0 +1,233 @@
+package com.lootchat.LootChat.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import co.elastic.clients.elasticsearch.indices.GetAliasResponse;
+import co.elastic.clients.elasticsearch.indices.get_alias.IndexAliases;
+import co.elastic.clients.transport.endpoints.BooleanResponse;
+import com.lootchat.LootChat.config.DistributedLockService;
+import com.lootchat.LootChat.document.MessageDocument;
+import com.lootchat.LootChat.entity.SearchIndexState;
+import com.lootchat.LootChat.repository.SearchIndexStateRepository;
+import com.lootchat.LootChat.service.search.ReindexSource;
+import com.lootchat.LootChat.service.search.SearchReindexer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.index.Settings;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SearchReindexer Tests")
+class SearchReindexerTest {
+
+    @Mock
+    private ElasticsearchClient elasticsearchClient;
+
+    @Mock
+    private ElasticsearchIndicesClient indicesClient;
+
+    @Mock
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    @Mock
+    private ElasticsearchConverter elasticsearchConverter;
+
+    @Mock
+    private SearchIndexStateRepository stateRepository;
+
+    @Mock
+    private DistributedLockService lockService;
+
+    private SearchReindexer searchReindexer;
+    private FakeSource source;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        lenient().when(elasticsearchOperations.getIndexCoordinatesFor(MessageDocument.class))
+                .thenReturn(IndexCoordinates.of("messages"));
+        lenient().when(elasticsearchOperations.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+        lenient().when(elasticsearchOperations.indexOps(any(IndexCoordinates.class))).thenReturn(indexOperations);
+        lenient().when(elasticsearchOperations.indexOps(MessageDocument.class)).thenReturn(indexOperations);
+        lenient().when(indexOperations.createSettings(MessageDocument.class)).thenReturn(new Settings());
+        lenient().when(indexOperations.createMapping(MessageDocument.class)).thenReturn(Document.create());
+        lenient().when(elasticsearchConverter.mapObject(any())).thenReturn(Document.create());
+        lenient().when(elasticsearchClient.indices()).thenReturn(indicesClient);
+        lenient().when(elasticsearchClient.bulk(any(BulkRequest.class)))
+                .thenReturn(BulkResponse.of(b -> b.errors(false).took(1).items(List.of())));
+        lenient().when(lockService.tryLock(eq("search:reindex:messages"), any(Duration.class))).thenReturn("token");
+
+        searchReindexer = new SearchReindexer(elasticsearchClient, elasticsearchOperations, stateRepository, lockService);
+        ReflectionTestUtils.setField(searchReindexer, "chunkSize", 2);
+        ReflectionTestUtils.setField(searchReindexer, "catchUpOverlapSeconds", 60L);
+
+        source = new FakeSource(List.of(
+                new Row(1L, now.minusHours(2), false),
+                new Row(2L, now.minusHours(2), false),
+                new Row(3L, now.minusMinutes(10), true),
+                new Row(4L, now.minusMinutes(5), false),
+                new Row(5L, now.minusMinutes(5), false)));
+    }
+
+    @Test
+    @DisplayName("sync should only replay rows changed since the high-water mark")
+    @SuppressWarnings("unchecked")
+    void sync_ActiveAlias_ShouldCatchUpFromHighWaterMark() throws IOException {
+        SearchIndexState state = SearchIndexState.builder()
+                .aliasName("messages")
+                .activeIndex("messages_1")
+                .mappingHash(searchReindexer.mappingHash(MessageDocument.class))
+                .highWaterMark(now.minusMinutes(15))
+                .build();
+        when(stateRepository.findById("messages")).thenReturn(Optional.of(state));
+        when(indicesClient.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(true));
+        when(indicesClient.getAlias(any(Function.class))).thenReturn(
+                GetAliasResponse.of(b -> b.result("messages_1", IndexAliases.of(a -> a.aliases(Map.of())))));
+
+        searchReindexer.sync(source);
+
+        // Rows 3, 4 and 5 changed after the mark, in chunks of two
+        assertThat(source.findAfterCalls).isEmpty();
+        ArgumentCaptor<BulkRequest> requests = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(elasticsearchClient, times(2)).bulk(requests.capture());
+        List<BulkRequest> sent = requests.getAllValues();
+        assertThat(sent.get(0).operations().get(0).isDelete()).isTrue();
+        assertThat(sent.get(0).operations().get(1).isIndex()).isTrue();
+        assertThat(sent.get(1).operations()).hasSize(1);
+        assertThat(state.getHighWaterMark()).isEqualTo(now.minusMinutes(5));
+        verify(lockService).unlock("search:reindex:messages", "token");
+    }
+
+    @Test
+    @DisplayName("sync should resume an interrupted build from its checkpoint and swap the alias")
+    @SuppressWarnings("unchecked")
+    void sync_InterruptedBuild_ShouldResumeAndSwapAlias() throws IOException {
+        LocalDateTime buildStartedAt = now.minusMinutes(1);
+        SearchIndexState state = SearchIndexState.builder()
+                .aliasName("messages")
+                .buildIndex("messages_2")
+                .mappingHash(searchReindexer.mappingHash(MessageDocument.class))
+                .buildCursor(2L)
+                .buildStartedAt(buildStartedAt)
+                .build();
+        when(stateRepository.findById("messages")).thenReturn(Optional.of(state));
+        when(indicesClient.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(false));
+
+        searchReindexer.sync(source);
+
+        assertThat(source.findAfterCalls).startsWith(2L);
+        verify(indicesClient).updateAliases(any(Function.class));
+        assertThat(state.getActiveIndex()).isEqualTo("messages_2");
+        assertThat(state.getBuildIndex()).isNull();
+        assertThat(state.getBuildCursor()).isNull();
+        assertThat(state.getHighWaterMark()).isEqualTo(buildStartedAt);
+    }
+
+    @Test
+    @DisplayName("sync should rebuild into a new index when the mapping changed")
+    @SuppressWarnings("unchecked")
+    void sync_MappingChanged_ShouldRebuild() {
+        SearchIndexState state = SearchIndexState.builder()
+                .aliasName("messages")
+                .activeIndex("messages_1")
+                .mappingHash("outdated")
+                .highWaterMark(now.minusMinutes(15))
+                .build();
+        when(stateRepository.findById("messages")).thenReturn(Optional.of(state));
+        when(indicesClient.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(false));
+
+        searchReindexer.sync(source);
+
+        verify(indexOperations).create(any(Settings.class), any(Document.class));
+        assertThat(source.findAfterCalls).startsWith(0L);
+        assertThat(state.getActiveIndex()).startsWith("messages_").isNotEqualTo("messages_1");
+        assertThat(state.getMappingHash()).isEqualTo(searchReindexer.mappingHash(MessageDocument.class));
+    }
+
+    @Test
+    @DisplayName("sync should skip when another instance holds the reindex lock")
+    void sync_LockHeld_ShouldSkip() {
+        when(lockService.tryLock(eq("search:reindex:messages"), any(Duration.class))).thenReturn(null);
+
+        searchReindexer.sync(source);
+
+        verifyNoInteractions(stateRepository, elasticsearchClient);
+        verify(lockService, never()).unlock(anyString(), anyString());
+    }
+
+    private record Row(long id, LocalDateTime updatedAt, boolean deleted) {}
+
+    private static class FakeSource implements ReindexSource<Row> {
+
+        private final List<Row> rows;
+        private final List<Long> findAfterCalls = new ArrayList<>();
+
+        FakeSource(List<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Class<?> documentClass() {
+            return MessageDocument.class;
+        }
+
+        @Override
+        public List<Row> findAfter(long afterId, int limit) {
+            findAfterCalls.add(afterId);
+            return rows.stream().filter(row -> row.id() > afterId).limit(limit).toList();
+        }
+
+        @Override
+        public List<Row> findChangedSince(LocalDateTime since, long afterId, int limit) {
+            return rows.stream()
+                    .filter(row -> row.updatedAt().isAfter(since)
+                            || (row.updatedAt().isEqual(since) && row.id() > afterId))
+                    .limit(limit)
+                    .toList();
+        }
+
+        @Override
+        public long idOf(Row row) {
+            return row.id();
+        }
+
+        @Override
+        public LocalDateTime updatedAtOf(Row row) {
+            return row.updatedAt();
+        }
+
+        @Override
+        public Object toDocument(Row row) {
+            return row.deleted() ? null : MessageDocument.builder().id(String.valueOf(row.id())).build();
+        }
+    }
+}
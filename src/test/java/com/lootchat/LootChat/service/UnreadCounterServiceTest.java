@@ -0,0 +1,133 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.repository.UserChannelReadStateRepository;
+import com.lootchat.LootChat.service.channel.UnreadCounterService;
+import com.lootchat.LootChat.service.common.WebSocketBroadcastService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("UnreadCounterService Tests")
+class UnreadCounterServiceTest {
+
+    @Mock
+    private UserChannelReadStateRepository readStateRepository;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private WebSocketBroadcastService broadcastService;
+
+    private UnreadCounterService unreadCounterService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        unreadCounterService = new UnreadCounterService(readStateRepository, redisTemplate, broadcastService);
+        ReflectionTestUtils.setField(unreadCounterService, "batchSize", 2);
+    }
+
+    @Test
+    @DisplayName("getCounts should return head minus read position from a single hash read")
+    void getCounts_Seeded_ShouldReturnCounters() {
+        when(hashOperations.entries("unread:1")).thenReturn(Map.of(
+                "seeded", "1",
+                "10:head", "8", "10:read", "5",
+                "20:head", "4", "20:read", "4",
+                "30:head", "2"));
+
+        Optional<Map<Long, Integer>> counts = unreadCounterService.getCounts(1L);
+
+        assertThat(counts).contains(Map.of(10L, 3, 20L, 0, 30L, 2));
+    }
+
+    @Test
+    @DisplayName("getCounts should be empty until the user's counters are seeded")
+    void getCounts_NotSeeded_ShouldBeEmpty() {
+        when(hashOperations.entries("unread:1")).thenReturn(Map.of("10:head", "8"));
+
+        assertThat(unreadCounterService.getCounts(1L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("seed should merge heads and read positions in one script call")
+    @SuppressWarnings("unchecked")
+    void seed_ShouldMergeHeadsAndReadPositions() {
+        unreadCounterService.seed(1L, Map.of(10L, 8L), Map.of(10L, 5L));
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("unread:1")),
+                eq(String.valueOf(Duration.ofDays(7).toSeconds())), eq("10"), eq("8"), eq("5"));
+    }
+
+    @Test
+    @DisplayName("incrementForChannel should skip the author and push new counts in batches")
+    void incrementForChannel_ShouldSkipAuthorAndPushCounts() {
+        when(readStateRepository.findUserIdsByChannelId(10L)).thenReturn(List.of(1L, 2L, 3L, 4L));
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(List.of("sha", 5L, -1L))
+                .thenReturn(List.of("sha", 1L));
+
+        unreadCounterService.incrementForChannel(10L, 1L, 42L);
+
+        // Users 2, 3 and 4 in batches of two
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+        verify(broadcastService).broadcastToUser(2L, "/unread", Map.of("channelId", 10L, "count", 5L));
+        verify(broadcastService).broadcastToUser(4L, "/unread", Map.of("channelId", 10L, "count", 1L));
+        // User 3 has no seeded counters, they are rebuilt from the database on the next read
+        verify(broadcastService, never()).broadcastToUser(eq(3L), anyString(), any());
+        verify(broadcastService, never()).broadcastToUser(eq(1L), anyString(), any());
+    }
+
+    @Test
+    @DisplayName("incrementForChannel should not push anything for a message already counted")
+    void incrementForChannel_Redelivered_ShouldNotPush() {
+        when(readStateRepository.findUserIdsByChannelId(10L)).thenReturn(List.of(2L, 3L));
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of("sha", -2L, -2L));
+
+        unreadCounterService.incrementForChannel(10L, 1L, 42L);
+
+        verifyNoInteractions(broadcastService);
+    }
+
+    @Test
+    @DisplayName("reset should move the read position and push the remaining count")
+    @SuppressWarnings("unchecked")
+    void reset_ShouldMoveReadPositionAndPush() {
+        unreadCounterService.reset(1L, 10L, 42L);
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("unread:1")),
+                eq("10"), eq("42"), eq(String.valueOf(Duration.ofDays(7).toSeconds())));
+        verify(broadcastService).broadcastToUser(1L, "/unread", Map.of("channelId", 10L, "count", 0L));
+    }
+
+    @Test
+    @DisplayName("removeChannel should drop the channel from every reader's hash")
+    void removeChannel_ShouldPipelineFieldDeletes() {
+        when(readStateRepository.findUserIdsByChannelId(10L)).thenReturn(List.of(1L, 2L, 3L));
+
+        unreadCounterService.removeChannel(10L);
+
+        // Three readers in batches of two
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+    }
+}
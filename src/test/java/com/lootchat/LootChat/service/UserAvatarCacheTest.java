@@ -0,0 +1,113 @@
+package com.lootchat.LootChat.service;
+
+import com.lootchat.LootChat.entity.User;
+import com.lootchat.LootChat.repository.UserRepository;
+import com.lootchat.LootChat.service.user.UserAvatarCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("UserAvatarCache Tests")
+class UserAvatarCacheTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private UserAvatarCache userAvatarCache;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        userAvatarCache = new UserAvatarCache(redisTemplate, userRepository);
+        ReflectionTestUtils.setField(userAvatarCache, "ttlMinutes", 60L);
+    }
+
+    @Test
+    @DisplayName("getAvatars should load only cache misses, in one query, and cache them in one pipeline")
+    void getAvatars_ShouldBatchLoadMisses() {
+        when(valueOperations.multiGet(List.of("user:avatar:1", "user:avatar:2", "user:avatar:3")))
+                .thenReturn(Arrays.asList("/a1.png", null, ""));
+        when(userRepository.findAllById(List.of(2L))).thenReturn(List.of(user(2L, "/a2.png")));
+
+        Map<Long, String> avatars = userAvatarCache.getAvatars(List.of(1L, 2L, 3L, 1L));
+
+        assertThat(avatars).containsExactlyInAnyOrderEntriesOf(Map.of(1L, "/a1.png", 2L, "/a2.png"));
+        verify(userRepository, times(1)).findAllById(anyIterable());
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        // Per-key TTLs, nothing refreshes the expiry of other users' entries
+        verify(redisTemplate, never()).expire(anyString(), any(Duration.class));
+    }
+
+    @Test
+    @DisplayName("getAvatars should not touch the database when every avatar is cached")
+    void getAvatars_AllCached_ShouldSkipDatabase() {
+        when(valueOperations.multiGet(anyList())).thenReturn(Arrays.asList("/a1.png", ""));
+
+        Map<Long, String> avatars = userAvatarCache.getAvatars(List.of(1L, 2L));
+
+        assertThat(avatars).containsExactlyEntriesOf(Map.of(1L, "/a1.png"));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    @DisplayName("getAvatars should load an evicted avatar from the database")
+    void getAvatars_Evicted_ShouldLoadFromDatabase() {
+        when(valueOperations.multiGet(anyList())).thenReturn(Arrays.asList("!evicted"));
+        when(userRepository.findAllById(List.of(1L))).thenReturn(List.of(user(1L, "/new.png")));
+
+        Map<Long, String> avatars = userAvatarCache.getAvatars(List.of(1L));
+
+        assertThat(avatars).containsExactlyEntriesOf(Map.of(1L, "/new.png"));
+    }
+
+    @Test
+    @DisplayName("evict should replace the cached avatar with a short-lived marker")
+    void evict_ShouldWriteMarker() {
+        userAvatarCache.evict(1L);
+
+        verify(valueOperations).set("user:avatar:1", "!evicted", Duration.ofSeconds(30));
+        verify(redisTemplate, never()).delete(anyString());
+    }
+
+    @Test
+    @DisplayName("getAvatars should fall back to the database when Redis is unavailable")
+    void getAvatars_RedisDown_ShouldLoadFromDatabase() {
+        when(valueOperations.multiGet(anyList())).thenThrow(new RedisConnectionFailureException("down"));
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        when(userRepository.findAllById(List.of(1L, 2L)))
+                .thenReturn(List.of(user(1L, "/a1.png"), user(2L, null)));
+
+        Map<Long, String> avatars = userAvatarCache.getAvatars(List.of(1L, 2L));
+
+        assertThat(avatars).containsExactlyEntriesOf(Map.of(1L, "/a1.png"));
+    }
+
+    private static User user(Long id, String avatar) {
+        return User.builder().id(id).username("user" + id).avatar(avatar).build();
+    }
+}
@@ -1,18 +1,29 @@
 package com.lootchat.LootChat.service;
 
+import com.lootchat.LootChat.dto.user.PresenceDelta;
+import com.lootchat.LootChat.dto.user.UserPresenceUpdate;
 import com.lootchat.LootChat.entity.User;
-import com.lootchat.LootChat.repository.UserRepository;
+import com.lootchat.LootChat.service.inbox.OutboxService;
+import com.lootchat.LootChat.service.user.PresenceChangeLog;
+import com.lootchat.LootChat.service.user.PresenceMirror;
+import com.lootchat.LootChat.service.user.UserPresenceService;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
@@ -25,57 +36,57 @@ class UserPresenceServiceTest {
     @Mock
     private OutboxService outboxService;
 
-    @Mock
-    private UserRepository userRepository;
-
     @Mock
     private RedisTemplate<String, String> redisTemplate;
 
     @Mock
     private ValueOperations<String, String> valueOperations;
 
-    private UserPresenceService userPresenceService;
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
 
-    private User user1;
-    private User user2;
-    private User user3;
+    @Mock
+    private PresenceChangeLog presenceChangeLog;
+
+    @Mock
+    private PresenceMirror presenceMirror;
+
+    private UserPresenceService userPresenceService;
 
     @BeforeEach
     void setUp() {
         lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        userPresenceService = new UserPresenceService(userRepository, outboxService, redisTemplate);
-        
-        user1 = User.builder()
-                .id(1L)
-                .username("user1")
-                .email("user1@example.com")
-                .avatar("avatar1.jpg")
-                .build();
+        lenient().when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        lenient().when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        userPresenceService = new UserPresenceService(outboxService, redisTemplate, presenceChangeLog, presenceMirror);
+    }
 
-        user2 = User.builder()
-                .id(2L)
-                .username("user2")
-                .email("user2@example.com")
-                .avatar(null)
-                .build();
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
 
-        user3 = User.builder()
-                .id(3L)
-                .username("user3")
-                .email("user3@example.com")
-                .avatar("avatar3.jpg")
-                .build();
+    @SuppressWarnings("unchecked")
+    private void stubScriptResult(Object result) {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(result);
     }
 
     @Test
-    @DisplayName("userConnected should mark user as online and save to outbox")
+    @DisplayName("userConnected should publish online when the script reports the user was offline")
     void userConnected_ShouldMarkUserOnline_AndSaveToOutbox() {
-        String username = "user1";
-        Long userId = 1L;
+        stubScriptResult(List.of(1L, 1L));
+        when(presenceChangeLog.record(1L, "user1", "online")).thenReturn(7L);
 
-        userPresenceService.userConnected(username, userId);
+        userPresenceService.userConnected("user1", 1L);
 
-        verify(valueOperations).set(eq("user:presence:user1"), eq("online"), eq(5L), eq(TimeUnit.MINUTES));
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("user:connections:user1", "presence:online", "presence:usernames", "presence:offline:pending")), any(Object[].class));
+        verify(presenceChangeLog).record(1L, "user1", "online");
+        verify(presenceMirror).apply(1L, "user1", "online");
+        verify(redisTemplate, never()).keys(anyString());
         verify(outboxService).saveEvent(
                 eq(OutboxService.EVENT_PRESENCE_UPDATED),
                 eq(OutboxService.TOPIC_PRESENCE),
@@ -85,14 +96,23 @@ class UserPresenceServiceTest {
     }
 
     @Test
-    @DisplayName("userDisconnected should remove from Redis and save to outbox")
+    @DisplayName("userConnected should not broadcast when user is already online")
+    void userConnected_ShouldNotBroadcast_WhenAlreadyOnline() {
+        stubScriptResult(List.of(2L, 0L));
+
+        userPresenceService.userConnected("user1", 1L);
+
+        verifyNoInteractions(outboxService, presenceChangeLog);
+    }
+
+    @Test
+    @DisplayName("userDisconnected should publish offline when the script took the user offline")
     void userDisconnected_ShouldRemoveFromRedis_AndSaveToOutbox() {
-        String username = "user1";
-        Long userId = 1L;
+        stubScriptResult(List.of(0L, 1L));
 
-        userPresenceService.userDisconnected(username, userId);
+        userPresenceService.userDisconnected("user1", 1L);
 
-        verify(redisTemplate).delete("user:presence:user1");
+        verify(presenceChangeLog).record(1L, "user1", "offline");
         verify(outboxService).saveEvent(
                 eq(OutboxService.EVENT_PRESENCE_UPDATED),
                 eq(OutboxService.TOPIC_PRESENCE),
@@ -102,74 +122,227 @@ class UserPresenceServiceTest {
     }
 
     @Test
-    @DisplayName("isUserOnline should return true when Redis has online status")
-    void isUserOnline_ShouldReturnTrue_WhenRedisHasOnlineStatus() {
-        when(valueOperations.get("user:presence:user1")).thenReturn("online");
+    @DisplayName("userDisconnected should not publish while other connections remain or another call already went offline")
+    void userDisconnected_ShouldNotBroadcast_WhenNotTheOfflineTransition() {
+        stubScriptResult(List.of(1L, 0L));
+        userPresenceService.userDisconnected("user1", 1L);
 
-        boolean isOnline = userPresenceService.isUserOnline("user1");
+        stubScriptResult(List.of(0L, 0L));
+        userPresenceService.userDisconnected("user1", 1L);
 
-        assertThat(isOnline).isTrue();
+        verifyNoInteractions(outboxService, presenceChangeLog);
     }
 
     @Test
-    @DisplayName("isUserOnline should return false when Redis has no status")
-    void isUserOnline_ShouldReturnFalse_WhenRedisHasNoStatus() {
-        when(valueOperations.get("user:presence:nonexistent")).thenReturn(null);
+    @DisplayName("publishPendingOffline should publish users whose grace period elapsed")
+    void publishPendingOffline_ShouldPublishOffline_WhenGraceElapsed() {
+        when(zSetOperations.rangeByScore(eq("presence:offline:pending"), eq(Double.NEGATIVE_INFINITY), anyDouble()))
+                .thenReturn(Set.of("1"));
+        stubScriptResult("user1");
 
-        boolean isOnline = userPresenceService.isUserOnline("nonexistent");
+        userPresenceService.publishPendingOffline();
 
-        assertThat(isOnline).isFalse();
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("presence:online", "presence:usernames", "presence:offline:pending")), any(Object[].class));
+        verify(presenceChangeLog).record(1L, "user1", "offline");
+        verify(outboxService).saveEvent(
+                eq(OutboxService.EVENT_PRESENCE_UPDATED),
+                eq(OutboxService.TOPIC_PRESENCE),
+                eq("1"),
+                any()
+        );
     }
 
     @Test
-    @DisplayName("getOnlineUsers should return usernames from Redis keys")
-    void getOnlineUsers_ShouldReturnUsernames_FromRedisKeys() {
-        Set<String> keys = Set.of("user:presence:user1", "user:presence:user3");
-        when(redisTemplate.keys("user:presence:*")).thenReturn(keys);
+    @DisplayName("publishPendingOffline should publish nothing when the user reconnected within the grace period")
+    void publishPendingOffline_ShouldSkip_WhenUserReconnected() {
+        when(zSetOperations.rangeByScore(eq("presence:offline:pending"), eq(Double.NEGATIVE_INFINITY), anyDouble()))
+                .thenReturn(Set.of("1"));
+        stubScriptResult(null);
 
-        Set<String> onlineUsers = userPresenceService.getOnlineUsers();
+        userPresenceService.publishPendingOffline();
 
-        assertThat(onlineUsers).containsExactlyInAnyOrder("user1", "user3");
+        verifyNoInteractions(outboxService, presenceChangeLog);
+    }
+
+    @Test
+    @DisplayName("refreshCurrentUserPresence should only queue the heartbeat until the flush")
+    void refreshCurrentUserPresence_ShouldQueueHeartbeat() {
+        authenticateAs(1L, "user1");
+
+        userPresenceService.refreshCurrentUserPresence();
+
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    @DisplayName("flushHeartbeats should send queued heartbeats in one pipeline and republish expired users")
+    @SuppressWarnings("unchecked")
+    void flushHeartbeats_ShouldPipelineQueuedHeartbeats() {
+        authenticateAs(1L, "user1");
+        userPresenceService.refreshCurrentUserPresence();
+        userPresenceService.refreshCurrentUserPresence();
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of("sha", 1L));
+
+        userPresenceService.flushHeartbeats();
+        userPresenceService.flushHeartbeats();
+
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verify(presenceChangeLog).record(1L, "user1", "online");
+    }
+
+    private void authenticateAs(Long userId, String username) {
+        User user = User.builder().id(userId).username(username).build();
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+
+    @Test
+    @DisplayName("isUserOnline should return true when presence score is in the future")
+    void isUserOnline_ShouldReturnTrue_WhenScoreInFuture() {
+        when(zSetOperations.score("presence:online", "1"))
+                .thenReturn((double) (System.currentTimeMillis() + 60_000));
+
+        assertThat(userPresenceService.isUserOnline(1L)).isTrue();
     }
 
     @Test
-    @DisplayName("getOnlineUsers should return empty set when no keys in Redis")
-    void getOnlineUsers_ShouldReturnEmptySet_WhenNoKeysInRedis() {
-        when(redisTemplate.keys("user:presence:*")).thenReturn(null);
+    @DisplayName("isUserOnline should return false when presence is missing or expired")
+    void isUserOnline_ShouldReturnFalse_WhenMissingOrExpired() {
+        when(zSetOperations.score("presence:online", "2")).thenReturn(null);
+        when(zSetOperations.score("presence:online", "3"))
+                .thenReturn((double) (System.currentTimeMillis() - 1_000));
+
+        assertThat(userPresenceService.isUserOnline(2L)).isFalse();
+        assertThat(userPresenceService.isUserOnline(3L)).isFalse();
+    }
+
+    @Test
+    @DisplayName("isUserOnline should answer from the mirror without Redis when it is fresh")
+    void isUserOnline_ShouldUseMirror_WhenFresh() {
+        when(presenceMirror.isFresh()).thenReturn(true);
+        when(presenceMirror.isOnline(1L)).thenReturn(true);
+
+        assertThat(userPresenceService.isUserOnline(1L)).isTrue();
+        verifyNoInteractions(zSetOperations);
+    }
+
+    @Test
+    @DisplayName("getOnlineUserIds should answer from the mirror when it is fresh")
+    void getOnlineUserIds_ShouldUseMirror_WhenFresh() {
+        when(presenceMirror.isFresh()).thenReturn(true);
+        when(presenceMirror.getOnlineUserIds()).thenReturn(Set.of(1L, 2L));
+
+        assertThat(userPresenceService.getOnlineUserIds()).containsExactlyInAnyOrder(1L, 2L);
+        verifyNoInteractions(zSetOperations);
+    }
+
+    @Test
+    @DisplayName("refreshPresenceMirror should only touch the mirror when the version did not move")
+    void refreshPresenceMirror_ShouldTouch_WhenVersionUnchanged() {
+        when(presenceMirror.getVersion()).thenReturn(9L);
+        when(presenceChangeLog.currentVersion()).thenReturn(9L);
+
+        userPresenceService.refreshPresenceMirror();
+
+        verify(presenceMirror).touch();
+        verify(presenceChangeLog, never()).changesSince(anyLong());
+    }
+
+    @Test
+    @DisplayName("refreshPresenceMirror should apply the delta when the version moved")
+    void refreshPresenceMirror_ShouldAdvance_WhenVersionMoved() {
+        PresenceDelta delta = PresenceDelta.builder()
+                .version(11)
+                .joined(List.of(UserPresenceUpdate.builder().userId(4L).username("user4").status("online").build()))
+                .left(List.of(2L))
+                .build();
+        when(presenceMirror.getVersion()).thenReturn(9L);
+        when(presenceChangeLog.currentVersion()).thenReturn(11L);
+        when(presenceChangeLog.changesSince(9L)).thenReturn(delta);
+
+        userPresenceService.refreshPresenceMirror();
+
+        verify(presenceMirror).advance(delta);
+        verify(presenceMirror, never()).reset(anyMap(), anyLong());
+    }
+
+    @Test
+    @DisplayName("refreshPresenceMirror should reload the snapshot on first run")
+    void refreshPresenceMirror_ShouldReset_WhenNotBootstrapped() {
+        when(presenceMirror.getVersion()).thenReturn(-1L);
+        when(presenceChangeLog.currentVersion()).thenReturn(3L);
+        when(zSetOperations.rangeByScore(eq("presence:online"), anyDouble(), eq(Double.POSITIVE_INFINITY)))
+                .thenReturn(new LinkedHashSet<>(List.of("1")));
+        when(hashOperations.multiGet("presence:usernames", List.of("1"))).thenReturn(List.of("user1"));
+
+        userPresenceService.refreshPresenceMirror();
+
+        verify(presenceMirror).reset(Map.of(1L, "user1"), 3L);
+    }
+
+    @Test
+    @DisplayName("getOnlineUsers should resolve usernames from the presence hash")
+    void getOnlineUsers_ShouldReturnUsernames_FromPresenceHash() {
+        when(zSetOperations.rangeByScore(eq("presence:online"), anyDouble(), eq(Double.POSITIVE_INFINITY)))
+                .thenReturn(new LinkedHashSet<>(List.of("1", "3")));
+        when(hashOperations.multiGet("presence:usernames", List.of("1", "3")))
+                .thenReturn(List.of("user1", "user3"));
 
         Set<String> onlineUsers = userPresenceService.getOnlineUsers();
 
-        assertThat(onlineUsers).isEmpty();
+        assertThat(onlineUsers).containsExactlyInAnyOrder("user1", "user3");
+        verify(redisTemplate, never()).keys(anyString());
     }
 
     @Test
-    @DisplayName("getAllUserPresence should return presence map from Redis")
-    void getAllUserPresence_ShouldReturnPresenceMap_FromRedis() {
-        Set<String> keys = Set.of("user:presence:user1", "user:presence:user3");
-        when(redisTemplate.keys("user:presence:*")).thenReturn(keys);
-        when(userRepository.findByUsername("user1")).thenReturn(user1);
-        when(userRepository.findByUsername("user3")).thenReturn(user3);
-        when(valueOperations.get("user:presence:user1")).thenReturn("online");
-        when(valueOperations.get("user:presence:user3")).thenReturn("online");
+    @DisplayName("getOnlineUsers should return empty set when nobody is online")
+    void getOnlineUsers_ShouldReturnEmptySet_WhenNobodyOnline() {
+        when(zSetOperations.rangeByScore(eq("presence:online"), anyDouble(), eq(Double.POSITIVE_INFINITY)))
+                .thenReturn(null);
+
+        assertThat(userPresenceService.getOnlineUsers()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("getAllUserPresence should be built from the presence set")
+    void getAllUserPresence_ShouldReturnPresenceMap_FromPresenceSet() {
+        when(zSetOperations.rangeByScore(eq("presence:online"), anyDouble(), eq(Double.POSITIVE_INFINITY)))
+                .thenReturn(Set.of("1", "3"));
 
         Map<Long, Boolean> presenceMap = userPresenceService.getAllUserPresence();
 
-        assertThat(presenceMap.get(1L)).isTrue();
-        assertThat(presenceMap.get(3L)).isTrue();
+        assertThat(presenceMap).containsOnlyKeys(1L, 3L);
+        assertThat(presenceMap.values()).containsOnly(true);
     }
 
     @Test
-    @DisplayName("getAllUserPresence should skip users not found in repository")
-    void getAllUserPresence_ShouldSkipUsersNotFound() {
-        Set<String> keys = Set.of("user:presence:user1", "user:presence:ghost");
-        when(redisTemplate.keys("user:presence:*")).thenReturn(keys);
-        when(userRepository.findByUsername("user1")).thenReturn(user1);
-        when(userRepository.findByUsername("ghost")).thenReturn(null);
-        when(valueOperations.get("user:presence:user1")).thenReturn("online");
+    @DisplayName("removeExpiredPresence should publish members removed by the expiry script as offline")
+    void removeExpiredPresence_ShouldDropExpiredMembers_AndPublishOffline() {
+        when(zSetOperations.rangeByScore(eq("presence:online"), eq(Double.NEGATIVE_INFINITY), anyDouble()))
+                .thenReturn(Set.of("2"));
+        stubScriptResult("user2");
 
-        Map<Long, Boolean> presenceMap = userPresenceService.getAllUserPresence();
+        userPresenceService.removeExpiredPresence();
+
+        verify(presenceChangeLog).record(2L, "user2", "offline");
+        verify(outboxService).saveEvent(
+                eq(OutboxService.EVENT_PRESENCE_UPDATED),
+                eq(OutboxService.TOPIC_PRESENCE),
+                eq("2"),
+                any()
+        );
+    }
+
+    @Test
+    @DisplayName("removeExpiredPresence should not publish members refreshed or removed elsewhere")
+    void removeExpiredPresence_ShouldSkipMembersClaimedElsewhere() {
+        when(zSetOperations.rangeByScore(eq("presence:online"), eq(Double.NEGATIVE_INFINITY), anyDouble()))
+                .thenReturn(Set.of("2"));
+        stubScriptResult(null);
+
+        userPresenceService.removeExpiredPresence();
 
-        assertThat(presenceMap).containsKey(1L);
-        assertThat(presenceMap).hasSize(1);
+        verifyNoInteractions(outboxService, presenceChangeLog);
     }
 }
@@ -5,6 +5,7 @@ import com.lootchat.LootChat.entity.Role;
 import com.lootchat.LootChat.entity.User;
 import com.lootchat.LootChat.repository.UserRepository;
 import com.lootchat.LootChat.security.CurrentUserService;
+import com.lootchat.LootChat.service.user.UserAvatarCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -54,6 +55,9 @@ class UserServiceTest {
     @Mock
     private Cache usersCache;
 
+    @Mock
+    private UserAvatarCache userAvatarCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -162,6 +166,7 @@ class UserServiceTest {
         verify(userRepository, times(1)).save(testUser);
         verify(userCache, times(1)).evict("id:1");
         verify(usersCache, times(1)).evict("all");
+        verify(userAvatarCache, times(1)).evict(1L);
     }
 
     @Test